@@ -0,0 +1,68 @@
+package com.urlshortener.bench;
+
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+
+/**
+ * Throwaway mongod and redis-server processes for the end-to-end benchmarks. Both
+ * binaries are fetched / unpacked on first use, so the first run is slow.
+ */
+public final class EmbeddedBackends implements AutoCloseable {
+
+    private final TransitionWalker.ReachedState<RunningMongodProcess> mongod;
+    private final RedisServer redis;
+    private final int redisPort;
+
+    private EmbeddedBackends(TransitionWalker.ReachedState<RunningMongodProcess> mongod, RedisServer redis, int redisPort) {
+        this.mongod = mongod;
+        this.redis = redis;
+        this.redisPort = redisPort;
+    }
+
+    public static EmbeddedBackends start() {
+        TransitionWalker.ReachedState<RunningMongodProcess> mongod = Mongod.instance().start(Version.Main.V7_0);
+        try {
+            int redisPort = freePort();
+            RedisServer redis = new RedisServer(redisPort);
+            redis.start();
+            return new EmbeddedBackends(mongod, redis, redisPort);
+        } catch (IOException e) {
+            mongod.close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String mongoUri() {
+        ServerAddress address = mongod.current().getServerAddress();
+        return "mongodb://" + address.getHost() + ":" + address.getPort() + "/urlshortener-bench";
+    }
+
+    public int redisPort() {
+        return redisPort;
+    }
+
+    @Override
+    public void close() {
+        try {
+            redis.stop();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            mongod.close();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
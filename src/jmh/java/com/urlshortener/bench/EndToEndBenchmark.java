@@ -0,0 +1,93 @@
+package com.urlshortener.bench;
+
+import com.urlshortener.UrlShortenerServiceApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load harness for the code behind UrlMappingController: the full application on a random
+ * port, backed by embedded Mongo and Redis, driven over HTTP by concurrent clients. Client
+ * and server share the JVM, so the gc profiler's allocation rate covers both; compare runs
+ * against each other rather than reading it as server-only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Threads(16)
+public class EndToEndBenchmark {
+
+    private static final int SEEDED_KEYS = 1_000;
+
+    private EmbeddedBackends backends;
+    private ConfigurableApplicationContext app;
+    private WebClient client;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backends = EmbeddedBackends.start();
+        app = new SpringApplicationBuilder(UrlShortenerServiceApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.data.mongodb.uri=" + backends.mongoUri(),
+                        "spring.data.redis.port=" + backends.redisPort(),
+                        "shortener.rate-limit.enabled=false",
+                        "logging.level.root=WARN")
+                .run();
+        client = WebClient.builder()
+                .baseUrl("http://localhost:" + app.getEnvironment().getProperty("local.server.port"))
+                .build();
+
+        List<String> shortUrls = Flux.range(0, SEEDED_KEYS)
+                .flatMap(i -> shorten("https://example.com/seed/" + i), 32)
+                .collectList()
+                .block();
+        keys = shortUrls.stream().map(url -> url.substring(url.lastIndexOf('/') + 1)).toArray(String[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.close();
+        backends.close();
+    }
+
+    @Benchmark
+    public Integer redirect() {
+        return client.get()
+                .uri("/{key}", keys[ThreadLocalRandom.current().nextInt(keys.length)])
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode().value()))
+                .block();
+    }
+
+    @Benchmark
+    public String shortenUrl() {
+        return shorten("https://example.com/load/" + ThreadLocalRandom.current().nextLong()).block();
+    }
+
+    private reactor.core.publisher.Mono<String> shorten(String longUrl) {
+        return client.post()
+                .uri("/shorten")
+                .bodyValue(Map.of("longUrl", longUrl))
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+}
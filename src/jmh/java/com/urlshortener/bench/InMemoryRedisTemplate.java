@@ -0,0 +1,67 @@
+package com.urlshortener.bench;
+
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in for Redis in micro benchmarks: string GET / SET / SETNX served from a
+ * map, so the cache-hit path is measured without a network hop. Anything else fails loudly.
+ */
+public class InMemoryRedisTemplate extends ReactiveRedisTemplate<String, String> {
+
+    private record Entry(String value, long expiresAtNanos) {
+    }
+
+    private final Map<String, Entry> store = new ConcurrentHashMap<>();
+    private final ReactiveValueOperations<String, String> valueOps;
+
+    @SuppressWarnings("unchecked")
+    public InMemoryRedisTemplate() {
+        super(Stubs.unsupported(ReactiveRedisConnectionFactory.class), RedisSerializationContext.string());
+        this.valueOps = (ReactiveValueOperations<String, String>) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{ReactiveValueOperations.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "get" -> Mono.justOrEmpty(live((String) args[0])).map(Entry::value);
+                    case "set" -> {
+                        put((String) args[0], (String) args[1], args.length > 2 ? (Duration) args[2] : null);
+                        yield Mono.just(true);
+                    }
+                    case "setIfAbsent" -> {
+                        boolean absent = live((String) args[0]) == null;
+                        if (absent) {
+                            put((String) args[0], (String) args[1], args.length > 2 ? (Duration) args[2] : null);
+                        }
+                        yield Mono.just(absent);
+                    }
+                    case "delete" -> Mono.just(store.remove((String) args[0]) != null);
+                    default -> throw new UnsupportedOperationException("Not stubbed: " + method);
+                });
+    }
+
+    public void put(String key, String value, Duration ttl) {
+        store.put(key, new Entry(value, ttl == null ? Long.MAX_VALUE : System.nanoTime() + ttl.toNanos()));
+    }
+
+    @Override
+    public ReactiveValueOperations<String, String> opsForValue() {
+        return valueOps;
+    }
+
+    private Entry live(String key) {
+        Entry entry = store.get(key);
+        if (entry != null && entry.expiresAtNanos() - System.nanoTime() <= 0) {
+            store.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,30 @@
+package com.urlshortener.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * A collaborator the benchmarked path must never touch, e.g. Mongo on a cache hit.
+     * Default methods still run, so flags like {@code UrlStore.isLocal} keep their default.
+     */
+    public static <T> T unsupported(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> type.getSimpleName() + " stub";
+                };
+            }
+            if (method.isDefault()) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            }
+            throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName() + " called in benchmark");
+        }));
+    }
+}
@@ -0,0 +1,48 @@
+package com.urlshortener.keygen;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of turning a leased id into a key; the Mongo lease is amortised over a
+ * whole block and is covered by the end-to-end benchmark instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ShortKeyBenchmark {
+
+    private BlockLeaseShortKeyGenerator plain;
+    private BlockLeaseShortKeyGenerator scrambled;
+    private long next;
+
+    @Setup
+    public void setUp() {
+        plain = new BlockLeaseShortKeyGenerator(null);
+        scrambled = new BlockLeaseShortKeyGenerator(null);
+        ReflectionTestUtils.setField(scrambled, "scramble", true);
+    }
+
+    @Benchmark
+    public String toKey() {
+        return plain.toKey(next++);
+    }
+
+    @Benchmark
+    public String toKeyScrambled() {
+        return scrambled.toKey(next++);
+    }
+
+    @Benchmark
+    public long decode() {
+        return ShortKeyCodec.decode("k3x9q2a");
+    }
+}
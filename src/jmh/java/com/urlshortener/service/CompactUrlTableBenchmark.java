@@ -0,0 +1,97 @@
+package com.urlshortener.service;
+
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redirect replica lookups against {@link CompactUrlTable} versus the plain
+ * {@code ConcurrentHashMap<String, Entry>} it replaced. Setup prints bytes per entry for
+ * both: retained heap after a GC, plus slab capacity for the compact table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CompactUrlTableBenchmark {
+
+    private record Entry(String id, String longUrl, long expiresAtMillis) {
+    }
+
+    @Param({"1000000"})
+    int entries;
+
+    @Param({"compact", "map"})
+    String layout;
+
+    private CompactUrlTable table;
+    private Map<String, Entry> map;
+    private String[] keys;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            keys[i] = Long.toString(36L * 36 * 36 * 36 * 36 * 36 + i * 7919L, 36);
+        }
+        now = System.currentTimeMillis();
+        long expiresAt = now + TimeUnit.DAYS.toMillis(30);
+
+        long before = usedHeap();
+        if (layout.equals("compact")) {
+            table = new CompactUrlTable(entries, 4 << 20);
+            for (int i = 0; i < entries; i++) {
+                table.put(new ObjectId().toHexString(), keys[i], url(i), expiresAt);
+            }
+        } else {
+            map = new ConcurrentHashMap<>(entries * 4 / 3);
+            for (int i = 0; i < entries; i++) {
+                map.put(keys[i], new Entry(new ObjectId().toHexString(), url(i), expiresAt));
+            }
+        }
+        long heap = usedHeap() - before;
+        long offHeap = table != null ? table.offHeapBytes() : 0;
+        System.out.printf("%n%s: %.1f bytes/entry (%d heap + %d off-heap over %d entries)%n",
+                layout, (double) (heap + offHeap) / entries, heap, offHeap, entries);
+    }
+
+    @Benchmark
+    public String get() {
+        // A fresh copy, like a key parsed from the request path: no cached hash, no identity match
+        String key = new String(keys[ThreadLocalRandom.current().nextInt(entries)]);
+        if (table != null) {
+            return table.get(key, now);
+        }
+        Entry entry = map.get(key);
+        return entry != null && entry.expiresAtMillis() > now ? entry.longUrl() : null;
+    }
+
+    private static String url(int i) {
+        return switch (i % 4) {
+            case 0 -> "https://www.example.com/articles/" + i + "/how-to-shorten-urls";
+            case 1 -> "https://shop.example.org/p/" + i + "?utm_source=newsletter&utm_medium=email";
+            case 2 -> "https://docs.example.net/guide/section-" + (i % 100) + "#item-" + i;
+            default -> "https://cdn" + (i % 16) + ".example.io/assets/" + Integer.toHexString(i) + ".png";
+        };
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,55 @@
+package com.urlshortener.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk CSV upload parsing, fed in 8 KB buffers the way a multipart body arrives.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvParseBenchmark {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    @Param({"10000"})
+    int rows;
+
+    private final CsvBulkRowParser parser = new CsvBulkRowParser();
+    private byte[] csv;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("longUrl,customAlias,expiryDays\n");
+        for (int i = 0; i < rows; i++) {
+            builder.append("https://example.com/page/").append(i).append("?ref=bulk,");
+            if (i % 10 == 0) {
+                builder.append("alias-").append(i);
+            }
+            builder.append(',').append(i % 90 + 1).append('\n');
+        }
+        csv = builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Long parse() {
+        Flux<DataBuffer> content = Flux.range(0, (csv.length + BUFFER_SIZE - 1) / BUFFER_SIZE)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(
+                        Arrays.copyOfRange(csv, i * BUFFER_SIZE, Math.min(csv.length, (i + 1) * BUFFER_SIZE))));
+        return parser.parse(content).count().block();
+    }
+}
@@ -0,0 +1,59 @@
+package com.urlshortener.service;
+
+import com.urlshortener.bench.InMemoryRedisTemplate;
+import com.urlshortener.bench.Stubs;
+import com.urlshortener.store.UrlStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UrlMappingService#getLongUrl} when the key is cached: served from the L1 near-cache,
+ * or (l1=false) from Redis, here an in-memory stand-in so only our own code is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RedirectCacheHitBenchmark {
+
+    private static final int KEYS = 10_000;
+
+    @Param({"true", "false"})
+    boolean l1;
+
+    private UrlMappingService service;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        RedisUrlCache redis = new RedisUrlCache(new InMemoryRedisTemplate(), "url:", RedisUrlCache.Layout.STRINGS, 1, 86400, true);
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "k" + Integer.toString(i, 36);
+            redis.put(keys[i], "https://example.com/articles/" + i + "?utm_source=benchmark", null).block();
+        }
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LocalUrlCache localUrlCache = new LocalUrlCache(l1, 64L << 20, 4096, 300, 100_000, 5, registry);
+        service = new UrlMappingService(Stubs.unsupported(UrlStore.class), redis, localUrlCache,
+                null, null, null, null, new RedirectReplicaService(null, null, registry, false, "unused", 0, Schedulers.immediate()),
+                new ShortenerMetrics(registry));
+        ReflectionTestUtils.setField(service, "earlyRefreshBeta", 0.0);
+    }
+
+    @Benchmark
+    public String getLongUrl() {
+        return service.getLongUrl(keys[ThreadLocalRandom.current().nextInt(KEYS)]).block();
+    }
+}
@@ -0,0 +1,104 @@
+package com.urlshortener.service;
+
+import com.urlshortener.model.UrlMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RedisUrlCache} against a throwaway redis-server, one string key per link versus
+ * links spread over small hashes. Setup prints Redis used_memory per cached link; the
+ * benchmark measures a cached read over a real connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RedisUrlCacheBenchmark {
+
+    @Param({"100000"})
+    int links;
+
+    @Param({"STRINGS", "HASH"})
+    RedisUrlCache.Layout layout;
+
+    private RedisServer server;
+    private LettuceConnectionFactory connectionFactory;
+    private RedisUrlCache cache;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new RedisServer(port);
+        server.start();
+        connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        ReactiveRedisTemplate<String, String> template =
+                new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext.string());
+        // Room for a long URL plus its expiry prefix, as the hash layout requires in production
+        template.execute(connection -> connection.serverCommands().setConfig("hash-max-ziplist-value", "256")).blockLast();
+
+        // ~100 links per bucket stays under the default hash-max-listpack-entries (128)
+        cache = new RedisUrlCache(template, "url:", layout, Math.max(1, links / 100), 86400, true);
+        keys = new String[links];
+        List<UrlMapping> batch = new ArrayList<>();
+        Instant expiresAt = Instant.now().plus(30, ChronoUnit.DAYS);
+        long before = usedMemory(template);
+        for (int i = 0; i < links; i++) {
+            keys[i] = Long.toString(36L * 36 * 36 * 36 * 36 * 36 + i * 7919L, 36);
+            UrlMapping mapping = new UrlMapping();
+            mapping.setShortKey(keys[i]);
+            mapping.setLongUrl("https://example.com/articles/" + i + "?utm_source=newsletter&utm_medium=email");
+            mapping.setExpiresAt(i % 2 == 0 ? expiresAt : null);
+            batch.add(mapping);
+            if (batch.size() == 1000) {
+                cache.putAll(batch).block();
+                batch = new ArrayList<>();
+            }
+        }
+        cache.putAll(batch).block();
+        long used = usedMemory(template) - before;
+        System.out.printf("%n%s: %.1f bytes/link (%d bytes over %d links)%n",
+                layout, (double) used / links, used, links);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @Benchmark
+    public RedisUrlCache.Hit get() {
+        return cache.get(keys[ThreadLocalRandom.current().nextInt(links)]).block();
+    }
+
+    private static long usedMemory(ReactiveRedisTemplate<String, String> template) {
+        Properties info = template.execute(connection -> connection.serverCommands().info("memory")).blockLast();
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+}
@@ -0,0 +1,28 @@
+package com.urlshortener.validate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InputValidatorBenchmark {
+
+    private final String longUrl = "  https://example.com/some/fairly/long/path?utm_source=newsletter&utm_medium=email  ";
+
+    @Benchmark
+    public ValidationResult withoutAlias() {
+        return InputValidator.validateAndCleanInputs(longUrl, null);
+    }
+
+    @Benchmark
+    public ValidationResult withAlias() {
+        return InputValidator.validateAndCleanInputs(longUrl, " Spring-Sale_2024 ");
+    }
+}
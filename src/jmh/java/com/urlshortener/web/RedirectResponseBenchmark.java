@@ -0,0 +1,141 @@
+package com.urlshortener.web;
+
+import com.urlshortener.bench.InMemoryRedisTemplate;
+import com.urlshortener.bench.Stubs;
+import com.urlshortener.service.ClickEventService;
+import com.urlshortener.service.LocalUrlCache;
+import com.urlshortener.service.RedirectReplicaService;
+import com.urlshortener.service.RedisUrlCache;
+import com.urlshortener.service.ShortenerMetrics;
+import com.urlshortener.service.UrlMappingService;
+import com.urlshortener.store.UrlStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.DispatcherHandler;
+import org.springframework.web.reactive.config.EnableWebFlux;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.URI;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cached redirect through the WebFlux handler chain, answered either by the annotated
+ * controller method it used to be (controller) or by {@link RedirectWebFilter} (filter).
+ * Both see the same request objects and L1 hit; run with -prof gc to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RedirectResponseBenchmark {
+
+    private static final int KEYS = 10_000;
+
+    @Param({"controller", "filter"})
+    String route;
+
+    private AnnotationConfigApplicationContext context;
+    private HttpHandler handler;
+    private String[] paths;
+
+    @Setup
+    public void setUp() {
+        RedisUrlCache redis = new RedisUrlCache(new InMemoryRedisTemplate(), "url:", RedisUrlCache.Layout.STRINGS, 1, 86400, true);
+        paths = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            String key = "k" + Integer.toString(i, 36);
+            paths[i] = "/" + key;
+            redis.put(key, "https://example.com/articles/" + i + "?utm_source=benchmark", null).block();
+        }
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UrlMappingService service = new UrlMappingService(Stubs.unsupported(UrlStore.class), redis,
+                new LocalUrlCache(true, 64L << 20, 4096, 300, 100_000, 5, registry),
+                null, null, null, null, new RedirectReplicaService(null, null, registry, false, "unused", 0, Schedulers.immediate()),
+                new ShortenerMetrics(registry));
+        ReflectionTestUtils.setField(service, "earlyRefreshBeta", 0.0);
+        // Click recording is the same call on both routes and measured elsewhere
+        ClickEventService clicks = new ClickEventService(null, null, null) {
+            @Override
+            public void recordRedirect(String shortKey, HttpHeaders headers) {
+            }
+        };
+
+        context = new AnnotationConfigApplicationContext();
+        context.register(WebConfig.class);
+        context.registerBean(PreviousRedirectController.class, () -> new PreviousRedirectController(service, clicks));
+        context.refresh();
+        WebHttpHandlerBuilder builder = WebHttpHandlerBuilder.webHandler(new DispatcherHandler(context));
+        if (route.equals("filter")) {
+            builder.filter(new RedirectWebFilter(service, clicks));
+        }
+        handler = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public HttpStatus redirect() {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        handler.handle(MockServerHttpRequest.get(paths[ThreadLocalRandom.current().nextInt(KEYS)]).build(), response)
+                .block();
+        return (HttpStatus) response.getStatusCode();
+    }
+
+    @Configuration
+    @EnableWebFlux
+    static class WebConfig {
+    }
+
+    /**
+     * UrlMappingController.redirect as it was before the filter took over.
+     */
+    @RestController
+    static class PreviousRedirectController {
+
+        private final UrlMappingService urlMappingService;
+        private final ClickEventService clickEventService;
+
+        PreviousRedirectController(UrlMappingService urlMappingService, ClickEventService clickEventService) {
+            this.urlMappingService = urlMappingService;
+            this.clickEventService = clickEventService;
+        }
+
+        @GetMapping("/{shortKey}")
+        public Mono<ResponseEntity<Void>> redirect(@PathVariable String shortKey, @RequestHeader HttpHeaders requestHeaders) {
+            return urlMappingService.getLongUrl(shortKey)
+                    .doOnNext(longUrl -> clickEventService.recordRedirect(shortKey.toLowerCase(), requestHeaders))
+                    .map(longUrl -> {
+                        HttpHeaders headers = new HttpHeaders();
+                        headers.setLocation(URI.create(longUrl));
+                        return new ResponseEntity<Void>(headers, HttpStatus.FOUND);
+                    })
+                    .defaultIfEmpty(ResponseEntity.notFound().build());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.urlshortener.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scheduler for the few stages that must block (file I/O and fsync, snapshot loading), so
+ * they never run on a Netty event loop or a parallel() worker. "virtual" runs each task on
+ * its own virtual thread (Java 21+), "bounded-elastic" on a capped pool, and "auto" picks
+ * virtual threads when the runtime has them. Looked up reflectively, so the build stays on 17.
+ */
+@Slf4j
+@Configuration
+public class BlockingSchedulerConfig {
+
+    public enum Mode {
+        AUTO, VIRTUAL, BOUNDED_ELASTIC
+    }
+
+    @Bean(name = "blockingScheduler", destroyMethod = "dispose")
+    public Scheduler blockingScheduler(@Value("${shortener.blocking.scheduler}") Mode mode,
+                                       @Value("${shortener.blocking.thread-cap}") int threadCap,
+                                       @Value("${shortener.blocking.queued-tasks}") int queuedTasks) {
+        if (mode != Mode.BOUNDED_ELASTIC) {
+            ExecutorService virtualThreads = virtualThreadExecutor();
+            if (virtualThreads != null) {
+                log.info("Blocking work runs on virtual threads");
+                return Schedulers.fromExecutorService(virtualThreads, "blocking");
+            }
+            if (mode == Mode.VIRTUAL) {
+                log.warn("Virtual threads need Java 21+ (running {}), using a bounded-elastic pool",
+                        Runtime.version().feature());
+            }
+        }
+        log.info("Blocking work runs on a bounded-elastic pool of up to {} threads", threadCap);
+        return Schedulers.newBoundedElastic(threadCap, queuedTasks, "blocking");
+    }
+
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
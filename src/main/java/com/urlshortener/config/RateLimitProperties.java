@@ -0,0 +1,57 @@
+package com.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-client rate limits. Each tier maps a route class (shorten, bulk, redirect,
+ * admin, analytics) to a token bucket; a route class missing from a tier is not limited.
+ * Callers presenting a configured API key get their client's tier, everyone else is
+ * limited per IP under the anonymous tier.
+ */
+@Data
+@ConfigurationProperties("shortener.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // Only enable behind a proxy that overwrites X-Forwarded-For
+    private boolean trustForwardedFor = false;
+
+    private String anonymousTier = "anonymous";
+
+    // Share of a bucket's capacity a node leases from Redis at once and then spends locally
+    private double leaseFraction = 0.1;
+
+    // Unspent leased tokens are dropped after this, so a lease cannot be saved up for a burst
+    private Duration leaseTtl = Duration.ofSeconds(1);
+
+    private long maxLocalBuckets = 100_000;
+
+    private Map<String, Map<String, Limit>> tiers = new HashMap<>();
+
+    private Map<String, Client> clients = new HashMap<>();
+
+    @Data
+    public static class Limit {
+        private long capacity;
+        // Time for an empty bucket to refill completely
+        private Duration refillPeriod = Duration.ofSeconds(60);
+
+        public double tokensPerMilli() {
+            return (double) capacity / Math.max(1, refillPeriod.toMillis());
+        }
+    }
+
+    @Data
+    public static class Client {
+        private String apiKey;
+        private String tier;
+        // Clients of one tenant share a bucket
+        private String tenant;
+    }
+}
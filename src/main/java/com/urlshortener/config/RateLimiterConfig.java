@@ -1,14 +1,9 @@
 package com.urlshortener.config;
 
-import io.github.resilience4j.ratelimiter.RateLimiter;
-import org.springframework.context.annotation.Bean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@EnableConfigurationProperties(RateLimitProperties.class)
 public class RateLimiterConfig {
-
-    @Bean
-    public RateLimiter shortenerRateLimiter(io.github.resilience4j.ratelimiter.RateLimiterRegistry registry) {
-        return registry.rateLimiter("shortener");
-    }
 }
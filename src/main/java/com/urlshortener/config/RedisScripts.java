@@ -0,0 +1,43 @@
+package com.urlshortener.config;
+
+import lombok.experimental.UtilityClass;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lua scripts shared by several services, and the ones in src/main/resources/scripts, read
+ * once when the owning class loads. RedisScript.of(Resource) re-reads the file whenever the
+ * script runs, which is a blocking read on the Redis client's event loop.
+ */
+@UtilityClass
+public class RedisScripts {
+
+    /**
+     * KEYS[1]: lock, ARGV[1]: owner. Deletes the lock only if this owner still holds it.
+     */
+    public static final RedisScript<Long> RELEASE_LOCK = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    /**
+     * KEYS[1]: lock, ARGV[1]: owner, ARGV[2]: TTL in millis. Extends the lock only if this
+     * owner still holds it; 0 means it was lost.
+     */
+    public static final RedisScript<Long> RENEW_LOCK = RedisScript.of("""
+            if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end
+            return redis.call('pexpire', KEYS[1], ARGV[2])""", Long.class);
+
+    public <T> RedisScript<T> load(String name, Class<T> resultType) {
+        try (InputStream in = new ClassPathResource("scripts/" + name).getInputStream()) {
+            return RedisScript.of(StreamUtils.copyToString(in, StandardCharsets.UTF_8), resultType);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read Redis script " + name, e);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.urlshortener.controller;
 
 import com.urlshortener.dto.AnalyticsSummary;
+import com.urlshortener.dto.CursorPage;
+import com.urlshortener.dto.TrendingUrl;
 import com.urlshortener.model.UrlMapping;
 import com.urlshortener.service.AnalyticsService;
 import lombok.RequiredArgsConstructor;
@@ -15,13 +17,22 @@ public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
 
-    /* curl http://localhost:8111/admin/analytics/top-clicked?page=0&size=10 */
+    /* curl "http://localhost:8111/admin/analytics/top-clicked?size=10&cursor={nextCursor}" */
     @GetMapping("/top-clicked")
-    public Flux<UrlMapping> getTopClicked(
-            @RequestParam(defaultValue = "0") int page,
+    public Mono<CursorPage<UrlMapping>> getTopClicked(
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "10") int size
     ) {
-        return analyticsService.getTopClickedUrls(page, size);
+        return analyticsService.getTopClickedUrls(cursor, size);
+    }
+
+    /* curl "http://localhost:8111/admin/analytics/top-clicked/trending?window=1h&limit=10" */
+    @GetMapping("/top-clicked/trending")
+    public Flux<TrendingUrl> getTrending(
+            @RequestParam(defaultValue = "5m") String window,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        return analyticsService.getTrendingUrls(window, limit);
     }
 
     /* curl http://localhost:8111/admin/analytics/summary */
@@ -30,4 +41,10 @@ public class AnalyticsController {
         return analyticsService.getSummary();
     }
 
+    /* curl -X POST http://localhost:8111/admin/analytics/summary/reconcile */
+    @PostMapping("/summary/reconcile")
+    public Mono<AnalyticsSummary> reconcileSummary() {
+        return analyticsService.reconcileSummary();
+    }
+
 }
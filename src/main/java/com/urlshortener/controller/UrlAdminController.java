@@ -1,11 +1,13 @@
 package com.urlshortener.controller;
 
+import com.urlshortener.dto.CursorPage;
+import com.urlshortener.model.PurgeJob;
 import com.urlshortener.model.UrlMapping;
 import com.urlshortener.service.UrlMappingAdminService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @RestController
@@ -15,13 +17,14 @@ public class UrlAdminController {
 
     private final UrlMappingAdminService adminService;
 
-    /* curl http://localhost:8111/admin/urls?page=0&size=5 */
+    /* curl "http://localhost:8111/admin/urls?sort=createdAt&size=5&cursor={nextCursor}" */
     @GetMapping("/urls")
-    public Flux<UrlMapping> listUrls(
-            @RequestParam(defaultValue = "0") int page,
+    public Mono<CursorPage<UrlMapping>> listUrls(
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "10") int size
     ) {
-        return adminService.getAllUrls(page, size);
+        return adminService.getAllUrls(sort, cursor, size);
     }
 
     /* curl -X DELETE http://localhost:8111/admin/urls/{shortKey} */
@@ -34,7 +37,17 @@ public class UrlAdminController {
     @DeleteMapping("/expired")
     public Mono<ResponseEntity<String>> deleteExpired() {
         return adminService.deleteExpiredUrls()
-                .map(count -> ResponseEntity.ok("Deleted expired entries: " + count));
+                .map(job -> ResponseEntity.ok("Deleted expired entries: " + job.getDeleted()))
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body("Expired purge already running on another node; see /admin/expired/status"));
+    }
+
+    /* curl http://localhost:8111/admin/expired/status */
+    @GetMapping("/expired/status")
+    public Mono<ResponseEntity<PurgeJob>> purgeStatus() {
+        return adminService.getPurgeStatus()
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
 }
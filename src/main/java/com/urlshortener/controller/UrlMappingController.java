@@ -1,36 +1,49 @@
 package com.urlshortener.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.dto.BulkJobProgress;
 import com.urlshortener.dto.BulkShortenRequestItem;
 import com.urlshortener.dto.BulkShortenResponseItem;
+import com.urlshortener.dto.ClickHistogramPoint;
 import com.urlshortener.dto.ShortenRequest;
-import com.urlshortener.service.RateLimiterService;
+import com.urlshortener.service.BulkJobService;
+import com.urlshortener.service.BulkShortenService;
+import com.urlshortener.service.ClickTimeSeriesService;
+import com.urlshortener.service.CsvBulkRowParser;
+import com.urlshortener.service.IdempotencyService;
 import com.urlshortener.service.UrlMappingService;
+import com.urlshortener.web.RateLimitWebFilter;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
 
 @RestController
 @RequiredArgsConstructor
 public class UrlMappingController {
 
     private final UrlMappingService urlMappingService;
-    private final RateLimiterService rateLimiterService;
+    private final BulkShortenService bulkShortenService;
+    private final BulkJobService bulkJobService;
+    private final CsvBulkRowParser csvBulkRowParser;
+    private final ClickTimeSeriesService clickTimeSeriesService;
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
 
     /**
      * Shorten a long URL with optional custom alias
@@ -38,30 +51,20 @@ public class UrlMappingController {
      * curl -X POST http://localhost:8111/shorten \
      *      -H "Content-Type: application/json" \
      *      -d '{"longUrl": "https://google.com", "customAlias": "openai"}'
+     *
+     * A retry that sends the same Idempotency-Key header gets the first response back.
      */
     @PostMapping("/shorten")
-    public Mono<ResponseEntity<String>> shortenUrl(@RequestBody ShortenRequest request) {
-        return rateLimiterService.executeWithRateLimiter(
-                urlMappingService.shortenUrl(request.getLongUrl(), request.getCustomAlias(), request.getExpiryDays())
-        ).map(ResponseEntity::ok);
+    public Mono<ResponseEntity<String>> shortenUrl(@RequestBody ShortenRequest request,
+                                                   @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                                   @RequestHeader(name = RateLimitWebFilter.API_KEY_HEADER, required = false) String apiKey) {
+        return idempotencyService.execute(idempotencyKey, idempotencyService.scope("shorten", apiKey), request,
+                        objectMapper.constructType(String.class),
+                        () -> urlMappingService.shortenUrl(request.getLongUrl(), request.getCustomAlias(), request.getExpiryDays()))
+                .map(ResponseEntity::ok);
     }
 
-
-    /**
-     * Redirect to the original URL
-     *
-     * curl -i http://localhost:8111/{shortKey}
-     */
-    @GetMapping("/{shortKey}")
-    public Mono<ResponseEntity<Void>> redirect(@PathVariable String shortKey) {
-        return urlMappingService.getLongUrl(shortKey)
-                .map(longUrl -> {
-                    HttpHeaders headers = new HttpHeaders();
-                    headers.setLocation(URI.create(longUrl));
-                    return new ResponseEntity<Void>(headers, HttpStatus.FOUND);
-                })
-                .defaultIfEmpty(ResponseEntity.notFound().build());
-    }
+    // GET /{shortKey} redirects are served by RedirectWebFilter, ahead of the controllers
 
     /**
      * Get click analytics for a short URL
@@ -75,6 +78,24 @@ public class UrlMappingController {
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Click histogram for a short URL over a time range (defaults to the last 24 hours)
+     *
+     * curl "http://localhost:8111/analytics/{shortKey}/histogram?granularity=hour&from=2026-01-01T00:00:00Z&to=2026-01-02T00:00:00Z"
+     */
+    @GetMapping("/analytics/{shortKey}/histogram")
+    public Flux<ClickHistogramPoint> getHistogram(
+            @PathVariable String shortKey,
+            @RequestParam(defaultValue = "hour") String granularity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to
+    ) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(Duration.ofDays(1));
+        return clickTimeSeriesService.getHistogram(shortKey.toLowerCase(),
+                ClickTimeSeriesService.Granularity.fromValue(granularity), start, end);
+    }
+
     /**
      * Preview the original URL without redirecting
      *
@@ -93,117 +114,136 @@ public class UrlMappingController {
      * curl -X POST http://localhost:8111/bulk-shorten \
      *      -H "Content-Type: application/json" \
      *      -d '[{"longUrl":"https://openai.com","customAlias":"openai","expiryDays":30},{"longUrl":"https://google.com"}]'
+     *
+     * With an Idempotency-Key header a resubmitted batch returns the first run's results instead of shortening again.
      */
     @PostMapping("/bulk-shorten")
-    public Mono<ResponseEntity<List<BulkShortenResponseItem>>> bulkShorten(@RequestBody List<BulkShortenRequestItem> bulkRequests) {
-        return Flux.fromIterable(bulkRequests)
-                .flatMap(requestItem -> urlMappingService.shortenUrl(requestItem.getLongUrl(), requestItem.getCustomAlias(), requestItem.getExpiryDays())
-                        .map(shortUrl -> new BulkShortenResponseItem(
-                                requestItem.getLongUrl(),
-                                shortUrl,
-                                "SUCCESS",
-                                null
-                        ))
-                        .onErrorResume(error -> Mono.just(new BulkShortenResponseItem(
-                                requestItem.getLongUrl(),
-                                null,
-                                "FAILED",
-                                error.getMessage()
-                        )))
-                )
-                .collectList()
+    public Mono<ResponseEntity<List<BulkShortenResponseItem>>> bulkShorten(@RequestBody List<BulkShortenRequestItem> bulkRequests,
+                                                                           @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                                                           @RequestHeader(name = RateLimitWebFilter.API_KEY_HEADER, required = false) String apiKey) {
+        return idempotencyService.execute(idempotencyKey, idempotencyService.scope("bulk-shorten", apiKey), bulkRequests,
+                        objectMapper.getTypeFactory().constructCollectionType(List.class, BulkShortenResponseItem.class),
+                        () -> bulkShortenService.shortenAll(bulkRequests).collectList())
                 .map(ResponseEntity::ok);
     }
 
     /**
-     * Bulk shorten URLs via CSV upload
+     * Bulk shorten URLs via CSV upload. The file is parsed as it streams in and results
+     * are written back while processing runs: a JSON array by default, or NDJSON with
+     * Accept: application/x-ndjson.
      *
      * curl -X POST http://localhost:8111/bulk-shorten/csv \
      *      -H "Content-Type: multipart/form-data" \
+     *      -H "Accept: application/x-ndjson" \
      *      -F "file=@urls.csv"
      */
-    @PostMapping("/bulk-shorten/csv")
-    public Mono<ResponseEntity<List<BulkShortenResponseItem>>> bulkShortenCsv(@RequestPart("file") MultipartFile file) {
-        try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8));
-
-            CSVParser csvParser = CSVFormat.DEFAULT
-                    .withFirstRecordAsHeader()
-                    .parse(reader);
-
-            List<BulkShortenRequestItem> bulkRequests = new ArrayList<>();
-
-            List<BulkShortenResponseItem> invalidRows = new ArrayList<>();
-
-            for (CSVRecord record : csvParser) {
-                try {
-                    String longUrl = record.get("longUrl").trim();
-                    if (longUrl.isBlank()) {
-                        invalidRows.add(new BulkShortenResponseItem(
-                                null,
-                                null,
-                                "FAILED",
-                                "Missing longUrl in CSV row"
-                        ));
-                        continue;
-                    }
+    @PostMapping(value = "/bulk-shorten/csv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Flux<BulkShortenResponseItem>> bulkShortenCsv(@RequestBody Flux<PartEvent> parts,
+                                                                        @RequestHeader HttpHeaders requestHeaders) {
+        boolean ndjson = requestHeaders.getAccept().stream()
+                .anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(bulkShortenService.shorten(csvBulkRowParser.parse(fileContent(parts))));
+    }
 
-                    BulkShortenRequestItem item = new BulkShortenRequestItem();
-                    item.setLongUrl(longUrl);
+    /**
+     * Same as above, but the results come back as a downloadable CSV
+     *
+     * curl -X POST "http://localhost:8111/bulk-shorten/csv?format=csv" \
+     *      -H "Content-Type: multipart/form-data" \
+     *      -F "file=@urls.csv" -o results.csv
+     */
+    @PostMapping(value = "/bulk-shorten/csv", params = "format=csv",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = "text/csv")
+    public ResponseEntity<Flux<String>> bulkShortenCsvAsCsv(@RequestBody Flux<PartEvent> parts) {
+        Flux<String> lines = bulkShortenService.shorten(csvBulkRowParser.parse(fileContent(parts)))
+                .map(item -> CSVFormat.DEFAULT.format(item.getRow(), item.getOriginalUrl(), item.getShortUrl(),
+                        item.getStatus(), item.getError()) + "\n")
+                .startWith("row,originalUrl,shortUrl,status,error\n");
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"shortened.csv\"")
+                .body(lines);
+    }
 
-                    if (record.isMapped("customAlias") && !record.get("customAlias").isBlank()) {
-                        item.setCustomAlias(record.get("customAlias").trim());
+    /**
+     * Submit a CSV as an asynchronous job: the upload is stored and processed in the background,
+     * surviving client disconnects and node restarts. Without an API key the response carries
+     * an X-Job-Token header, needed to read or cancel the job
+     *
+     * curl -X POST http://localhost:8111/bulk-jobs \
+     *      -H "Content-Type: multipart/form-data" \
+     *      -F "file=@urls.csv"
+     */
+    @PostMapping(value = "/bulk-jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<BulkJobProgress>> submitBulkJob(@RequestBody Flux<PartEvent> parts,
+                                                               @RequestHeader(name = RateLimitWebFilter.API_KEY_HEADER, required = false) String apiKey) {
+        return bulkJobService.submit(fileContent(parts), apiKey)
+                .map(submitted -> {
+                    ResponseEntity.BodyBuilder accepted = ResponseEntity.accepted()
+                            .location(URI.create("/bulk-jobs/" + submitted.job().getId()));
+                    if (submitted.token() != null) {
+                        accepted.header(BulkJobService.TOKEN_HEADER, submitted.token());
                     }
+                    return accepted.body(BulkJobProgress.of(submitted.job()));
+                });
+    }
 
-                    if (record.isMapped("expiryDays") && !record.get("expiryDays").isBlank()) {
-                        try {
-                            item.setExpiryDays(Integer.parseInt(record.get("expiryDays").trim()));
-                        } catch (NumberFormatException nfe) {
-                            invalidRows.add(new BulkShortenResponseItem(
-                                    longUrl,
-                                    null,
-                                    "FAILED",
-                                    "Invalid expiryDays: must be an integer"
-                            ));
-                            continue;
-                        }
-                    }
+    /* curl http://localhost:8111/bulk-jobs/{jobId} -H "X-Job-Token: {token}" */
+    @GetMapping("/bulk-jobs/{jobId}")
+    public Mono<ResponseEntity<BulkJobProgress>> bulkJobProgress(@PathVariable String jobId,
+                                                                 @RequestHeader(name = RateLimitWebFilter.API_KEY_HEADER, required = false) String apiKey,
+                                                                 @RequestHeader(name = BulkJobService.TOKEN_HEADER, required = false) String jobToken) {
+        return bulkJobService.find(jobId, apiKey, jobToken)
+                .map(job -> ResponseEntity.ok(BulkJobProgress.of(job)))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
 
-                    bulkRequests.add(item);
-
-                } catch (Exception e) {
-                    invalidRows.add(new BulkShortenResponseItem(
-                            null,
-                            null,
-                            "FAILED",
-                            "Error parsing CSV row: " + e.getMessage()
-                    ));
-                }
-            }
-
-            return Flux.fromIterable(bulkRequests)
-                    .flatMap(requestItem -> urlMappingService.shortenUrl(requestItem.getLongUrl(), requestItem.getCustomAlias(), requestItem.getExpiryDays())
-                            .map(shortUrl -> new BulkShortenResponseItem(
-                                    requestItem.getLongUrl(),
-                                    shortUrl,
-                                    "SUCCESS",
-                                    null
-                            ))
-                            .onErrorResume(error -> Mono.just(new BulkShortenResponseItem(
-                                    requestItem.getLongUrl(),
-                                    null,
-                                    "FAILED",
-                                    error.getMessage()
-                            )))
-                    )
-                    .concatWith(Flux.fromIterable(invalidRows)) // Add invalid parsed rows at the end
-                    .collectList()
-                    .map(ResponseEntity::ok);
-
-        } catch (Exception e) {
-            return Mono.error(new RuntimeException("Failed to process CSV file: " + e.getMessage()));
-        }
+    /**
+     * Results stored so far, in row order; page with after={last row seen}. JSON array by default,
+     * NDJSON with Accept: application/x-ndjson
+     *
+     * curl "http://localhost:8111/bulk-jobs/{jobId}/results?after=0&limit=1000"
+     */
+    @GetMapping("/bulk-jobs/{jobId}/results")
+    public Mono<ResponseEntity<Flux<BulkShortenResponseItem>>> bulkJobResults(
+            @PathVariable String jobId,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "1000") int limit,
+            @RequestHeader HttpHeaders requestHeaders
+    ) {
+        boolean ndjson = requestHeaders.getAccept().stream()
+                .anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+        return bulkJobService.find(jobId, requestHeaders.getFirst(RateLimitWebFilter.API_KEY_HEADER),
+                        requestHeaders.getFirst(BulkJobService.TOKEN_HEADER))
+                .map(job -> ResponseEntity.ok()
+                        .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                        .body(bulkJobService.results(job, after, Math.max(1, Math.min(limit, 10_000)))))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /* curl -X DELETE http://localhost:8111/bulk-jobs/{jobId} -H "X-Job-Token: {token}" */
+    @DeleteMapping("/bulk-jobs/{jobId}")
+    public Mono<ResponseEntity<BulkJobProgress>> cancelBulkJob(@PathVariable String jobId,
+                                                               @RequestHeader(name = RateLimitWebFilter.API_KEY_HEADER, required = false) String apiKey,
+                                                               @RequestHeader(name = BulkJobService.TOKEN_HEADER, required = false) String jobToken) {
+        return bulkJobService.cancel(jobId, apiKey, jobToken)
+                .map(job -> ResponseEntity.ok(BulkJobProgress.of(job)))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Content of the "file" part as it arrives; other parts are drained and released.
+     */
+    private Flux<DataBuffer> fileContent(Flux<PartEvent> parts) {
+        return parts
+                .windowUntil(PartEvent::isLast)
+                .concatMap(partEvents -> partEvents.switchOnFirst((first, events) -> {
+                    if (first.hasValue() && first.get() instanceof FilePartEvent && "file".equals(first.get().name())) {
+                        return events.map(PartEvent::content);
+                    }
+                    return events.doOnNext(event -> DataBufferUtils.release(event.content())).thenMany(Flux.empty());
+                }));
+    }
 
 }
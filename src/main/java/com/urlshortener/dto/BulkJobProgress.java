@@ -0,0 +1,33 @@
+package com.urlshortener.dto;
+
+import com.urlshortener.model.BulkJob;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class BulkJobProgress {
+    private String jobId;
+    private BulkJob.Status status;
+    private long rowsDone;        // rows with a stored result, failed ones included
+    private long rowsFailed;
+    private double rowsPerSecond; // since the job started; 0 while queued
+    private Instant createdAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+
+    public static BulkJobProgress of(BulkJob job) {
+        double rate = 0;
+        if (job.getStartedAt() != null) {
+            Instant end = job.getFinishedAt() != null ? job.getFinishedAt() : Instant.now();
+            long millis = Duration.between(job.getStartedAt(), end).toMillis();
+            rate = millis > 0 ? job.getRowsDone() * 1000.0 / millis : 0;
+        }
+        return new BulkJobProgress(job.getId(), job.getStatus(), job.getRowsDone(), job.getRowsFailed(), rate,
+                job.getCreatedAt(), job.getStartedAt(), job.getFinishedAt(), job.getError());
+    }
+}
@@ -0,0 +1,18 @@
+package com.urlshortener.dto;
+
+/**
+ * One input row of a bulk shorten request. Rows that could not be parsed carry
+ * the parse error instead of an item, so they are still reported in order.
+ */
+public record BulkRow(long row, BulkShortenRequestItem item, String parseError) {
+
+    public static BulkRow of(long row, BulkShortenRequestItem item) {
+        return new BulkRow(row, item, null);
+    }
+
+    public static BulkRow invalid(long row, String longUrl, String parseError) {
+        BulkShortenRequestItem item = new BulkShortenRequestItem();
+        item.setLongUrl(longUrl);
+        return new BulkRow(row, item, parseError);
+    }
+}
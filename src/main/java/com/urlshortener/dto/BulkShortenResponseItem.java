@@ -2,10 +2,13 @@ package com.urlshortener.dto;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
 public class BulkShortenResponseItem {
+    private long row;             // 1-based position in the request / CSV data rows
     private String originalUrl;
     private String shortUrl;
     private String status;
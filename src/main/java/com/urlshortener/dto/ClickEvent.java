@@ -0,0 +1,9 @@
+package com.urlshortener.dto;
+
+import java.time.Instant;
+
+/**
+ * One redirect, reduced to low-cardinality dimensions at the edge.
+ */
+public record ClickEvent(String shortKey, Instant timestamp, String referrerHost, String agentClass, String country) {
+}
@@ -0,0 +1,17 @@
+package com.urlshortener.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class ClickHistogramPoint {
+    private Instant bucketStart;
+    private long clicks;
+    private Map<String, Long> referrers;
+    private Map<String, Long> agents;
+    private Map<String, Long> countries;
+}
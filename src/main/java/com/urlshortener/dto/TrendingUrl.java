@@ -0,0 +1,11 @@
+package com.urlshortener.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class TrendingUrl {
+    private String shortKey;
+    private long clicks;
+}
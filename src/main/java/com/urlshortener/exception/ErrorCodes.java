@@ -4,5 +4,9 @@ public class ErrorCodes {
     public static final String ERR_INVALID_ALIAS = "ERR_INVALID_ALIAS";
     public static final String ERR_ALIAS_TAKEN = "ERR_ALIAS_TAKEN";
     public static final String ERR_INVALID_URL = "ERR_INVALID_URL";
+    public static final String ERR_INVALID_REQUEST = "ERR_INVALID_REQUEST";
+    public static final String ERR_IDEMPOTENCY_KEY_REUSED = "ERR_IDEMPOTENCY_KEY_REUSED";
+    public static final String ERR_IDEMPOTENCY_IN_PROGRESS = "ERR_IDEMPOTENCY_IN_PROGRESS";
+    public static final String ERR_RATE_LIMIT_EXCEEDED = "ERR_RATE_LIMIT_EXCEEDED";
     public static final String ERR_INTERNAL_SERVER_ERROR = "ERR_INTERNAL_SERVER_ERROR";
 }
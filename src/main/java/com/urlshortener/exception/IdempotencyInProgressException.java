@@ -0,0 +1,7 @@
+package com.urlshortener.exception;
+
+public class IdempotencyInProgressException extends RuntimeException {
+    public IdempotencyInProgressException(String message) {
+        super(message);
+    }
+}
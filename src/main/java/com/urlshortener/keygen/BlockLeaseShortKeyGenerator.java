@@ -0,0 +1,99 @@
+package com.urlshortener.keygen;
+
+import com.urlshortener.model.KeyCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Leases blocks of ids from an atomic counter in Mongo and hands them out locally,
+ * so generating a key costs one round trip per block instead of an existence check per key.
+ * Ids are optionally passed through a bijective affine scramble so consecutive keys don't look sequential.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "shortener.keygen.strategy", havingValue = "block", matchIfMissing = true)
+public class BlockLeaseShortKeyGenerator implements ShortKeyGenerator {
+
+    private static final String COUNTER_ID = "url_mapping";
+
+    // Generated keys are 7 chars: one longer than legacy random keys, so the two never collide
+    private static final int KEY_LENGTH = 7;
+    private static final long KEY_SPACE = 78_364_164_096L; // 36^7
+
+    // Multiplier is prime (coprime with 36) and small enough that id * MULTIPLIER fits in a long
+    private static final long MULTIPLIER = 50_331_653L;
+    private static final long OFFSET = 11_234_567_891L;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Value("${shortener.keygen.block-size}")
+    private long blockSize;
+
+    @Value("${shortener.keygen.scramble}")
+    private boolean scramble;
+
+    private long next;
+    private long end;
+    private Mono<long[]> pendingLease;
+
+    public BlockLeaseShortKeyGenerator(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<String> nextKey() {
+        return Mono.defer(() -> {
+            Mono<long[]> lease;
+            synchronized (this) {
+                if (next < end) {
+                    return Mono.just(toKey(next++));
+                }
+                // Concurrent callers share a single in-flight lease
+                if (pendingLease == null) {
+                    pendingLease = leaseBlock()
+                            .doOnNext(this::installBlock)
+                            .doFinally(signal -> clearPendingLease())
+                            .cache();
+                }
+                lease = pendingLease;
+            }
+            return lease.then(nextKey());
+        });
+    }
+
+    String toKey(long id) {
+        if (id >= KEY_SPACE) {
+            // Counter outgrew the 7-char space; longer keys are still unique, just unscrambled
+            return ShortKeyCodec.encode(id, KEY_LENGTH + 1);
+        }
+        long value = scramble ? (id * MULTIPLIER + OFFSET) % KEY_SPACE : id;
+        return ShortKeyCodec.encode(value, KEY_LENGTH);
+    }
+
+    private Mono<long[]> leaseBlock() {
+        return mongoTemplate.findAndModify(
+                        Query.query(Criteria.where("_id").is(COUNTER_ID)),
+                        new Update().inc("value", blockSize),
+                        FindAndModifyOptions.options().returnNew(true).upsert(true),
+                        KeyCounter.class)
+                .map(counter -> new long[]{counter.getValue() - blockSize, counter.getValue()})
+                .doOnNext(block -> log.info("Leased short key id block [{}, {})", block[0], block[1]));
+    }
+
+    private synchronized void installBlock(long[] block) {
+        next = block[0];
+        end = block[1];
+    }
+
+    private synchronized void clearPendingLease() {
+        pendingLease = null;
+    }
+}
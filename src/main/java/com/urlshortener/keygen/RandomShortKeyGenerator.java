@@ -0,0 +1,57 @@
+package com.urlshortener.keygen;
+
+import com.urlshortener.store.UrlStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Original strategy: random 6-char key, checked against the store and retried on collision.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "shortener.keygen.strategy", havingValue = "random")
+public class RandomShortKeyGenerator implements ShortKeyGenerator {
+
+    private static final int SHORT_KEY_LENGTH = 6;
+    private static final int MAX_RETRY = 5;
+
+    private final UrlStore urlStore;
+
+    public RandomShortKeyGenerator(UrlStore urlStore) {
+        this.urlStore = urlStore;
+    }
+
+    @Override
+    public Mono<String> nextKey() {
+        return tryGenerateShortKey(0);
+    }
+
+    //Collisions will be very rare because 36^6 = 2 billion combinations possible.
+    private Mono<String> tryGenerateShortKey(int retryCount) {
+        String shortKey = generateRandomShortKey();
+        return urlStore.findByShortKey(shortKey)
+                .flatMap(existing -> {
+                    if (retryCount >= MAX_RETRY) {
+                        // Retry limit reached, throw error
+                        return Mono.<String>error(new RuntimeException("Unable to generate unique short key after retries"));
+                    }
+                    // If key exists, retry again
+                    log.warn("Short key collision detected: [{}], retrying {}/{}", shortKey, retryCount + 1, MAX_RETRY);
+                    return tryGenerateShortKey(retryCount + 1);
+                })
+                .switchIfEmpty(Mono.just(shortKey)); // No collision, accept it
+    }
+
+    private String generateRandomShortKey() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder sb = new StringBuilder(SHORT_KEY_LENGTH);
+        for (int i = 0; i < SHORT_KEY_LENGTH; i++) {
+            sb.append(ShortKeyCodec.ALPHABET.charAt(random.nextInt(ShortKeyCodec.BASE)));
+        }
+        return sb.toString();
+    }
+}
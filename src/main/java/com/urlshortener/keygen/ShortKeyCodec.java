@@ -0,0 +1,62 @@
+package com.urlshortener.keygen;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Encodes numeric ids as short keys. Lookups lower-case the incoming key, so the
+ * alphabet is digits plus lower-case letters (base 36) rather than mixed-case base 62.
+ */
+@UtilityClass
+public class ShortKeyCodec {
+
+    public static final String ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyz";
+    public static final int BASE = ALPHABET.length();
+
+    // Longest key that always fits in a signed long: 36^12 < Long.MAX_VALUE
+    public static final int MAX_PACKED_LENGTH = 12;
+
+    public String encode(long value, int minLength) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Cannot encode negative id: " + value);
+        }
+        char[] buf = new char[MAX_PACKED_LENGTH + 1];
+        int pos = buf.length;
+        do {
+            buf[--pos] = ALPHABET.charAt((int) (value % BASE));
+            value /= BASE;
+        } while (value > 0);
+        while (buf.length - pos < minLength) {
+            buf[--pos] = ALPHABET.charAt(0);
+        }
+        return new String(buf, pos, buf.length - pos);
+    }
+
+    /**
+     * @return the decoded value, or -1 if the key is not a packable base-36 string
+     */
+    public long decode(CharSequence key) {
+        int length = key.length();
+        if (length == 0 || length > MAX_PACKED_LENGTH) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = digit(key.charAt(i));
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * BASE + digit;
+        }
+        return value;
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,17 @@
+package com.urlshortener.keygen;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Source of short keys for mappings created without a custom alias.
+ * The unique index on UrlMapping.shortKey stays the final guard against collisions.
+ */
+public interface ShortKeyGenerator {
+
+    Mono<String> nextKey();
+
+    default Flux<String> nextKeys(int count) {
+        return Flux.range(0, count).concatMap(i -> nextKey());
+    }
+}
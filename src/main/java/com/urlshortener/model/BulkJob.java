@@ -0,0 +1,56 @@
+package com.urlshortener.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * An asynchronous bulk-shorten job. The uploaded CSV sits in GridFS until the job ends;
+ * a node works on it while it holds the lease and checkpoints after every batch of
+ * results, so a job whose lease runs out (crash, restart) is picked up where it stopped.
+ */
+@Data
+@Document(collection = "bulk_jobs")
+public class BulkJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    @Id
+    private String id;
+
+    private Status status;
+
+    // Hash of the submitting API key, or "token:" and the hash of an anonymous submission's job token
+    private String owner;
+
+    // GridFS id of the uploaded CSV, deleted once the job ends
+    private String fileId;
+
+    private Instant createdAt;
+
+    private Instant startedAt;
+
+    private Instant updatedAt;
+
+    private Instant finishedAt;
+
+    // Last data row whose result is stored; processing resumes after it
+    private long checkpointRow;
+
+    private long rowsDone;
+
+    private long rowsFailed;
+
+    private boolean cancelRequested;
+
+    private String leaseOwner;
+
+    private Instant leaseExpiresAt;
+
+    private String error;
+
+    // Job and results are dropped by a TTL index after the retention period
+    private Instant expireAt;
+}
@@ -0,0 +1,32 @@
+package com.urlshortener.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * One row's outcome of a {@link BulkJob}; unique on (jobId, row).
+ */
+@Data
+@Document(collection = "bulk_job_results")
+public class BulkJobResult {
+
+    @Id
+    private String id;
+
+    private String jobId;
+
+    private long row;
+
+    private String originalUrl;
+
+    private String shortUrl;
+
+    private String status;
+
+    private String error;
+
+    private Instant expireAt;
+}
@@ -0,0 +1,38 @@
+package com.urlshortener.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Clicks for one short key in one time bucket (minute, hour or day). Dimension
+ * keys are stored with '.' escaped, since Mongo treats dots in field paths as nesting.
+ */
+@Data
+@Document(collection = "click_buckets")
+public class ClickBucket {
+
+    @Id
+    private String id;
+
+    private String shortKey;
+
+    private String granularity;
+
+    private Instant bucketStart;
+
+    private long count;
+
+    private Map<String, Long> referrers = new HashMap<>();
+
+    private Map<String, Long> agents = new HashMap<>();
+
+    private Map<String, Long> countries = new HashMap<>();
+
+    // Retention: removed by the TTL index once this passes
+    private Instant expireAt;
+}
@@ -0,0 +1,16 @@
+package com.urlshortener.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Data
+@Document(collection = "key_counters")
+public class KeyCounter {
+
+    @Id
+    private String id;
+
+    // Next id that has not been leased to any node yet
+    private long value;
+}
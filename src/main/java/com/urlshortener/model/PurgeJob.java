@@ -0,0 +1,43 @@
+package com.urlshortener.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Checkpoint of the expired-URL purge. A run that crashed is left RUNNING and the
+ * next run resumes it with the same cutoff and counters.
+ */
+@Data
+@Document(collection = "purge_jobs")
+public class PurgeJob {
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    @Id
+    private String id;
+
+    private Status status;
+
+    // Mappings that expired before this instant are purged by the run
+    private Instant cutoff;
+
+    private Instant startedAt;
+
+    private Instant updatedAt;
+
+    private Instant finishedAt;
+
+    private long deleted;
+
+    private long batches;
+
+    // expiresAt of the last purged mapping, i.e. how far through the range the run is
+    private Instant lastExpiresAt;
+
+    private String owner;
+
+    private String error;
+}
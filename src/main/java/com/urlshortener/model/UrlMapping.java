@@ -23,5 +23,8 @@ public class UrlMapping {
 
     private Instant expiresAt;
 
+    // UrlNormalizer fingerprint of longUrl; only set while deduplication is enabled
+    private Long urlHash;
+
     private long clickCount = 0;
 }
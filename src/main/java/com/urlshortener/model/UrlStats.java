@@ -0,0 +1,22 @@
+package com.urlshortener.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Data
+@Document(collection = "url_stats")
+public class UrlStats {
+
+    @Id
+    private String id;
+
+    private long totalUrls;
+
+    private long totalClicks;
+
+    // Last time the counters were recomputed from url_mapping
+    private Instant reconciledAt;
+}
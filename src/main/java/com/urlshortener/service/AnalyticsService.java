@@ -1,10 +1,12 @@
 package com.urlshortener.service;
 
 import com.urlshortener.model.UrlMapping;
-import com.urlshortener.repository.UrlMappingRepository;
 import com.urlshortener.dto.AnalyticsSummary;
+import com.urlshortener.dto.CursorPage;
+import com.urlshortener.dto.TrendingUrl;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -13,25 +15,30 @@ import reactor.core.publisher.Mono;
 @RequiredArgsConstructor
 public class AnalyticsService {
 
-    private final UrlMappingRepository repository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final UrlStatsService urlStatsService;
+    private final TrendingLinksService trendingLinksService;
 
-    public Flux<UrlMapping> getTopClickedUrls(int page, int size) {
-        int skip = page * size;
-        return repository.findAll(Sort.by(Sort.Direction.DESC, "clickCount"))
-                .skip(skip)
-                .take(size);
+    private static final KeysetPager.Listing MOST_CLICKED = new KeysetPager.Listing(
+            "clickCount", "clickCount", Sort.Direction.DESC, UrlMapping::getClickCount, value -> value);
+
+    public Mono<CursorPage<UrlMapping>> getTopClickedUrls(String cursor, int size) {
+        // Served by the (clickCount, _id) index; see MongoIndexCreatorService
+        return KeysetPager.page(mongoTemplate, MOST_CLICKED, cursor, size);
+    }
+
+    public Flux<TrendingUrl> getTrendingUrls(String window, int limit) {
+        return trendingLinksService.getTrending(TrendingLinksService.Window.fromLabel(window), limit);
     }
 
     public Mono<AnalyticsSummary> getSummary() {
-        return repository.findAll()
-                .collectList()
-                .map(all -> {
-                    long totalUrls = all.size();
-                    long totalClicks = all.stream()
-                            .mapToLong(url -> url.getClickCount() == 0 ? 0 : url.getClickCount())
-                            .sum();
-                    return new AnalyticsSummary(totalUrls, totalClicks);
-                });
+        // Served from maintained counters, not a scan of url_mapping
+        return urlStatsService.getSummary();
+    }
+
+    public Mono<AnalyticsSummary> reconcileSummary() {
+        return urlStatsService.reconcile()
+                .then(urlStatsService.getSummary());
     }
 
 }
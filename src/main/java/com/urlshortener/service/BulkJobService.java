@@ -0,0 +1,431 @@
+package com.urlshortener.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.urlshortener.dto.BulkShortenResponseItem;
+import com.urlshortener.model.BulkJob;
+import com.urlshortener.model.BulkJobResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous bulk shortening. An upload is stored in GridFS and queued as a
+ * {@link BulkJob}; every node claims queued jobs (or jobs whose lease ran out) one per poll,
+ * up to shortener.jobs.workers at a time, so a backlog spreads over the nodes. Rows go
+ * through {@link BulkShortenService} and their results are written to bulk_job_results
+ * in batches, each followed by a checkpoint that renews the lease and picks up a cancel
+ * request. A resumed job continues after its last checkpoint. A job fails only on its own
+ * errors; when Mongo is unreachable the lease is handed back and the job resumes later.
+ * <p>
+ * A job belongs to the API key that submitted it. An anonymous submission gets a random job
+ * token instead, returned once in {@value #TOKEN_HEADER}; only its hash is stored, and
+ * reading or cancelling the job takes the token back.
+ */
+@Slf4j
+@Service
+public class BulkJobService {
+
+    public static final String TOKEN_HEADER = "X-Job-Token";
+
+    /**
+     * @param token for an anonymous submission the job token, otherwise null
+     */
+    public record Submitted(BulkJob job, String token) {
+    }
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final SecureRandom TOKENS = new SecureRandom();
+
+    /** How long a job handed back after a transient error waits before it can be claimed again. */
+    private static final Duration TRANSIENT_RETRY_DELAY = Duration.ofSeconds(10);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ReactiveGridFsTemplate gridFsTemplate;
+    private final BulkShortenService bulkShortenService;
+    private final CsvBulkRowParser csvBulkRowParser;
+    private final String node = UUID.randomUUID().toString();
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile boolean stopping;
+
+    @Value("${shortener.jobs.workers}")
+    private int workers;
+
+    @Value("${shortener.jobs.lease-seconds}")
+    private long leaseSeconds;
+
+    @Value("${shortener.jobs.checkpoint-rows}")
+    private int checkpointRows;
+
+    @Value("${shortener.jobs.retention-days}")
+    private long retentionDays;
+
+    public BulkJobService(ReactiveMongoTemplate mongoTemplate,
+                          ReactiveGridFsTemplate gridFsTemplate,
+                          BulkShortenService bulkShortenService,
+                          CsvBulkRowParser csvBulkRowParser) {
+        this.mongoTemplate = mongoTemplate;
+        this.gridFsTemplate = gridFsTemplate;
+        this.bulkShortenService = bulkShortenService;
+        this.csvBulkRowParser = csvBulkRowParser;
+    }
+
+    public Mono<Submitted> submit(Flux<DataBuffer> content, String apiKey) {
+        String token = apiKey == null ? newToken() : null;
+        return gridFsTemplate.store(content, "bulk-job.csv")
+                .flatMap(fileId -> {
+                    Instant now = Instant.now();
+                    BulkJob job = new BulkJob();
+                    job.setStatus(BulkJob.Status.QUEUED);
+                    job.setOwner(owner(apiKey, token));
+                    job.setFileId(fileId.toHexString());
+                    job.setCreatedAt(now);
+                    job.setUpdatedAt(now);
+                    job.setExpireAt(now.plus(Duration.ofDays(retentionDays)));
+                    return mongoTemplate.insert(job)
+                            .onErrorResume(e -> gridFsTemplate.delete(Query.query(Criteria.where("_id").is(fileId)))
+                                    .then(Mono.error(e)));
+                })
+                // Start right away when this node has a free worker instead of waiting for the next poll
+                .doOnNext(job -> claimJobs())
+                .map(job -> new Submitted(job, token));
+    }
+
+    /**
+     * @param jobToken only looked at without an API key
+     * @return the job, or empty when it does not exist or the caller does not own it
+     */
+    public Mono<BulkJob> find(String jobId, String apiKey, String jobToken) {
+        Query owned = ownedBy(jobId, apiKey, jobToken);
+        return owned != null ? mongoTemplate.findOne(owned, BulkJob.class) : Mono.empty();
+    }
+
+    /**
+     * Results in row order after {@code afterRow}; whatever has been stored so far while the job runs.
+     */
+    public Flux<BulkShortenResponseItem> results(BulkJob job, long afterRow, int limit) {
+        Query query = Query.query(Criteria.where("jobId").is(job.getId()).and("row").gt(afterRow))
+                .with(Sort.by(Sort.Direction.ASC, "row"))
+                .limit(limit);
+        return mongoTemplate.find(query, BulkJobResult.class)
+                .map(result -> new BulkShortenResponseItem(result.getRow(), result.getOriginalUrl(),
+                        result.getShortUrl(), result.getStatus(), result.getError()));
+    }
+
+    /**
+     * A queued job is cancelled at once; a running one stops at its next checkpoint.
+     */
+    public Mono<BulkJob> cancel(String jobId, String apiKey, String jobToken) {
+        if (ownedBy(jobId, apiKey, jobToken) == null) {
+            return Mono.empty();
+        }
+        Instant now = Instant.now();
+        Query queued = ownedBy(jobId, apiKey, jobToken).addCriteria(Criteria.where("status").is(BulkJob.Status.QUEUED));
+        Query running = ownedBy(jobId, apiKey, jobToken).addCriteria(Criteria.where("status").is(BulkJob.Status.RUNNING));
+        return mongoTemplate.findAndModify(queued,
+                        new Update().set("status", BulkJob.Status.CANCELLED).set("finishedAt", now).set("updatedAt", now),
+                        FindAndModifyOptions.options().returnNew(true), BulkJob.class)
+                .flatMap(job -> deleteFile(job).thenReturn(job))
+                .switchIfEmpty(Mono.defer(() -> mongoTemplate.findAndModify(running,
+                        new Update().set("cancelRequested", true).set("updatedAt", now),
+                        FindAndModifyOptions.options().returnNew(true), BulkJob.class)))
+                .switchIfEmpty(Mono.defer(() -> find(jobId, apiKey, jobToken)));
+    }
+
+    @Scheduled(fixedDelayString = "${shortener.jobs.poll-interval-ms}")
+    public void claimJobs() {
+        // One claim per call: a node that polls first does not drain the queue while others sit idle
+        if (stopping) {
+            return;
+        }
+        if (running.incrementAndGet() > workers) {
+            running.decrementAndGet();
+            return;
+        }
+        claimNext()
+                .switchIfEmpty(Mono.fromRunnable(running::decrementAndGet))
+                .subscribe(job -> run(job)
+                                .doFinally(signal -> {
+                                    running.decrementAndGet();
+                                    // A worker just freed up; take the next job without waiting for the poll
+                                    claimJobs();
+                                })
+                                .subscribe(
+                                        ignored -> { },
+                                        error -> log.error("Could not record the end of bulk job [{}]: {}", job.getId(), error.getMessage())),
+                        error -> {
+                            running.decrementAndGet();
+                            log.warn("Could not claim a bulk job: {}", error.getMessage());
+                        });
+    }
+
+    /**
+     * Hands this node's jobs back on shutdown, so another node (or this one after a restart)
+     * resumes them without waiting for the lease to run out.
+     */
+    @PreDestroy
+    public void releaseLeases() {
+        stopping = true;
+        if (running.get() == 0) {
+            return;
+        }
+        try {
+            mongoTemplate.updateMulti(Query.query(Criteria.where("status").is(BulkJob.Status.RUNNING).and("leaseOwner").is(node)),
+                            new Update().set("leaseExpiresAt", Instant.now()).unset("leaseOwner"), BulkJob.class)
+                    .block(Duration.ofSeconds(5));
+        } catch (RuntimeException e) {
+            log.warn("Could not release bulk job leases; they expire in {}s: {}", leaseSeconds, e.getMessage());
+        }
+    }
+
+    private Mono<BulkJob> claimNext() {
+        Instant now = Instant.now();
+        Query claimable = Query.query(new Criteria().orOperator(
+                        Criteria.where("status").is(BulkJob.Status.QUEUED),
+                        Criteria.where("status").is(BulkJob.Status.RUNNING).and("leaseExpiresAt").lt(now)))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"));
+        Update claim = new Update()
+                .set("status", BulkJob.Status.RUNNING)
+                .set("leaseOwner", node)
+                .set("leaseExpiresAt", now.plusSeconds(leaseSeconds))
+                .set("updatedAt", now);
+        return mongoTemplate.findAndModify(claimable, claim, FindAndModifyOptions.options().returnNew(true), BulkJob.class);
+    }
+
+    private Mono<Void> run(BulkJob job) {
+        return resumePoint(job)
+                .flatMap(resumed -> {
+                    if (resumed.isCancelRequested()) {
+                        return finish(resumed, null);
+                    }
+                    log.info("Bulk job [{}] {} at row {} on this node", resumed.getId(),
+                            resumed.getCheckpointRow() == 0 ? "starting" : "resuming", resumed.getCheckpointRow() + 1);
+                    Flux<DataBuffer> content = gridFsTemplate.findOne(Query.query(Criteria.where("_id").is(new ObjectId(resumed.getFileId()))))
+                            .flatMap(gridFsTemplate::getResource)
+                            .flatMapMany(resource -> resource.getDownloadStream());
+                    return bulkShortenService.shorten(csvBulkRowParser.parse(content)
+                                    .filter(row -> row.row() > resumed.getCheckpointRow()))
+                            .buffer(checkpointRows)
+                            .concatMap(batch -> storeResults(resumed, batch).then(checkpoint(resumed, batch)))
+                            .takeWhile(current -> !current.isCancelRequested())
+                            .then(Mono.defer(() -> finish(resumed, null)));
+                })
+                .onErrorResume(LeaseLostException.class, e -> {
+                    log.warn("Bulk job [{}] stopped on this node: {}", job.getId(), e.getMessage());
+                    return Mono.empty();
+                })
+                .onErrorResume(BulkJobService::isTransient, e -> {
+                    log.warn("Bulk job [{}] paused, handing it back: {}", job.getId(), e.getMessage());
+                    return releaseLease(job);
+                })
+                .onErrorResume(e -> {
+                    // Recorded as FAILED only while this node still holds the lease
+                    log.error("Bulk job [{}] stopped: {}", job.getId(), e.getMessage());
+                    return finish(job, e.getMessage() != null ? e.getMessage() : e.toString());
+                })
+                .then();
+    }
+
+    /**
+     * Continues after the last checkpoint, which is only written once its whole batch is
+     * stored. Rows after it may be partly stored already; they are shortened again and their
+     * stored results kept. The counters are recounted up to the checkpoint rather than
+     * trusted after a crash between store and checkpoint.
+     */
+    private Mono<BulkJob> resumePoint(BulkJob job) {
+        Criteria upToCheckpoint = Criteria.where("jobId").is(job.getId()).and("row").lte(job.getCheckpointRow());
+        Mono<Long> done = mongoTemplate.count(Query.query(upToCheckpoint), BulkJobResult.class);
+        Mono<Long> failed = mongoTemplate.count(Query.query(Criteria.where("jobId").is(job.getId())
+                        .and("row").lte(job.getCheckpointRow()).and("status").is("FAILED")),
+                BulkJobResult.class);
+        return Mono.zip(done, failed)
+                .flatMap(counts -> {
+                    Instant now = Instant.now();
+                    Update update = new Update()
+                            .set("rowsDone", counts.getT1())
+                            .set("rowsFailed", counts.getT2())
+                            .set("updatedAt", now);
+                    if (job.getStartedAt() == null) {
+                        update.set("startedAt", now);
+                    }
+                    return mongoTemplate.findAndModify(leased(job), update,
+                            FindAndModifyOptions.options().returnNew(true), BulkJob.class);
+                });
+    }
+
+    private Mono<Void> storeResults(BulkJob job, List<BulkShortenResponseItem> batch) {
+        List<BulkJobResult> results = batch.stream().map(item -> {
+            BulkJobResult result = new BulkJobResult();
+            result.setJobId(job.getId());
+            result.setRow(item.getRow());
+            result.setOriginalUrl(item.getOriginalUrl());
+            result.setShortUrl(item.getShortUrl());
+            result.setStatus(item.getStatus());
+            result.setError(item.getError());
+            result.setExpireAt(job.getExpireAt());
+            return result;
+        }).toList();
+        // Unordered, so rows stored before a crash or lost lease do not stop the rest of the batch
+        return renewLease(job)
+                .then(Mono.defer(() -> mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BulkJobResult.class)
+                        .insert(results)
+                        .execute()))
+                .onErrorResume(BulkJobService::onlyDuplicates, e -> {
+                    log.debug("Bulk job [{}] kept results stored before it resumed", job.getId());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Extends the lease before a batch is stored, so a node that lost the job writes nothing.
+     */
+    private Mono<BulkJob> renewLease(BulkJob job) {
+        Instant now = Instant.now();
+        return mongoTemplate.findAndModify(leased(job),
+                        new Update().set("leaseExpiresAt", now.plusSeconds(leaseSeconds)).set("updatedAt", now),
+                        FindAndModifyOptions.options().returnNew(true), BulkJob.class)
+                .switchIfEmpty(Mono.error(LeaseLostException::new));
+    }
+
+    private Mono<Void> releaseLease(BulkJob job) {
+        Instant now = Instant.now();
+        return mongoTemplate.updateFirst(leased(job),
+                        new Update().set("leaseExpiresAt", now.plus(TRANSIENT_RETRY_DELAY)).set("updatedAt", now).unset("leaseOwner"),
+                        BulkJob.class)
+                .onErrorResume(e -> {
+                    log.warn("Could not release bulk job [{}]; its lease expires in {}s: {}", job.getId(), leaseSeconds, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<BulkJob> checkpoint(BulkJob job, List<BulkShortenResponseItem> batch) {
+        Instant now = Instant.now();
+        long failed = batch.stream().filter(item -> "FAILED".equals(item.getStatus())).count();
+        Update update = new Update()
+                .set("checkpointRow", batch.get(batch.size() - 1).getRow())
+                .inc("rowsDone", batch.size())
+                .inc("rowsFailed", failed)
+                .set("leaseExpiresAt", now.plusSeconds(leaseSeconds))
+                .set("updatedAt", now);
+        return mongoTemplate.findAndModify(leased(job), update, FindAndModifyOptions.options().returnNew(true), BulkJob.class)
+                .switchIfEmpty(Mono.error(LeaseLostException::new));
+    }
+
+    /**
+     * @param error null when the job ran to the end or was cancelled
+     */
+    private Mono<Void> finish(BulkJob job, String error) {
+        Instant now = Instant.now();
+        return mongoTemplate.findOne(leased(job), BulkJob.class)
+                .flatMap(current -> {
+                    BulkJob.Status status = error != null ? BulkJob.Status.FAILED
+                            : current.isCancelRequested() ? BulkJob.Status.CANCELLED : BulkJob.Status.COMPLETED;
+                    Update update = new Update()
+                            .set("status", status)
+                            .set("finishedAt", now)
+                            .set("updatedAt", now)
+                            .set("error", error)
+                            .unset("leaseOwner")
+                            .unset("leaseExpiresAt");
+                    return mongoTemplate.findAndModify(leased(job), update, FindAndModifyOptions.options().returnNew(true), BulkJob.class);
+                })
+                .flatMap(finished -> {
+                    log.info("Bulk job [{}] {}: {} rows, {} failed", finished.getId(), finished.getStatus(),
+                            finished.getRowsDone(), finished.getRowsFailed());
+                    return deleteFile(finished);
+                });
+    }
+
+    private Mono<Void> deleteFile(BulkJob job) {
+        return gridFsTemplate.delete(Query.query(Criteria.where("_id").is(new ObjectId(job.getFileId()))))
+                .onErrorResume(e -> {
+                    log.warn("Could not delete upload of bulk job [{}]: {}", job.getId(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Query leased(BulkJob job) {
+        return Query.query(Criteria.where("_id").is(job.getId()).and("leaseOwner").is(node));
+    }
+
+    /**
+     * Mongo unreachable or timing out; the job itself is fine and resumes on another attempt.
+     */
+    private static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TransientDataAccessException || t instanceof DataAccessResourceFailureException
+                    || t instanceof MongoSocketException || t instanceof MongoTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Every failed write was a row this job had already stored.
+     */
+    private static boolean onlyDuplicates(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof MongoBulkWriteException bulkError) {
+                return bulkError.getWriteConcernError() == null
+                        && bulkError.getWriteErrors().stream().allMatch(error -> error.getCode() == DUPLICATE_KEY);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return null when the caller brought neither credential, so it owns no job
+     */
+    private static Query ownedBy(String jobId, String apiKey, String jobToken) {
+        String owner = owner(apiKey, jobToken);
+        return owner != null ? Query.query(Criteria.where("_id").is(jobId).and("owner").is(owner)) : null;
+    }
+
+    private static String owner(String apiKey, String jobToken) {
+        if (apiKey != null) {
+            return IdempotencyService.sha256(apiKey).substring(0, 16);
+        }
+        // Prefixed so a token can never hash to an API key's owner
+        return jobToken != null ? "token:" + IdempotencyService.sha256(jobToken) : null;
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[24];
+        TOKENS.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static class LeaseLostException extends IllegalStateException {
+        LeaseLostException() {
+            super("lease lost; another node owns the job now");
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.urlshortener.service;
+
+import com.urlshortener.dto.BulkRow;
+import com.urlshortener.dto.BulkShortenRequestItem;
+import com.urlshortener.dto.BulkShortenResponseItem;
+import com.urlshortener.keygen.ShortKeyGenerator;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.store.UrlStore;
+import com.urlshortener.validate.InputValidator;
+import com.urlshortener.validate.UrlNormalizer;
+import com.urlshortener.validate.ValidationResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Chunked bulk shortening. Each chunk is validated in memory, checks taken aliases and (with
+ * dedup on) existing mappings of its URLs in one query, gets its generated keys in one go, is
+ * written with a single unordered bulk insert into the {@link UrlStore} and cached with one
+ * batched Redis SET stream. Per-row failures are reported with their row number.
+ */
+@Slf4j
+@Service
+public class BulkShortenService {
+
+    private final UrlStore urlStore;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final RedisUrlCache redisUrlCache;
+    private final ShortKeyGenerator shortKeyGenerator;
+    private final UrlMappingService urlMappingService;
+    private final UrlStatsService urlStatsService;
+    private final ShortKeyBloomFilter shortKeyBloomFilter;
+    private final LocalUrlCache localUrlCache;
+    private final ClickCounterService clickCounterService;
+    private final ShortenerMetrics metrics;
+
+    @Value("${shortener.base-url}")
+    private String baseUrl;
+
+    @Value("${shortener.bulk.chunk-size}")
+    private int chunkSize;
+
+    @Value("${shortener.bulk.concurrency}")
+    private int concurrency;
+
+    public BulkShortenService(UrlStore urlStore,
+                              ReactiveMongoTemplate mongoTemplate,
+                              RedisUrlCache redisUrlCache,
+                              ShortKeyGenerator shortKeyGenerator,
+                              UrlMappingService urlMappingService,
+                              UrlStatsService urlStatsService,
+                              ShortKeyBloomFilter shortKeyBloomFilter,
+                              LocalUrlCache localUrlCache,
+                              ClickCounterService clickCounterService,
+                              ShortenerMetrics metrics) {
+        this.urlStore = urlStore;
+        this.mongoTemplate = mongoTemplate;
+        this.redisUrlCache = redisUrlCache;
+        this.shortKeyGenerator = shortKeyGenerator;
+        this.urlMappingService = urlMappingService;
+        this.urlStatsService = urlStatsService;
+        this.shortKeyBloomFilter = shortKeyBloomFilter;
+        this.localUrlCache = localUrlCache;
+        this.clickCounterService = clickCounterService;
+        this.metrics = metrics;
+    }
+
+    public Flux<BulkShortenResponseItem> shortenAll(List<BulkShortenRequestItem> items) {
+        return shorten(Flux.fromIterable(items)
+                .index()
+                .map(indexed -> BulkRow.of(indexed.getT1() + 1, indexed.getT2())));
+    }
+
+    /**
+     * Results come back in input order; at most {@code concurrency} chunks are in flight.
+     */
+    public Flux<BulkShortenResponseItem> shorten(Flux<BulkRow> rows) {
+        return rows
+                .buffer(chunkSize)
+                .flatMapSequential(this::processChunk, concurrency)
+                .doOnNext(item -> metrics.bulkRow(item.getStatus()));
+    }
+
+    private Flux<BulkShortenResponseItem> processChunk(List<BulkRow> chunk) {
+        Instant createdAt = Instant.now();
+        boolean dedup = urlMappingService.isDedupEnabled();
+        BulkShortenResponseItem[] results = new BulkShortenResponseItem[chunk.size()];
+        List<PendingRow> pending = new ArrayList<>();
+        Set<String> aliasesInChunk = new HashSet<>();
+        // Later rows of a URL already in the chunk (compatible expiry) share the first row's key
+        Map<String, PendingRow> firstByUrl = new HashMap<>();
+        Map<Integer, PendingRow> duplicateOf = new HashMap<>();
+
+        for (int i = 0; i < chunk.size(); i++) {
+            BulkRow row = chunk.get(i);
+            BulkShortenRequestItem item = row.item();
+            if (row.parseError() != null) {
+                results[i] = failed(row, row.parseError());
+                continue;
+            }
+            try {
+                ValidationResult cleaned = InputValidator.validateAndCleanInputs(item.getLongUrl(), item.getCustomAlias());
+                String alias = cleaned.cleanedCustomAlias();
+                if (alias != null && !aliasesInChunk.add(alias)) {
+                    results[i] = failed(row, "Custom alias already taken!");
+                    continue;
+                }
+                String normalizedUrl = dedup ? UrlNormalizer.normalize(cleaned.cleanedLongUrl()) : null;
+                PendingRow p = new PendingRow(i, row, cleaned.cleanedLongUrl(), alias,
+                        UrlMappingService.computeExpiry(createdAt, item.getExpiryDays()),
+                        normalizedUrl, dedup ? UrlNormalizer.fingerprint(normalizedUrl) : null);
+                pending.add(p);
+                if (dedup && alias == null) {
+                    PendingRow first = firstByUrl.putIfAbsent(normalizedUrl, p);
+                    if (first != null && urlMappingService.dedupCompatible(first.expiresAt(), p.expiresAt(), createdAt)) {
+                        duplicateOf.put(i, first);
+                    }
+                }
+            } catch (RuntimeException e) {
+                results[i] = failed(row, e.getMessage());
+            }
+        }
+
+        if (pending.isEmpty()) {
+            return Flux.fromArray(results);
+        }
+
+        List<PendingRow> dedupRows = pending.stream()
+                .filter(p -> dedup && p.alias() == null && !duplicateOf.containsKey(p.index()))
+                .toList();
+
+        return findExisting(aliasesInChunk, dedupRows)
+                .flatMap(existing -> {
+                    Set<String> takenAliases = existing.stream()
+                            .map(UrlMapping::getShortKey)
+                            .filter(aliasesInChunk::contains)
+                            .collect(Collectors.toSet());
+                    Map<Long, List<UrlMapping>> candidates = existing.stream()
+                            .filter(mapping -> mapping.getUrlHash() != null)
+                            .collect(Collectors.groupingBy(UrlMapping::getUrlHash));
+
+                    List<PendingRow> fresh = new ArrayList<>();
+                    int deduplicated = 0;
+                    for (PendingRow p : pending) {
+                        if (duplicateOf.containsKey(p.index())) {
+                            continue;
+                        }
+                        if (p.alias() != null && takenAliases.contains(p.alias())) {
+                            results[p.index()] = failed(p.row(), "Custom alias already taken!");
+                            continue;
+                        }
+                        UrlMapping match = p.alias() == null ? findMatch(candidates.get(p.urlHash()), p) : null;
+                        if (match != null) {
+                            results[p.index()] = succeeded(p.row(), match.getShortKey());
+                            deduplicated++;
+                            continue;
+                        }
+                        fresh.add(p);
+                    }
+                    metrics.deduplicated(deduplicated);
+
+                    int generatedCount = (int) fresh.stream().filter(p -> p.alias() == null).count();
+                    return shortKeyGenerator.nextKeys(generatedCount).collectList()
+                            .flatMap(generatedKeys -> {
+                                List<UrlMapping> mappings = new ArrayList<>();
+                                int nextGenerated = 0;
+                                for (PendingRow p : fresh) {
+                                    UrlMapping mapping = new UrlMapping();
+                                    mapping.setShortKey(p.alias() != null ? p.alias() : generatedKeys.get(nextGenerated++));
+                                    mapping.setLongUrl(p.longUrl());
+                                    mapping.setCreatedAt(createdAt);
+                                    mapping.setExpiresAt(p.expiresAt());
+                                    mapping.setUrlHash(p.urlHash());
+                                    mappings.add(mapping);
+                                }
+                                return insertChunk(fresh, mappings, results);
+                            });
+                })
+                .thenMany(Flux.defer(() -> {
+                    duplicateOf.forEach((index, first) -> results[index] = sameAs(chunk.get(index), results[first.index()]));
+                    return Flux.fromArray(results);
+                }))
+                .onErrorResume(e -> {
+                    log.error("Bulk chunk of {} rows failed: {}", chunk.size(), e.getMessage());
+                    for (PendingRow p : pending) {
+                        if (results[p.index()] == null) {
+                            results[p.index()] = failed(p.row(), "Bulk write failed: " + e.getMessage());
+                        }
+                    }
+                    return Flux.fromArray(results);
+                });
+    }
+
+    private Mono<Void> insertChunk(List<PendingRow> rows, List<UrlMapping> mappings, BulkShortenResponseItem[] results) {
+        if (mappings.isEmpty()) {
+            return Mono.empty();
+        }
+        Mono<Void> bloomAdd = urlStore.isLocal()
+                ? Mono.empty()
+                : shortKeyBloomFilter.addAll(mappings.stream().map(UrlMapping::getShortKey).toList());
+        return bloomAdd
+                .then(urlStore.insertAll(mappings))
+                .flatMap(writeErrors -> {
+                    List<UrlMapping> saved = new ArrayList<>();
+                    List<Mono<Void>> retries = new ArrayList<>();
+                    for (int i = 0; i < rows.size(); i++) {
+                        PendingRow p = rows.get(i);
+                        UrlMapping mapping = mappings.get(i);
+                        Throwable error = writeErrors.get(i);
+                        if (error == null) {
+                            saved.add(mapping);
+                            results[p.index()] = succeeded(p.row(), mapping.getShortKey());
+                        } else if (error instanceof DuplicateKeyException && p.alias() != null) {
+                            results[p.index()] = failed(p.row(), "Custom alias already taken!");
+                        } else if (error instanceof DuplicateKeyException) {
+                            // Generated key clashed with a custom alias; rare, so take the single-row path
+                            retries.add(urlMappingService.shortenUrl(p.longUrl(), null, p.row().item().getExpiryDays())
+                                    .map(shortUrl -> new BulkShortenResponseItem(p.row().row(), p.row().item().getLongUrl(), shortUrl, "SUCCESS", null))
+                                    .onErrorResume(retryError -> Mono.just(failed(p.row(), retryError.getMessage())))
+                                    .doOnNext(item -> results[p.index()] = item)
+                                    .then());
+                        } else {
+                            results[p.index()] = failed(p.row(), error.getMessage());
+                        }
+                    }
+                    urlStatsService.onCreated(saved.size());
+                    saved.forEach(mapping -> localUrlCache.invalidate(mapping.getShortKey()));
+                    Mono<Void> resetClicks = urlStore.isLocal() && !saved.isEmpty()
+                            ? clickCounterService.resetLocalClicks(saved.stream().map(UrlMapping::getShortKey).toList())
+                            : Mono.empty();
+                    return cacheChunk(saved).then(resetClicks).then(Mono.when(retries));
+                });
+    }
+
+    /**
+     * Taken aliases and dedup candidates of the chunk in one query.
+     */
+    private Mono<List<UrlMapping>> findExisting(Set<String> aliases, List<PendingRow> dedupRows) {
+        // A local store rejects taken aliases on insert just as cheaply as it could look them up, and keeps no fingerprints
+        if (urlStore.isLocal()) {
+            return Mono.just(List.of());
+        }
+        List<Criteria> clauses = new ArrayList<>();
+        if (!aliases.isEmpty()) {
+            clauses.add(Criteria.where("shortKey").in(aliases));
+        }
+        if (!dedupRows.isEmpty()) {
+            Instant from = dedupRows.stream().map(PendingRow::expiresAt).min(Comparator.naturalOrder()).orElseThrow();
+            Instant to = dedupRows.stream().map(PendingRow::expiresAt).max(Comparator.naturalOrder()).orElseThrow();
+            // Candidates for every row; findMatch applies each row's own bounds
+            clauses.add(Criteria.where("urlHash").in(dedupRows.stream().map(PendingRow::urlHash).collect(Collectors.toSet()))
+                    .and("expiresAt").gte(UrlMappingService.dedupFrom(from, Instant.now()))
+                    .lte(to.plus(urlMappingService.dedupTolerance())));
+        }
+        if (clauses.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        Query query = Query.query(new Criteria().orOperator(clauses));
+        query.fields().include("shortKey", "longUrl", "urlHash", "expiresAt");
+        return mongoTemplate.find(query, UrlMapping.class).collectList();
+    }
+
+    private UrlMapping findMatch(List<UrlMapping> candidates, PendingRow p) {
+        if (candidates == null) {
+            return null;
+        }
+        Instant now = Instant.now();
+        for (UrlMapping candidate : candidates) {
+            if (urlMappingService.dedupCompatible(candidate.getExpiresAt(), p.expiresAt(), now)
+                    && p.normalizedUrl().equals(UrlNormalizer.normalize(candidate.getLongUrl()))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private BulkShortenResponseItem sameAs(BulkRow row, BulkShortenResponseItem first) {
+        if ("SUCCESS".equals(first.getStatus())) {
+            metrics.deduplicated(1);
+        }
+        return new BulkShortenResponseItem(row.row(), row.item().getLongUrl(), first.getShortUrl(), first.getStatus(), first.getError());
+    }
+
+    private Mono<Void> cacheChunk(List<UrlMapping> saved) {
+        if (saved.isEmpty() || urlStore.isLocal()) {
+            return Mono.empty();
+        }
+        // One batched write stream over the shared connection instead of a round trip per key
+        return redisUrlCache.putAll(saved)
+                .onErrorResume(e -> {
+                    // If Redis is down the redirect path falls back to Mongo; don't fail the rows
+                    metrics.redisFallback(ShortenerMetrics.RedisOperation.BULK_SET);
+                    log.error("Redis pipelined SET failed for bulk chunk of {} keys: {}", saved.size(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private BulkShortenResponseItem succeeded(BulkRow row, String shortKey) {
+        return new BulkShortenResponseItem(row.row(), row.item().getLongUrl(), baseUrl + shortKey, "SUCCESS", null);
+    }
+
+    private static BulkShortenResponseItem failed(BulkRow row, String error) {
+        return new BulkShortenResponseItem(row.row(), row.item().getLongUrl(), null, "FAILED", error);
+    }
+
+    private record PendingRow(int index, BulkRow row, String longUrl, String alias, Instant expiresAt,
+                              String normalizedUrl, Long urlHash) {
+    }
+}
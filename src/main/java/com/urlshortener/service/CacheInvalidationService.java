@@ -0,0 +1,97 @@
+package com.urlshortener.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Broadcasts short key removals over Redis pub/sub so every node drops the key
+ * from its {@link LocalUrlCache}. The publishing node receives its own message too,
+ * which is harmless.
+ */
+@Slf4j
+@Service
+public class CacheInvalidationService {
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final LocalUrlCache localUrlCache;
+    private final ShortenerMetrics metrics;
+
+    @Value("${shortener.l1-cache.invalidation-channel}")
+    private String channel;
+
+    private Disposable subscription;
+
+    public CacheInvalidationService(@Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate,
+                                    LocalUrlCache localUrlCache,
+                                    ShortenerMetrics metrics) {
+        this.redisTemplate = redisTemplate;
+        this.localUrlCache = localUrlCache;
+        this.metrics = metrics;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        // Deferred: opening the listener connects eagerly, so a Redis outage must land in the retry loop
+        subscription = Flux.defer(() -> redisTemplate.listenToChannel(channel))
+                .doOnNext(message -> {
+                    // A message is one key or a comma-separated batch (keys never contain commas)
+                    for (String shortKey : message.getMessage().split(",")) {
+                        localUrlCache.invalidate(shortKey);
+                    }
+                })
+                .doOnError(error -> log.warn("Invalidation listener on [{}] failed, resubscribing: {}", channel, error.getMessage()))
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, Duration.ofSeconds(5)))
+                .subscribe();
+    }
+
+    /**
+     * Drop the key locally right away, then tell the other nodes.
+     */
+    public Mono<Void> invalidate(String shortKey) {
+        localUrlCache.invalidate(shortKey);
+        return redisTemplate.convertAndSend(channel, shortKey)
+                .onErrorResume(e -> {
+                    metrics.redisFallback(ShortenerMetrics.RedisOperation.PUBLISH);
+                    log.error("Redis PUBLISH failed for invalidation of key [{}]: {}", shortKey, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Batched form for purges: one message per call instead of one per key.
+     */
+    public Mono<Void> invalidateAll(Collection<String> shortKeys) {
+        if (shortKeys.isEmpty()) {
+            return Mono.empty();
+        }
+        shortKeys.forEach(localUrlCache::invalidate);
+        return redisTemplate.convertAndSend(channel, String.join(",", shortKeys))
+                .onErrorResume(e -> {
+                    metrics.redisFallback(ShortenerMetrics.RedisOperation.PUBLISH);
+                    log.error("Redis PUBLISH failed for invalidation of {} keys: {}", shortKeys.size(), e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.urlshortener.service;
+
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.store.UrlStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preloads the hottest links into Redis and the L1 cache after startup, so a fresh node
+ * (or a flushed Redis) does not send every redirect to Mongo until the caches refill.
+ * Keys come from the hot-key list nodes save on shutdown (their L1 ranking), topped up
+ * from the most-clicked mappings. Batches are written concurrently and each one is a
+ * single pipelined Redis round trip. {@link WarmupHealthIndicator} keeps the node out of
+ * the readiness group until the warm-up has finished, failed or timed out.
+ */
+@Slf4j
+@Service
+public class CacheWarmupService {
+
+    public enum State {
+        PENDING, RUNNING, COMPLETED, FAILED, SKIPPED
+    }
+
+    public record Progress(State state, String source, long target, long found, long loaded, Instant startedAt, Instant finishedAt) {
+    }
+
+    private static final String HOT_KEYS = "warmup:hot-keys";
+    private static final Duration HOT_KEYS_TTL = Duration.ofDays(7);
+    private static final Duration SAVE_TIMEOUT = Duration.ofSeconds(5);
+
+    private final UrlStore urlStore;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final RedisUrlCache redisUrlCache;
+    private final LocalUrlCache localUrlCache;
+    private final boolean enabled;
+    private final int maxKeys;
+    private final int batchSize;
+    private final int concurrency;
+    private final Duration timeout;
+
+    private final AtomicLong found = new AtomicLong();
+    private final AtomicLong loaded = new AtomicLong();
+    private volatile State state = State.PENDING;
+    private volatile String source = "";
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private Disposable subscription;
+
+    public CacheWarmupService(UrlStore urlStore,
+                              ReactiveMongoTemplate mongoTemplate,
+                              @Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate,
+                              RedisUrlCache redisUrlCache,
+                              LocalUrlCache localUrlCache,
+                              @Value("${shortener.warmup.enabled}") boolean enabled,
+                              @Value("${shortener.warmup.keys}") int maxKeys,
+                              @Value("${shortener.warmup.batch-size}") int batchSize,
+                              @Value("${shortener.warmup.concurrency}") int concurrency,
+                              @Value("${shortener.warmup.timeout-seconds}") long timeoutSeconds) {
+        this.urlStore = urlStore;
+        this.mongoTemplate = mongoTemplate;
+        this.redisTemplate = redisTemplate;
+        this.redisUrlCache = redisUrlCache;
+        this.localUrlCache = localUrlCache;
+        this.enabled = enabled;
+        this.maxKeys = maxKeys;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.timeout = Duration.ofSeconds(timeoutSeconds);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || maxKeys <= 0) {
+            finish(State.SKIPPED);
+            return;
+        }
+        if (urlStore.isLocal()) {
+            // Lookups never leave the process, so there is nothing to warm
+            finish(State.SKIPPED);
+            return;
+        }
+        state = State.RUNNING;
+        startedAt = Instant.now();
+        subscription = hottestMappings()
+                .buffer(batchSize)
+                .flatMap(this::load, concurrency)
+                .then()
+                .timeout(timeout)
+                .subscribe(
+                        ignored -> { },
+                        e -> {
+                            log.error("Cache warm-up stopped after {} of {} links: {}", loaded.get(), found.get(), e.getMessage());
+                            finish(State.FAILED);
+                        },
+                        () -> {
+                            log.info("Cache warm-up loaded {} links from {} in {} ms", loaded.get(), source,
+                                    Duration.between(startedAt, Instant.now()).toMillis());
+                            finish(State.COMPLETED);
+                        });
+    }
+
+    /**
+     * Saves this node's hottest L1 keys for the next node to start. Nodes stopping together
+     * add to one shared list; a key both rank keeps the score of the last one.
+     */
+    @PreDestroy
+    public void saveHotKeys() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        if (!enabled || maxKeys <= 0 || urlStore.isLocal()) {
+            return;
+        }
+        List<String> hottest = localUrlCache.hottestKeys(maxKeys);
+        if (hottest.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> ranked = new HashSet<>();
+        for (int rank = 0; rank < hottest.size(); rank++) {
+            ranked.add(new DefaultTypedTuple<>(hottest.get(rank), (double) (hottest.size() - rank)));
+        }
+        try {
+            redisTemplate.opsForZSet().addAll(HOT_KEYS, ranked)
+                    // Keep only the maxKeys highest ranked
+                    .then(redisTemplate.opsForZSet().removeRange(HOT_KEYS, Range.closed(0L, -(maxKeys + 1L))))
+                    .then(redisTemplate.expire(HOT_KEYS, HOT_KEYS_TTL))
+                    .block(SAVE_TIMEOUT);
+            log.info("Saved {} hot keys for the next cache warm-up", hottest.size());
+        } catch (RuntimeException e) {
+            log.error("Failed to save hot keys for cache warm-up: {}", e.getMessage());
+        }
+    }
+
+    public Progress progress() {
+        return new Progress(state, source, maxKeys, found.get(), loaded.get(), startedAt, finishedAt);
+    }
+
+    /**
+     * @return true once the node no longer needs to wait for the warm-up
+     */
+    public boolean isDone() {
+        return state != State.PENDING && state != State.RUNNING;
+    }
+
+    private Flux<UrlMapping> hottestMappings() {
+        return redisTemplate.opsForZSet().reverseRange(HOT_KEYS, Range.closed(0L, maxKeys - 1L))
+                .collectList()
+                .onErrorResume(e -> {
+                    log.error("Failed to read saved hot keys, warming from click counts: {}", e.getMessage());
+                    return Mono.just(List.of());
+                })
+                .flatMapMany(hotKeys -> {
+                    source = hotKeys.isEmpty() ? "clickCount" : hotKeys.size() < maxKeys ? "hot-keys+clickCount" : "hot-keys";
+                    Flux<UrlMapping> saved = Flux.fromIterable(hotKeys)
+                            .flatMapSequential(urlStore::findByShortKey, concurrency * 4);
+                    if (hotKeys.size() >= maxKeys) {
+                        return saved;
+                    }
+                    Set<String> seen = new HashSet<>(hotKeys);
+                    return saved.concatWith(mostClicked(maxKeys)
+                            .filter(mapping -> seen.add(mapping.getShortKey()))
+                            .take(maxKeys - hotKeys.size()));
+                })
+                .doOnNext(ignored -> found.incrementAndGet());
+    }
+
+    private Flux<UrlMapping> mostClicked(int limit) {
+        // Walks the (clickCount, _id) index; expired links are skipped rather than sorted out
+        Query query = Query.query(new Criteria().orOperator(
+                        Criteria.where("expiresAt").is(null),
+                        Criteria.where("expiresAt").gt(new Date())))
+                .with(Sort.by(Sort.Direction.DESC, "clickCount"))
+                .limit(limit);
+        query.fields().include("shortKey", "longUrl", "expiresAt");
+        return mongoTemplate.find(query, UrlMapping.class);
+    }
+
+    private Mono<Void> load(List<UrlMapping> batch) {
+        for (UrlMapping mapping : batch) {
+            localUrlCache.put(mapping.getShortKey(), mapping.getLongUrl(), mapping.getExpiresAt());
+        }
+        return redisUrlCache.putAll(batch)
+                .doOnSuccess(ignored -> loaded.addAndGet(batch.size()));
+    }
+
+    private void finish(State finalState) {
+        finishedAt = Instant.now();
+        state = finalState;
+    }
+}
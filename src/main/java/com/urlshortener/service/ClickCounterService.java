@@ -0,0 +1,203 @@
+package com.urlshortener.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.store.UrlStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind click counting. Redirects only bump an in-memory per-key counter;
+ * the buffer is flushed on a schedule as a single unordered bulkWrite of $inc updates,
+ * so concurrent clicks on the same key are never lost to a read-modify-write race.
+ * Counters are bumped and drained under the map's per-key lock, so a click either
+ * lands in the batch being drained or in the next one.
+ * <p>
+ * With a local store the mappings are not in Mongo, so there is no url_mapping document
+ * to $inc; counts are upserted into click_counts (one document per short key) instead.
+ */
+@Slf4j
+@Service
+public class ClickCounterService {
+
+    public enum ShutdownPolicy { FLUSH, DISCARD }
+
+    private static final String LOCAL_COUNTS = "click_counts";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final UrlStatsService urlStatsService;
+    private final boolean localStore;
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    @Value("${shortener.clicks.max-buffered-keys}")
+    private int maxBufferedKeys;
+
+    @Value("${shortener.clicks.shutdown-policy}")
+    private ShutdownPolicy shutdownPolicy;
+
+    @Value("${shortener.clicks.shutdown-timeout-seconds}")
+    private long shutdownTimeoutSeconds;
+
+    public ClickCounterService(ReactiveMongoTemplate mongoTemplate, UrlStatsService urlStatsService, UrlStore urlStore) {
+        this.mongoTemplate = mongoTemplate;
+        this.urlStatsService = urlStatsService;
+        this.localStore = urlStore.isLocal();
+    }
+
+    public void recordClick(String shortKey) {
+        pending.merge(shortKey, 1L, Long::sum);
+        if (pending.size() >= maxBufferedKeys) {
+            // Buffer is full of distinct keys; don't wait for the next tick
+            flush().subscribe();
+        }
+    }
+
+    /**
+     * Clicks recorded on this node that are not yet visible in Mongo.
+     */
+    public long pendingClicks(String shortKey) {
+        return pending.getOrDefault(shortKey, 0L);
+    }
+
+    /**
+     * Flushed clicks of a key whose mapping lives in a local store (url_mapping has none).
+     */
+    public Mono<Long> flushedLocalClicks(String shortKey) {
+        return mongoTemplate.findById(shortKey, Document.class, LOCAL_COUNTS)
+                .map(counts -> ((Number) counts.get("clickCount")).longValue())
+                .defaultIfEmpty(0L);
+    }
+
+    /**
+     * Drops the flushed clicks of keys just created in a local store. A custom alias can
+     * be taken again once its mapping expires, and must not inherit the old link's count.
+     */
+    public Mono<Void> resetLocalClicks(List<String> shortKeys) {
+        return mongoTemplate.remove(Query.query(Criteria.where("_id").in(shortKeys)), LOCAL_COUNTS)
+                .onErrorResume(e -> {
+                    log.error("Failed to reset click counts for {} new keys: {}", shortKeys.size(), e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    @Scheduled(fixedDelayString = "${shortener.clicks.flush-interval-ms}")
+    public Mono<Long> scheduledFlush() {
+        return flush();
+    }
+
+    public Mono<Long> flush() {
+        if (!flushing.compareAndSet(false, true)) {
+            return Mono.just(0L);
+        }
+        Map<String, Long> batch = drain();
+        if (batch.isEmpty()) {
+            flushing.set(false);
+            return Mono.just(0L);
+        }
+
+        ReactiveBulkOperations bulkOps = localStore
+                ? mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, LOCAL_COUNTS)
+                : mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlMapping.class);
+        List<String> keys = new ArrayList<>(batch.keySet());
+        keys.forEach(shortKey -> {
+            Update increment = new Update().inc("clickCount", batch.get(shortKey));
+            if (localStore) {
+                bulkOps.upsert(Query.query(Criteria.where("_id").is(shortKey)), increment);
+            } else {
+                bulkOps.updateOne(Query.query(Criteria.where("shortKey").is(shortKey)), increment);
+            }
+        });
+
+        long total = batch.values().stream().mapToLong(Long::longValue).sum();
+        return bulkOps.execute()
+                .doOnSuccess(result -> {
+                    urlStatsService.onClicksFlushed(total);
+                    log.debug("Flushed {} clicks across {} keys", total, batch.size());
+                })
+                .thenReturn(total)
+                .onErrorResume(e -> {
+                    MongoBulkWriteException bulkError = findBulkWriteException(e);
+                    if (bulkError == null) {
+                        // Nothing acknowledged: retry the whole batch (a lost reply can still double-count it)
+                        log.error("Click count flush failed for {} keys: {}", batch.size(), e.getMessage());
+                        batch.forEach(this::requeue);
+                        return Mono.just(0L);
+                    }
+                    // Unordered: every update not listed as failed has been applied, so only the failures go back
+                    long requeued = 0;
+                    for (BulkWriteError error : bulkError.getWriteErrors()) {
+                        String shortKey = keys.get(error.getIndex());
+                        requeued += batch.get(shortKey);
+                        requeue(shortKey, batch.get(shortKey));
+                    }
+                    log.error("Click count flush failed for {} of {} keys: {}",
+                            bulkError.getWriteErrors().size(), batch.size(), e.getMessage());
+                    urlStatsService.onClicksFlushed(total - requeued);
+                    return Mono.just(total - requeued);
+                })
+                .doFinally(signal -> flushing.set(false));
+    }
+
+    private void requeue(String shortKey, long clicks) {
+        pending.merge(shortKey, clicks, Long::sum);
+    }
+
+    private Map<String, Long> drain() {
+        Map<String, Long> batch = new HashMap<>();
+        for (String shortKey : pending.keySet()) {
+            // Removal is atomic with merge, so every click is either in this batch or re-creates the key
+            Long clicks = pending.remove(shortKey);
+            if (clicks != null && clicks > 0) {
+                batch.put(shortKey, clicks);
+            }
+        }
+        return batch;
+    }
+
+    private static MongoBulkWriteException findBulkWriteException(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof MongoBulkWriteException bulkError) {
+                return bulkError;
+            }
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (shutdownPolicy == ShutdownPolicy.DISCARD) {
+            long dropped = pending.values().stream().mapToLong(Long::longValue).sum();
+            log.warn("Discarding {} buffered clicks on shutdown", dropped);
+            return;
+        }
+        flushing.set(false);
+        try {
+            Long flushed = flush().block(Duration.ofSeconds(shutdownTimeoutSeconds));
+            log.info("Flushed {} buffered clicks on shutdown", flushed);
+        } catch (RuntimeException e) {
+            log.error("Final click count flush did not complete: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.urlshortener.service;
+
+import com.urlshortener.dto.ClickEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Entry point for redirect events. Reduces the request to a {@link ClickEvent} and hands it
+ * to the in-memory consumers (click counter, trending sketch, time series); nothing here
+ * touches the network, so the redirect latency budget is unaffected.
+ */
+@Service
+@RequiredArgsConstructor
+public class ClickEventService {
+
+    private static final String UNKNOWN = "unknown";
+
+    private final ClickCounterService clickCounterService;
+    private final TrendingLinksService trendingLinksService;
+    private final ClickTimeSeriesService clickTimeSeriesService;
+
+    // Country code header set by the CDN / load balancer in front of us (no GeoIP database is bundled)
+    @Value("${shortener.clicks.geo-header}")
+    private String geoHeader;
+
+    public void recordRedirect(String shortKey, HttpHeaders headers) {
+        ClickEvent event = new ClickEvent(
+                shortKey,
+                Instant.now(),
+                referrerHost(headers.getFirst(HttpHeaders.REFERER)),
+                agentClass(headers.getFirst(HttpHeaders.USER_AGENT)),
+                country(headers.getFirst(geoHeader)));
+
+        clickCounterService.recordClick(shortKey);
+        trendingLinksService.record(shortKey);
+        clickTimeSeriesService.record(event);
+    }
+
+    private static String referrerHost(String referrer) {
+        if (referrer == null || referrer.isBlank()) {
+            return "direct";
+        }
+        try {
+            String host = URI.create(referrer.trim()).getHost();
+            return host == null ? UNKNOWN : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN;
+        }
+    }
+
+    private static String agentClass(String userAgent) {
+        if (userAgent == null || userAgent.isBlank()) {
+            return UNKNOWN;
+        }
+        String ua = userAgent.toLowerCase(Locale.ROOT);
+        if (ua.contains("bot") || ua.contains("crawler") || ua.contains("spider")
+                || ua.startsWith("curl") || ua.startsWith("wget") || ua.contains("python")) {
+            return "bot";
+        }
+        if (ua.contains("ipad") || ua.contains("tablet")) {
+            return "tablet";
+        }
+        if (ua.contains("mobile") || ua.contains("android") || ua.contains("iphone")) {
+            return "mobile";
+        }
+        return "desktop";
+    }
+
+    private static String country(String countryCode) {
+        if (countryCode == null || countryCode.length() != 2) {
+            return UNKNOWN;
+        }
+        return countryCode.toUpperCase(Locale.ROOT);
+    }
+}
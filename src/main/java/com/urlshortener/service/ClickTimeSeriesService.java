@@ -0,0 +1,308 @@
+package com.urlshortener.service;
+
+import com.urlshortener.config.RedisScripts;
+import com.urlshortener.dto.ClickEvent;
+import com.urlshortener.dto.ClickHistogramPoint;
+import com.urlshortener.model.ClickBucket;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-key click histograms. Redirects are aggregated in memory into per-minute buckets;
+ * completed minutes are upserted into click_buckets as one unordered bulkWrite of $inc
+ * updates. A background job (one node at a time) rolls minutes up into hours and hours into days, and each
+ * granularity expires through its own retention via the expireAt TTL index.
+ */
+@Slf4j
+@Service
+public class ClickTimeSeriesService {
+
+    public enum Granularity {
+        MINUTE(ChronoUnit.MINUTES),
+        HOUR(ChronoUnit.HOURS),
+        DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Granularity(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        public Instant truncate(Instant instant) {
+            return instant.truncatedTo(unit);
+        }
+
+        public String value() {
+            return name().toLowerCase();
+        }
+
+        public static Granularity fromValue(String value) {
+            try {
+                return valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported granularity: " + value + " (use minute, hour or day)");
+            }
+        }
+    }
+
+    private static final String OTHER = "other";
+    private static final String ROLLUP_LOCK_KEY = "clicks:rollup:lock";
+    private static final long MAX_HISTOGRAM_POINTS = 10_000;
+
+    private record BucketKey(String shortKey, long epochMinute) {
+    }
+
+    private static final class MinuteBucket {
+        private final LongAdder count = new LongAdder();
+        private final Map<String, LongAdder> referrers = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> agents = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> countries = new ConcurrentHashMap<>();
+    }
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final String owner = UUID.randomUUID().toString();
+    private final ConcurrentHashMap<BucketKey, MinuteBucket> buckets = new ConcurrentHashMap<>();
+
+    @Value("${shortener.clicks.timeseries.max-dimension-values}")
+    private int maxDimensionValues;
+
+    @Value("${shortener.clicks.timeseries.minute-retention-days}")
+    private long minuteRetentionDays;
+
+    @Value("${shortener.clicks.timeseries.hour-retention-days}")
+    private long hourRetentionDays;
+
+    @Value("${shortener.clicks.timeseries.day-retention-days}")
+    private long dayRetentionDays;
+
+    @Value("${shortener.clicks.timeseries.rollup-lock-seconds}")
+    private long rollupLockSeconds;
+
+    public ClickTimeSeriesService(ReactiveMongoTemplate mongoTemplate,
+                                  @Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate) {
+        this.mongoTemplate = mongoTemplate;
+        this.redisTemplate = redisTemplate;
+    }
+
+    public void record(ClickEvent event) {
+        long epochMinute = event.timestamp().getEpochSecond() / 60;
+        MinuteBucket bucket = buckets.computeIfAbsent(new BucketKey(event.shortKey(), epochMinute), k -> new MinuteBucket());
+        bucket.count.increment();
+        increment(bucket.referrers, event.referrerHost());
+        increment(bucket.agents, event.agentClass());
+        increment(bucket.countries, event.country());
+    }
+
+    private void increment(Map<String, LongAdder> dimension, String value) {
+        // Cap distinct values per bucket; the long tail is folded into "other"
+        String key = dimension.size() >= maxDimensionValues && !dimension.containsKey(value) ? OTHER : value;
+        dimension.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Only completed minutes are written, so no redirect can still be adding to a drained bucket.
+     */
+    @Scheduled(fixedDelayString = "${shortener.clicks.timeseries.flush-interval-ms}")
+    public Mono<Void> flush() {
+        return flushBefore(Instant.now().getEpochSecond() / 60);
+    }
+
+    private Mono<Void> flushBefore(long epochMinuteExclusive) {
+        Map<BucketKey, MinuteBucket> ready = new HashMap<>();
+        buckets.forEach((key, bucket) -> {
+            if (key.epochMinute() < epochMinuteExclusive && buckets.remove(key, bucket)) {
+                ready.put(key, bucket);
+            }
+        });
+        if (ready.isEmpty()) {
+            return Mono.empty();
+        }
+
+        Instant expireAt = Instant.now().plus(Duration.ofDays(minuteRetentionDays));
+        ReactiveBulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ClickBucket.class);
+        ready.forEach((key, bucket) -> {
+            Update update = new Update()
+                    .inc("count", bucket.count.sum())
+                    .setOnInsert("expireAt", expireAt);
+            bucket.referrers.forEach((value, count) -> update.inc("referrers." + escape(value), count.sum()));
+            bucket.agents.forEach((value, count) -> update.inc("agents." + escape(value), count.sum()));
+            bucket.countries.forEach((value, count) -> update.inc("countries." + escape(value), count.sum()));
+            bulkOps.upsert(bucketQuery(key.shortKey(), Granularity.MINUTE, Instant.ofEpochSecond(key.epochMinute() * 60)), update);
+        });
+
+        return bulkOps.execute()
+                .doOnSuccess(result -> log.debug("Flushed {} minute click buckets", ready.size()))
+                .then()
+                .onErrorResume(e -> {
+                    // Lose the buckets rather than block the redirect path; counts stay correct in url_mapping
+                    log.error("Failed to flush {} minute click buckets: {}", ready.size(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Recompute the hour buckets for the last two complete hours and the day buckets for
+     * the last two complete days. Each rollup is one aggregation that groups inside Mongo and
+     * $merges the result over the target buckets, so re-running is idempotent and late minute
+     * flushes are picked up on the next run. A Redis lock keeps it to one node per run.
+     */
+    @Scheduled(cron = "${shortener.clicks.timeseries.rollup-cron}")
+    public Mono<Void> rollup() {
+        Instant hourEnd = Granularity.HOUR.truncate(Instant.now());
+        Instant dayEnd = Granularity.DAY.truncate(Instant.now());
+        return acquireRollupLock()
+                .flatMap(acquired -> {
+                    if (!acquired) {
+                        log.debug("Click bucket rollup already running on another node");
+                        return Mono.empty();
+                    }
+                    return rollUp(Granularity.MINUTE, Granularity.HOUR, hourEnd.minus(Duration.ofHours(2)), hourEnd, hourRetentionDays)
+                            .then(rollUp(Granularity.HOUR, Granularity.DAY, dayEnd.minus(Duration.ofDays(2)), dayEnd, dayRetentionDays))
+                            .doFinally(signal -> releaseRollupLock().subscribe());
+                })
+                .doOnError(error -> log.error("Click bucket rollup failed: {}", error.getMessage()));
+    }
+
+    private Mono<Void> rollUp(Granularity source, Granularity target, Instant from, Instant to, long retentionDays) {
+        long unitMillis = target.unit.getDuration().toMillis();
+        Date expireAt = Date.from(Instant.now().plus(Duration.ofDays(retentionDays)));
+        // Counts and every dimension value become (dimension, value, count) entries, summed per target
+        // bucket and folded back into maps; the total rides along as dimension "count"
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("granularity", source.value())
+                        .append("bucketStart", new Document("$gte", Date.from(from)).append("$lt", Date.from(to)))),
+                new Document("$project", new Document("_id", 0)
+                        .append("shortKey", 1)
+                        .append("bucketStart", new Document("$subtract", List.of("$bucketStart",
+                                new Document("$mod", List.of(new Document("$toLong", "$bucketStart"), unitMillis)))))
+                        .append("entries", new Document("$concatArrays", List.of(
+                                List.of(new Document("d", "count").append("k", "total").append("v", "$count")),
+                                entries("referrers"), entries("agents"), entries("countries"))))),
+                new Document("$unwind", "$entries"),
+                new Document("$group", new Document("_id", new Document("s", "$shortKey").append("b", "$bucketStart")
+                        .append("d", "$entries.d").append("k", "$entries.k"))
+                        .append("v", new Document("$sum", "$entries.v"))),
+                new Document("$group", new Document("_id", new Document("s", "$_id.s").append("b", "$_id.b").append("d", "$_id.d"))
+                        .append("values", new Document("$push", new Document("k", "$_id.k").append("v", "$v")))),
+                new Document("$group", new Document("_id", new Document("s", "$_id.s").append("b", "$_id.b"))
+                        .append("dims", new Document("$push", new Document("k", "$_id.d")
+                                .append("v", new Document("$arrayToObject", "$values"))))),
+                new Document("$project", new Document("_id", 0)
+                        .append("shortKey", "$_id.s")
+                        .append("granularity", target.value())
+                        .append("bucketStart", "$_id.b")
+                        .append("dims", new Document("$arrayToObject", "$dims"))),
+                new Document("$project", new Document("shortKey", 1)
+                        .append("granularity", 1)
+                        .append("bucketStart", 1)
+                        .append("count", new Document("$ifNull", List.of("$dims.count.total", 0)))
+                        .append("referrers", new Document("$ifNull", List.of("$dims.referrers", new Document())))
+                        .append("agents", new Document("$ifNull", List.of("$dims.agents", new Document())))
+                        .append("countries", new Document("$ifNull", List.of("$dims.countries", new Document())))
+                        .append("expireAt", expireAt)),
+                // Served by the unique (shortKey, granularity, bucketStart) index; matched buckets get every field replaced
+                new Document("$merge", new Document("into", mongoTemplate.getCollectionName(ClickBucket.class))
+                        .append("on", List.of("shortKey", "granularity", "bucketStart"))
+                        .append("whenMatched", "merge")
+                        .append("whenNotMatched", "insert")));
+
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(ClickBucket.class))
+                .flatMap(collection -> Mono.from(collection.aggregate(pipeline).allowDiskUse(true).toCollection()))
+                .doOnSuccess(ignored -> log.debug("Rolled {} click buckets up to {}", source.value(), target.value()));
+    }
+
+    private static Document entries(String dimension) {
+        return new Document("$map", new Document("input", new Document("$objectToArray",
+                new Document("$ifNull", List.of("$" + dimension, new Document()))))
+                .append("in", new Document("d", dimension).append("k", "$$this.k").append("v", "$$this.v")));
+    }
+
+    private Mono<Boolean> acquireRollupLock() {
+        return redisTemplate.opsForValue()
+                .setIfAbsent(ROLLUP_LOCK_KEY, owner, Duration.ofSeconds(rollupLockSeconds))
+                .onErrorResume(e -> {
+                    // Rollups are idempotent; without Redis the worst case is duplicated work
+                    log.warn("Could not take click rollup lock, running unlocked: {}", e.getMessage());
+                    return Mono.just(true);
+                });
+    }
+
+    private Mono<Long> releaseRollupLock() {
+        return redisTemplate.execute(RedisScripts.RELEASE_LOCK, List.of(ROLLUP_LOCK_KEY), List.of(owner))
+                .next()
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    public Flux<ClickHistogramPoint> getHistogram(String shortKey, Granularity granularity, Instant from, Instant to) {
+        if (!from.isBefore(to)) {
+            return Flux.error(new IllegalArgumentException("'from' must be before 'to'"));
+        }
+        if (Duration.between(from, to).dividedBy(granularity.unit.getDuration()) > MAX_HISTOGRAM_POINTS) {
+            return Flux.error(new IllegalArgumentException("Range too large for " + granularity.value() + " granularity"));
+        }
+        Query query = Query.query(Criteria.where("shortKey").is(shortKey)
+                        .and("granularity").is(granularity.value())
+                        .and("bucketStart").gte(granularity.truncate(from)).lt(to))
+                .with(Sort.by(Sort.Direction.ASC, "bucketStart"));
+
+        return mongoTemplate.find(query, ClickBucket.class)
+                .map(bucket -> new ClickHistogramPoint(
+                        bucket.getBucketStart(),
+                        bucket.getCount(),
+                        unescape(bucket.getReferrers()),
+                        unescape(bucket.getAgents()),
+                        unescape(bucket.getCountries())));
+    }
+
+    private static Query bucketQuery(String shortKey, Granularity granularity, Instant bucketStart) {
+        return Query.query(Criteria.where("shortKey").is(shortKey)
+                .and("granularity").is(granularity.value())
+                .and("bucketStart").is(bucketStart));
+    }
+
+    private static String escape(String value) {
+        return value.replace('.', '\uFF0E').replace('$', '\uFF04');
+    }
+
+    private static Map<String, Long> unescape(Map<String, Long> dimension) {
+        Map<String, Long> result = new HashMap<>(dimension.size());
+        dimension.forEach((value, count) -> result.put(value.replace('\uFF0E', '.').replace('\uFF04', '$'), count));
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flushBefore(Long.MAX_VALUE).block(Duration.ofSeconds(5));
+        } catch (RuntimeException e) {
+            log.error("Final click bucket flush did not complete: {}", e.getMessage());
+        }
+    }
+}
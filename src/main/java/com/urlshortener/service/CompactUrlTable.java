@@ -0,0 +1,697 @@
+package com.urlshortener.service;
+
+import com.urlshortener.keygen.ShortKeyCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Memory-lean map from short key to long URL for holding every mapping in one process.
+ * <p>
+ * Keys are packed into a {@code long} (base-36 value plus length, see {@link #pack}) and
+ * kept in an open-addressing table of primitive arrays; the rare key that does not pack
+ * (custom aliases with '_' or '-', or longer than 11 chars) goes to a small overflow map.
+ * Each slot points at a record in off-heap slabs holding expiry, id and the URL as UTF-8,
+ * with the scheme and host replaced by an id into a shared prefix dictionary. Records are
+ * append-only; replaced ones are reclaimed by compaction once they outweigh the live ones.
+ * <p>
+ * One writer at a time; readers take an optimistic read and only lock when it fails.
+ * Growing a key table and compacting the slabs build the new structures beside the live
+ * ones, which no other writer can touch meanwhile, and swap them in at the end, so a
+ * reader never waits for a rebuild, only for a single put or remove.
+ */
+public final class CompactUrlTable {
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(String id, String shortKey, String longUrl, long expiresAtMillis);
+    }
+
+    private static final int MAX_PACKED_LENGTH = 11;
+    private static final int LENGTH_SHIFT = 57;
+    private static final double MAX_LOAD = 0.6;
+    private static final int MAX_PREFIXES = 1 << 16;
+    private static final long NEVER = 0xFFFFFFFFL;
+
+    private final StampedLock lock = new StampedLock();
+    // Held for a whole write, rebuilds included; the stamped write lock only for in-place changes
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private final int slabBytes;
+
+    // Packed key -> record ref, and id hash -> record ref (delete events only carry the id).
+    // Key and ref share a cache line: slot i is at [2i] and [2i + 1].
+    private long[] keys;
+    private long[] ids;
+    private int size;
+    private int idSize;
+    // Concurrent so an optimistic reader never walks a map that is being resized
+    private Map<String, Long> overflow = new ConcurrentHashMap<>();
+
+    private List<ByteBuffer> slabs = new ArrayList<>();
+    private ByteBuffer current;
+    private long liveBytes;
+    private long deadBytes;
+
+    private byte[][] prefixes = new byte[16][];
+    private int prefixCount = 1; // id 0 is "no prefix"
+    private final Map<String, Integer> prefixIds = new HashMap<>();
+
+    public CompactUrlTable(int expectedEntries, int slabBytes) {
+        this.slabBytes = slabBytes;
+        int capacity = tableSize(expectedEntries);
+        keys = new long[capacity * 2];
+        ids = new long[capacity * 2];
+        prefixes[0] = new byte[0];
+    }
+
+    /**
+     * @return the long URL, or null when the key is absent or expired at {@code nowMillis}
+     */
+    public String get(String shortKey, long nowMillis) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                String url = getUnlocked(shortKey, nowMillis);
+                if (lock.validate(stamp)) {
+                    return url;
+                }
+            } catch (RuntimeException e) {
+                // A concurrent resize or compaction moved things under us; retry locked
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return getUnlocked(shortKey, nowMillis);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void put(String id, String shortKey, String longUrl, long expiresAtMillis) {
+        if (id == null) {
+            throw new IllegalArgumentException("Mappings need an id: " + shortKey);
+        }
+        writerLock.lock();
+        try {
+            growIfFull();
+            long stamp = lock.writeLock();
+            try {
+                removeByIdLocked(id);
+                long packed = pack(shortKey);
+                long ref = append(id, packed, shortKey, longUrl, expiresAtMillis);
+                long previous = packed != 0 ? putKey(packed, ref) : orZero(overflow.put(shortKey, ref));
+                if (previous != 0) {
+                    discard(previous);
+                    removeId(hashId(idOf(previous)), previous);
+                }
+                putId(hashId(id), ref);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            compactIfWasteful();
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * @return true when a mapping with this id was held
+     */
+    public boolean removeById(String id) {
+        writerLock.lock();
+        try {
+            long stamp = lock.writeLock();
+            try {
+                return removeByIdLocked(id);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    public void clear() {
+        writerLock.lock();
+        try {
+            long[] emptyKeys = new long[keys.length];
+            long[] emptyIds = new long[ids.length];
+            long stamp = lock.writeLock();
+            try {
+                keys = emptyKeys;
+                ids = emptyIds;
+                size = 0;
+                idSize = 0;
+                overflow = new ConcurrentHashMap<>();
+                slabs = new ArrayList<>();
+                current = null;
+                liveBytes = 0;
+                deadBytes = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size + overflow.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Heap held by the key tables and prefix dictionary plus off-heap slab capacity.
+     */
+    public long memoryBytes() {
+        long stamp = lock.readLock();
+        try {
+            long bytes = (long) (keys.length + ids.length) * Long.BYTES;
+            for (int i = 1; i < prefixCount; i++) {
+                bytes += prefixes[i].length + 16;
+            }
+            return bytes + offHeapBytesLocked();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    long offHeapBytes() {
+        long stamp = lock.readLock();
+        try {
+            return offHeapBytesLocked();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private long offHeapBytesLocked() {
+        long bytes = 0;
+        for (ByteBuffer slab : slabs) {
+            bytes += slab.capacity();
+        }
+        return bytes;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < keys.length; i += 2) {
+                if (keys[i] != 0) {
+                    emit(keys[i + 1], consumer);
+                }
+            }
+            for (long ref : overflow.values()) {
+                emit(ref, consumer);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Base-36 value of the key with its length in the top bits, so "0a" and "a" differ;
+     * 0 when the key does not pack.
+     */
+    static long pack(String shortKey) {
+        if (shortKey.length() > MAX_PACKED_LENGTH) {
+            return 0;
+        }
+        long value = ShortKeyCodec.decode(shortKey);
+        return value < 0 ? 0 : (long) shortKey.length() << LENGTH_SHIFT | value;
+    }
+
+    static String unpack(long packed) {
+        return ShortKeyCodec.encode(packed & ((1L << LENGTH_SHIFT) - 1), (int) (packed >>> LENGTH_SHIFT));
+    }
+
+    private String getUnlocked(String shortKey, long nowMillis) {
+        long packed = pack(shortKey);
+        long ref;
+        if (packed != 0) {
+            ref = find(keys, packed);
+            if (ref == 0) {
+                return null;
+            }
+        } else {
+            Long boxed = overflow.get(shortKey);
+            if (boxed == null) {
+                return null;
+            }
+            ref = boxed;
+        }
+
+        ByteBuffer slab = slab(ref);
+        int position = (int) ref;
+        long expiresAtSeconds = slab.getInt(position) & 0xFFFFFFFFL;
+        if (expiresAtSeconds != NEVER && expiresAtSeconds * 1000 <= nowMillis) {
+            return null;
+        }
+        position = skipId(slab, skipKey(slab, position + 4));
+        return readUrl(slab, position);
+    }
+
+    // ---- records ------------------------------------------------------------------
+    // expiresAt seconds (u32, NEVER = none) | packed key (8) [| key length varint + UTF-8 when 0]
+    // | id length (1) + id bytes | prefix id varint | suffix length varint + UTF-8 suffix
+
+    private long append(String id, long packed, String shortKey, String longUrl, long expiresAtMillis) {
+        byte[] idBytes = encodeId(id);
+        byte[] keyBytes = packed == 0 ? shortKey.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] url = longUrl.getBytes(StandardCharsets.UTF_8);
+        int prefixLength = prefixLength(url);
+        int prefixId = prefixLength > 0 ? prefixId(url, prefixLength) : 0;
+        if (prefixId == 0) {
+            prefixLength = 0;
+        }
+        int suffixLength = url.length - prefixLength;
+
+        int length = 4 + 8 + (keyBytes != null ? varintSize(keyBytes.length) + keyBytes.length : 0)
+                + 1 + idBytes.length + varintSize(prefixId) + varintSize(suffixLength) + suffixLength;
+        ByteBuffer slab = slabFor(length);
+        long ref = ref(slab.position());
+
+        long expiresAtSeconds = expiresAtMillis == Long.MAX_VALUE ? NEVER : Math.min(NEVER - 1, Math.max(0, (expiresAtMillis + 999) / 1000));
+        slab.putInt((int) expiresAtSeconds);
+        slab.putLong(packed);
+        if (keyBytes != null) {
+            putVarint(slab, keyBytes.length);
+            slab.put(keyBytes);
+        }
+        slab.put((byte) idBytes.length).put(idBytes);
+        putVarint(slab, prefixId);
+        putVarint(slab, suffixLength);
+        slab.put(url, prefixLength, suffixLength);
+        liveBytes += length;
+        return ref;
+    }
+
+    private ByteBuffer slabFor(int length) {
+        if (current == null || current.remaining() < length) {
+            current = ByteBuffer.allocateDirect(Math.max(slabBytes, length));
+            slabs.add(current);
+        }
+        return current;
+    }
+
+    private int recordLength(long ref) {
+        return recordLength(slab(ref), (int) ref);
+    }
+
+    private static int recordLength(ByteBuffer slab, int start) {
+        int position = skipId(slab, skipKey(slab, start + 4));
+        int[] cursor = {position};
+        readVarint(slab, cursor);
+        int suffixLength = readVarint(slab, cursor);
+        return cursor[0] + suffixLength - start;
+    }
+
+    private void discard(long ref) {
+        int length = recordLength(ref);
+        liveBytes -= length;
+        deadBytes += length;
+    }
+
+    private String keyOf(long ref) {
+        ByteBuffer slab = slab(ref);
+        int position = (int) ref + 4;
+        long packed = slab.getLong(position);
+        if (packed != 0) {
+            return unpack(packed);
+        }
+        int[] cursor = {position + 8};
+        int length = readVarint(slab, cursor);
+        return utf8(slab, cursor[0], length);
+    }
+
+    private String idOf(long ref) {
+        ByteBuffer slab = slab(ref);
+        int position = skipKey(slab, (int) ref + 4);
+        int length = slab.get(position);
+        byte[] id = new byte[length];
+        slab.get(position + 1, id);
+        return decodeId(id);
+    }
+
+    private long expiresAtMillis(long ref) {
+        long seconds = slab(ref).getInt((int) ref) & 0xFFFFFFFFL;
+        return seconds == NEVER ? Long.MAX_VALUE : seconds * 1000;
+    }
+
+    private void emit(long ref, EntryConsumer consumer) {
+        ByteBuffer slab = slab(ref);
+        String url = readUrl(slab, skipId(slab, skipKey(slab, (int) ref + 4)));
+        consumer.accept(idOf(ref), keyOf(ref), url, expiresAtMillis(ref));
+    }
+
+    private String readUrl(ByteBuffer slab, int position) {
+        int[] cursor = {position};
+        byte[] prefix = prefixes[readVarint(slab, cursor)];
+        int suffixLength = readVarint(slab, cursor);
+        byte[] url = new byte[prefix.length + suffixLength];
+        System.arraycopy(prefix, 0, url, 0, prefix.length);
+        slab.get(cursor[0], url, prefix.length, suffixLength);
+        return new String(url, StandardCharsets.UTF_8);
+    }
+
+    private static int skipKey(ByteBuffer slab, int position) {
+        if (slab.getLong(position) != 0) {
+            return position + 8;
+        }
+        int[] cursor = {position + 8};
+        int length = readVarint(slab, cursor);
+        return cursor[0] + length;
+    }
+
+    private static int skipId(ByteBuffer slab, int position) {
+        return position + 1 + slab.get(position);
+    }
+
+    // ---- prefix dictionary ----------------------------------------------------------
+
+    /**
+     * Scheme and host including the first '/' of the path, e.g. "https://example.com/".
+     */
+    private static int prefixLength(byte[] url) {
+        int slashes = 0;
+        for (int i = 0; i < url.length; i++) {
+            if (url[i] == '/' && ++slashes == 3) {
+                return i + 1;
+            }
+        }
+        return slashes == 2 ? url.length : 0;
+    }
+
+    private int prefixId(byte[] url, int length) {
+        String prefix = new String(url, 0, length, StandardCharsets.ISO_8859_1);
+        Integer id = prefixIds.get(prefix);
+        if (id != null) {
+            return id;
+        }
+        if (prefixCount == MAX_PREFIXES) {
+            return 0;
+        }
+        if (prefixCount == prefixes.length) {
+            // Copy-on-grow: readers holding the old array still see every prefix they can reach
+            prefixes = Arrays.copyOf(prefixes, prefixes.length * 2);
+        }
+        prefixes[prefixCount] = Arrays.copyOf(url, length);
+        prefixIds.put(prefix, prefixCount);
+        return prefixCount++;
+    }
+
+    // ---- key and id tables ----------------------------------------------------------
+
+    /**
+     * Makes room for one more key and id before the write takes the stamped lock.
+     */
+    private void growIfFull() {
+        long[] grownKeys = size + 1 > keys.length / 2 * MAX_LOAD ? grow(keys) : keys;
+        long[] grownIds = idSize + 1 > ids.length / 2 * MAX_LOAD ? grow(ids) : ids;
+        if (grownKeys == keys && grownIds == ids) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            keys = grownKeys;
+            ids = grownIds;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private long putKey(long packed, long ref) {
+        long previous = put(keys, packed, ref);
+        if (previous == 0) {
+            size++;
+        }
+        return previous;
+    }
+
+    private void putId(long hash, long ref) {
+        if (put(ids, hash, ref) == 0) {
+            idSize++;
+        }
+    }
+
+    private boolean removeByIdLocked(String id) {
+        long hash = hashId(id);
+        long ref = find(ids, hash);
+        // Id hashes can collide; only trust a record that carries the same id
+        if (ref == 0 || !id.equals(idOf(ref))) {
+            return false;
+        }
+        removeId(hash, ref);
+        String shortKey = keyOf(ref);
+        long packed = pack(shortKey);
+        if (packed != 0) {
+            remove(keys, packed);
+            size--;
+        } else {
+            overflow.remove(shortKey);
+        }
+        discard(ref);
+        return true;
+    }
+
+    private void removeId(long hash, long ref) {
+        if (find(ids, hash) == ref) {
+            remove(ids, hash);
+            idSize--;
+        }
+    }
+
+    /**
+     * @return the ref stored for {@code key}, or 0
+     */
+    private static long find(long[] table, long key) {
+        int mask = table.length / 2 - 1;
+        for (int slot = mix(key) & mask; table[slot * 2] != 0; slot = (slot + 1) & mask) {
+            if (table[slot * 2] == key) {
+                return table[slot * 2 + 1];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the ref {@code key} had before, or 0 when it is new
+     */
+    private static long put(long[] table, long key, long ref) {
+        int mask = table.length / 2 - 1;
+        int slot = mix(key) & mask;
+        while (table[slot * 2] != 0 && table[slot * 2] != key) {
+            slot = (slot + 1) & mask;
+        }
+        long previous = table[slot * 2] != 0 ? table[slot * 2 + 1] : 0;
+        table[slot * 2 + 1] = ref;
+        table[slot * 2] = key;
+        return previous;
+    }
+
+    /**
+     * Linear-probing delete with backward shift, so no tombstones are needed.
+     */
+    private static void remove(long[] table, long key) {
+        int mask = table.length / 2 - 1;
+        int slot = mix(key) & mask;
+        while (table[slot * 2] != key) {
+            slot = (slot + 1) & mask;
+        }
+        int hole = slot;
+        for (int next = (hole + 1) & mask; table[next * 2] != 0; next = (next + 1) & mask) {
+            int home = mix(table[next * 2]) & mask;
+            // Move the entry back if the hole lies on its probe path
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole * 2] = table[next * 2];
+                table[hole * 2 + 1] = table[next * 2 + 1];
+                hole = next;
+            }
+        }
+        table[hole * 2] = 0;
+    }
+
+    private static long[] grow(long[] table) {
+        long[] grown = new long[table.length * 2];
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] != 0) {
+                put(grown, table[i], table[i + 1]);
+            }
+        }
+        return grown;
+    }
+
+    /**
+     * Rewrites live records into fresh slabs once replaced ones take more room than they do.
+     * Readers keep using the current tables and slabs until the copies are swapped in.
+     */
+    private void compactIfWasteful() {
+        if (deadBytes <= Math.max(liveBytes, slabBytes)) {
+            return;
+        }
+        List<ByteBuffer> fresh = new ArrayList<>();
+        long[] movedKeys = keys.clone();
+        long[] movedIds = ids.clone();
+        Map<String, Long> movedOverflow = new ConcurrentHashMap<>();
+        for (int i = 0; i < movedKeys.length; i += 2) {
+            if (movedKeys[i] != 0) {
+                movedKeys[i + 1] = move(movedKeys[i + 1], fresh, movedIds);
+            }
+        }
+        overflow.forEach((key, ref) -> movedOverflow.put(key, move(ref, fresh, movedIds)));
+        long live = 0;
+        for (ByteBuffer slab : fresh) {
+            live += slab.position();
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            keys = movedKeys;
+            ids = movedIds;
+            overflow = movedOverflow;
+            slabs = fresh;
+            current = fresh.isEmpty() ? null : fresh.get(fresh.size() - 1);
+            liveBytes = live;
+            deadBytes = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private long move(long ref, List<ByteBuffer> to, long[] idTable) {
+        ByteBuffer from = slab(ref);
+        int length = recordLength(from, (int) ref);
+        ByteBuffer target = to.isEmpty() ? null : to.get(to.size() - 1);
+        if (target == null || target.remaining() < length) {
+            target = ByteBuffer.allocateDirect(Math.max(slabBytes, length));
+            to.add(target);
+        }
+        long moved = (long) to.size() << 32 | target.position();
+        target.put(from.slice((int) ref, length));
+        // Repoint the id slot too, unless a colliding id took it over
+        long hash = hashId(idOf(ref));
+        if (find(idTable, hash) == ref) {
+            put(idTable, hash, moved);
+        }
+        return moved;
+    }
+
+    /**
+     * Slab index is 1-based so no ref is 0, which marks "none".
+     */
+    private long ref(int position) {
+        return (long) slabs.size() << 32 | position;
+    }
+
+    private ByteBuffer slab(long ref) {
+        return slabs.get((int) (ref >>> 32) - 1);
+    }
+
+    // ---- encoding helpers -----------------------------------------------------------
+
+    /**
+     * ObjectId hex strings are stored as their 12 raw bytes.
+     */
+    private static byte[] encodeId(String id) {
+        if (id.length() == 24 && id.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            byte[] raw = new byte[12];
+            for (int i = 0; i < 12; i++) {
+                raw[i] = (byte) Integer.parseInt(id, i * 2, i * 2 + 2, 16);
+            }
+            return raw;
+        }
+        byte[] utf8 = id.getBytes(StandardCharsets.UTF_8);
+        // 12 bytes would read back as an ObjectId
+        if (utf8.length > 127 || utf8.length == 12) {
+            throw new IllegalArgumentException("Unsupported mapping id: " + id);
+        }
+        return utf8;
+    }
+
+    private static String decodeId(byte[] id) {
+        if (id.length != 12) {
+            return new String(id, StandardCharsets.UTF_8);
+        }
+        StringBuilder hex = new StringBuilder(24);
+        for (byte b : id) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static long hashId(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h != 0 ? h : 1;
+    }
+
+    private static int mix(long key) {
+        long h = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return (int) (h ^ (h >>> 31));
+    }
+
+    private static String utf8(ByteBuffer slab, int position, int length) {
+        byte[] bytes = new byte[length];
+        slab.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readVarint(ByteBuffer buffer, int[] cursor) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(cursor[0]++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int varintSize(int value) {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    private static long orZero(Long value) {
+        return value != null ? value : 0;
+    }
+
+    private static int tableSize(int expected) {
+        int size = 16;
+        while (size * MAX_LOAD < expected) {
+            size <<= 1;
+        }
+        return size;
+    }
+}
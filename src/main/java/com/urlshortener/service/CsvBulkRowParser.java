@@ -0,0 +1,106 @@
+package com.urlshortener.service;
+
+import com.urlshortener.dto.BulkRow;
+import com.urlshortener.dto.BulkShortenRequestItem;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental CSV parsing for bulk uploads. Lines are decoded from the incoming
+ * DataBuffers as they arrive, so memory stays flat and demand from the bulk
+ * pipeline propagates back to the upload. Quoted fields must not span lines.
+ */
+@Service
+public class CsvBulkRowParser {
+
+    private static final StringDecoder LINE_DECODER = StringDecoder.textPlainOnly(StringDecoder.DEFAULT_DELIMITERS, true);
+
+    public Flux<BulkRow> parse(Flux<DataBuffer> content) {
+        return LINE_DECODER.decode(content, ResolvableType.forClass(String.class), null, null)
+                .filter(line -> !line.isBlank())
+                .switchOnFirst((first, lines) -> {
+                    if (!first.hasValue()) {
+                        return Flux.empty();
+                    }
+                    Map<String, Integer> header = parseHeader(first.get());
+                    if (!header.containsKey("longUrl")) {
+                        return Flux.error(new IllegalArgumentException("CSV header must contain a longUrl column"));
+                    }
+                    return lines.skip(1)
+                            .index()
+                            .map(indexed -> toRow(indexed.getT1() + 1, indexed.getT2(), header));
+                });
+    }
+
+    private Map<String, Integer> parseHeader(String line) {
+        // Strip a UTF-8 BOM left by spreadsheet exports
+        List<String> columns = parseLine(line.startsWith("\uFEFF") ? line.substring(1) : line).toList();
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            header.put(columns.get(i).trim(), i);
+        }
+        return header;
+    }
+
+    private BulkRow toRow(long rowNumber, String line, Map<String, Integer> header) {
+        try {
+            List<String> values = parseLine(line).toList();
+
+            String longUrl = column(values, header, "longUrl");
+            if (longUrl == null) {
+                return BulkRow.invalid(rowNumber, null, "Missing longUrl in CSV row");
+            }
+
+            BulkShortenRequestItem item = new BulkShortenRequestItem();
+            item.setLongUrl(longUrl);
+            item.setCustomAlias(column(values, header, "customAlias"));
+
+            String expiryDays = column(values, header, "expiryDays");
+            if (expiryDays != null) {
+                try {
+                    item.setExpiryDays(Integer.parseInt(expiryDays));
+                } catch (NumberFormatException nfe) {
+                    return BulkRow.invalid(rowNumber, longUrl, "Invalid expiryDays: must be an integer");
+                }
+            }
+            return BulkRow.of(rowNumber, item);
+
+        } catch (RuntimeException e) {
+            return BulkRow.invalid(rowNumber, null, "Error parsing CSV row: " + e.getMessage());
+        }
+    }
+
+    private static String column(List<String> values, Map<String, Integer> header, String name) {
+        Integer index = header.get(name);
+        if (index == null || index >= values.size()) {
+            return null;
+        }
+        String value = values.get(index).trim();
+        return value.isBlank() ? null : value;
+    }
+
+    private static CSVRecord parseLine(String line) {
+        try (CSVParser parser = CSVParser.parse(line, CSVFormat.DEFAULT)) {
+            Iterator<CSVRecord> records = parser.iterator();
+            if (!records.hasNext()) {
+                throw new IllegalArgumentException("empty row");
+            }
+            return records.next();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
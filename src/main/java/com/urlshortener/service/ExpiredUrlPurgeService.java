@@ -0,0 +1,226 @@
+package com.urlshortener.service;
+
+import com.urlshortener.config.RedisScripts;
+import com.urlshortener.model.PurgeJob;
+import com.urlshortener.model.UrlMapping;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Purges expired mappings in batches. Each batch is a range query on the expiresAt index,
+ * one multi-key Redis DEL, one deleteMany and one batched L1 invalidation, followed by a
+ * checkpoint in purge_jobs. A Redis lock keeps one run per cluster and is renewed before
+ * every batch; a node that finds it has lost the lock stops without another checkpoint.
+ * An interrupted run is resumed with its original cutoff.
+ */
+@Slf4j
+@Service
+public class ExpiredUrlPurgeService {
+
+    private static final String JOB_ID = "expired-purge";
+    private static final String LOCK_KEY = "purge:expired:lock";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final RedisUrlCache redisUrlCache;
+    private final CacheInvalidationService cacheInvalidationService;
+    private final UrlStatsService urlStatsService;
+    private final ShortKeyBloomFilter shortKeyBloomFilter;
+    private final String owner = UUID.randomUUID().toString();
+
+    @Value("${shortener.purge.batch-size}")
+    private int batchSize;
+
+    // 0 disables throttling
+    @Value("${shortener.purge.max-batches-per-second}")
+    private double maxBatchesPerSecond;
+
+    @Value("${shortener.purge.lock-ttl-seconds}")
+    private long lockTtlSeconds;
+
+    public ExpiredUrlPurgeService(ReactiveMongoTemplate mongoTemplate,
+                                  @Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate,
+                                  RedisUrlCache redisUrlCache,
+                                  CacheInvalidationService cacheInvalidationService,
+                                  UrlStatsService urlStatsService,
+                                  ShortKeyBloomFilter shortKeyBloomFilter) {
+        this.mongoTemplate = mongoTemplate;
+        this.redisTemplate = redisTemplate;
+        this.redisUrlCache = redisUrlCache;
+        this.cacheInvalidationService = cacheInvalidationService;
+        this.urlStatsService = urlStatsService;
+        this.shortKeyBloomFilter = shortKeyBloomFilter;
+    }
+
+    @Scheduled(cron = "${shortener.purge.cron}")
+    public Mono<PurgeJob> scheduledPurge() {
+        return purge();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        getStatus()
+                .filter(job -> job.getStatus() == PurgeJob.Status.RUNNING)
+                .doOnNext(job -> log.info("Resuming interrupted expired-URL purge started at {}", job.getStartedAt()))
+                .flatMap(job -> purge())
+                .subscribe(
+                        job -> { },
+                        error -> log.warn("Could not check for an interrupted purge: {}", error.getMessage()));
+    }
+
+    public Mono<PurgeJob> getStatus() {
+        return mongoTemplate.findById(JOB_ID, PurgeJob.class);
+    }
+
+    /**
+     * @return the finished job, or empty if another node is already purging
+     */
+    public Mono<PurgeJob> purge() {
+        return acquireLock()
+                .flatMap(acquired -> {
+                    if (!acquired) {
+                        log.info("Expired-URL purge already running on another node");
+                        return Mono.empty();
+                    }
+                    return startOrResume()
+                            .flatMap(this::runBatches)
+                            .doFinally(signal -> releaseLock().subscribe());
+                });
+    }
+
+    private Mono<PurgeJob> startOrResume() {
+        return getStatus()
+                .filter(job -> job.getStatus() == PurgeJob.Status.RUNNING)
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    PurgeJob job = new PurgeJob();
+                    job.setId(JOB_ID);
+                    job.setStatus(PurgeJob.Status.RUNNING);
+                    job.setCutoff(Instant.now());
+                    job.setStartedAt(Instant.now());
+                    return job;
+                }))
+                .doOnNext(job -> job.setOwner(owner))
+                .flatMap(this::checkpoint);
+    }
+
+    private Mono<PurgeJob> runBatches(PurgeJob job) {
+        Duration pause = maxBatchesPerSecond > 0 ? Duration.ofMillis((long) (1000 / maxBatchesPerSecond)) : Duration.ZERO;
+
+        return Flux.range(0, Integer.MAX_VALUE)
+                .concatMap(i -> (i == 0 || pause.isZero() ? Mono.<Long>empty() : Mono.delay(pause))
+                        .then(Mono.defer(() -> purgeBatch(job))))
+                .takeUntil(deleted -> deleted == 0)
+                .then(Mono.defer(() -> {
+                    job.setStatus(PurgeJob.Status.COMPLETED);
+                    job.setFinishedAt(Instant.now());
+                    log.info("Expired-URL purge completed: {} mappings in {} batches", job.getDeleted(), job.getBatches());
+                    return checkpoint(job);
+                }))
+                .onErrorResume(LockLostException.class, e -> {
+                    // The node holding the lock now owns the checkpoint too
+                    log.warn("Expired-URL purge stopped after {} mappings: {}", job.getDeleted(), e.getMessage());
+                    return Mono.just(job);
+                })
+                .onErrorResume(e -> {
+                    // Left resumable: status stays RUNNING until a later run finishes it
+                    log.error("Expired-URL purge stopped after {} mappings: {}", job.getDeleted(), e.getMessage());
+                    job.setError(e.getMessage());
+                    return checkpoint(job).onErrorResume(ignored -> Mono.just(job));
+                });
+    }
+
+    private Mono<Long> purgeBatch(PurgeJob job) {
+        Query query = Query.query(Criteria.where("expiresAt").lt(job.getCutoff()))
+                .with(Sort.by(Sort.Direction.ASC, "expiresAt"))
+                .limit(batchSize);
+        query.fields().include("shortKey", "expiresAt");
+
+        return renewLock()
+                .then(mongoTemplate.find(query, UrlMapping.class).collectList())
+                .flatMap(batch -> {
+                    if (batch.isEmpty()) {
+                        return Mono.just(0L);
+                    }
+                    List<String> keys = batch.stream().map(mapping -> mapping.getShortKey().toLowerCase()).toList();
+                    List<String> ids = batch.stream().map(UrlMapping::getId).toList();
+
+                    return redisUrlCache.delete(keys)
+                            .onErrorResume(e -> {
+                                // Cached entries carry a TTL bounded by expiresAt, so they die on their own
+                                log.error("Redis DEL failed for {} purged keys: {}", keys.size(), e.getMessage());
+                                return Mono.empty();
+                            })
+                            .then(mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), UrlMapping.class))
+                            .flatMap(result -> {
+                                long deleted = result.getDeletedCount();
+                                urlStatsService.onDeleted(deleted);
+                                job.setDeleted(job.getDeleted() + deleted);
+                                job.setBatches(job.getBatches() + 1);
+                                job.setLastExpiresAt(batch.get(batch.size() - 1).getExpiresAt());
+                                return shortKeyBloomFilter.removeAll(keys)
+                                        .then(cacheInvalidationService.invalidateAll(keys))
+                                        .then(checkpoint(job))
+                                        .thenReturn((long) batch.size());
+                            });
+                });
+    }
+
+    private Mono<PurgeJob> checkpoint(PurgeJob job) {
+        job.setUpdatedAt(Instant.now());
+        return mongoTemplate.save(job);
+    }
+
+    private Mono<Boolean> acquireLock() {
+        return redisTemplate.opsForValue()
+                .setIfAbsent(LOCK_KEY, owner, Duration.ofSeconds(lockTtlSeconds))
+                .onErrorResume(e -> {
+                    // Purging is idempotent; without Redis the worst case is duplicated work
+                    log.warn("Could not take purge lock, running unlocked: {}", e.getMessage());
+                    return Mono.just(true);
+                });
+    }
+
+    /**
+     * Fails with {@link LockLostException} once another node holds the lock, e.g. after this
+     * one stalled past its TTL. Without Redis the purge keeps going, as it started unlocked.
+     */
+    private Mono<Void> renewLock() {
+        String ttlMillis = Long.toString(Duration.ofSeconds(lockTtlSeconds).toMillis());
+        return redisTemplate.execute(RedisScripts.RENEW_LOCK, List.of(LOCK_KEY), List.of(owner, ttlMillis))
+                .next()
+                .onErrorResume(e -> {
+                    log.warn("Could not renew purge lock, continuing: {}", e.getMessage());
+                    return Mono.just(1L);
+                })
+                .flatMap(renewed -> renewed == 1L ? Mono.<Void>empty() : Mono.error(new LockLostException()));
+    }
+
+    private Mono<Long> releaseLock() {
+        return redisTemplate.execute(RedisScripts.RELEASE_LOCK, List.of(LOCK_KEY), List.of(owner))
+                .next()
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    private static class LockLostException extends IllegalStateException {
+        LockLostException() {
+            super("purge lock lost; another node is purging now");
+        }
+    }
+}
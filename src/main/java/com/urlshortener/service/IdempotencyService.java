@@ -0,0 +1,246 @@
+package com.urlshortener.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.config.RedisScripts;
+import com.urlshortener.exception.IdempotencyInProgressException;
+import com.urlshortener.exception.IdempotencyKeyReusedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key support for the shorten endpoints. The first request with a key claims
+ * a Redis record ("P|fingerprint|owner") for shortener.idempotency.lease-seconds, runs and
+ * replaces it with its response ("D|fingerprint|json") for shortener.idempotency.ttl-seconds.
+ * A repeat gets the stored response; one arriving while the first is still running waits
+ * for it (in-process through the shared result, across nodes by polling the record). A key
+ * reused for a different request body is rejected. Failed requests release the record, so
+ * a retry runs again; without Redis requests simply run unprotected.
+ * <p>
+ * Claimed work runs to the end even when every caller disconnects, so its record is
+ * always completed or released, and the lease is renewed while it runs, so a slow
+ * request is never claimed and run a second time.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final String KEY_PREFIX = "idem:";
+    private static final String IN_PROGRESS = "P|";
+    private static final String DONE = "D|";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    // Store the response (or with an empty ARGV[2], drop the record) only while this request still owns it
+    private static final RedisScript<Long> COMPLETE = RedisScript.of("""
+            if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end
+            if ARGV[2] == '' then redis.call('del', KEYS[1]) else redis.call('set', KEYS[1], ARGV[2], 'EX', ARGV[3]) end
+            return 1""", Long.class);
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ShortenerMetrics metrics;
+    private final Duration lease;
+    private final Duration ttl;
+    private final Duration maxWait;
+    private final Duration pollInterval;
+    private final ConcurrentHashMap<String, Mono<String>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyService(@Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate,
+                              ObjectMapper objectMapper,
+                              ShortenerMetrics metrics,
+                              @Value("${shortener.idempotency.lease-seconds}") long leaseSeconds,
+                              @Value("${shortener.idempotency.ttl-seconds}") long ttlSeconds,
+                              @Value("${shortener.idempotency.wait-seconds}") long waitSeconds,
+                              @Value("${shortener.idempotency.poll-millis}") long pollMillis) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.maxWait = Duration.ofSeconds(waitSeconds);
+        this.pollInterval = Duration.ofMillis(pollMillis);
+    }
+
+    /**
+     * Runs {@code work} at most once per key and request within the TTL.
+     *
+     * @param idempotencyKey the header value; null runs {@code work} directly
+     * @param scope          endpoint and caller the key belongs to, so clients cannot collide
+     * @param request        request body; a key reused with a different one is rejected
+     */
+    public <T> Mono<T> execute(String idempotencyKey, String scope, Object request, JavaType responseType,
+                               Supplier<Mono<T>> work) {
+        if (idempotencyKey == null) {
+            return work.get();
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH
+                || !idempotencyKey.chars().allMatch(c -> c > 0x20 && c < 0x7f)) {
+            return Mono.error(new IllegalArgumentException(
+                    HEADER + " must be 1-" + MAX_KEY_LENGTH + " visible ASCII characters"));
+        }
+        String key = KEY_PREFIX + scope + ":" + idempotencyKey;
+        String fingerprint;
+        try {
+            fingerprint = sha256(objectMapper.writeValueAsBytes(request));
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+        // Same-node duplicates share the first one's result instead of polling Redis
+        Mono<String> json = Mono.defer(() -> {
+            AtomicBoolean leader = new AtomicBoolean();
+            Mono<String> shared = inFlight.computeIfAbsent(key + "|" + fingerprint, local -> {
+                leader.set(true);
+                AtomicReference<Mono<String>> self = new AtomicReference<>();
+                Mono<String> result = attempt(key, fingerprint, () -> work.get().map(this::toJson), System.nanoTime() + maxWait.toNanos())
+                        .doFinally(signal -> inFlight.remove(local, self.get()))
+                        .cache();
+                self.set(result);
+                return result;
+            });
+            if (leader.get()) {
+                // Callers only ever cancel their own subscription; this one carries the work to its end
+                shared.subscribe(ignored -> { }, ignored -> { });
+            }
+            return shared;
+        });
+        return json.map(body -> fromJson(body, responseType));
+    }
+
+    /**
+     * Keys are per endpoint and API key, so two clients picking the same key never meet.
+     */
+    public String scope(String endpoint, String apiKey) {
+        return endpoint + ":" + (apiKey != null ? sha256(apiKey).substring(0, 16) : "anonymous");
+    }
+
+    private Mono<String> attempt(String key, String fingerprint, Supplier<Mono<String>> work, long deadline) {
+        String claim = IN_PROGRESS + fingerprint + "|" + UUID.randomUUID();
+        return redisTemplate.opsForValue().setIfAbsent(key, claim, lease)
+                .map(Optional::of)
+                .onErrorResume(e -> {
+                    metrics.redisFallback(ShortenerMetrics.RedisOperation.IDEMPOTENCY);
+                    log.error("Redis SET NX failed for idempotency key [{}], running unprotected: {}", key, e.getMessage());
+                    return Mono.just(Optional.empty());
+                })
+                .flatMap(claimed -> claimed.isEmpty() ? work.get()
+                        : claimed.get() ? run(key, claim, work) : existing(key, fingerprint, work, deadline));
+    }
+
+    private Mono<String> run(String key, String claim, Supplier<Mono<String>> work) {
+        return Mono.defer(() -> {
+            Disposable renewal = renewWhileRunning(key, claim);
+            return work.get()
+                    .doFinally(signal -> renewal.dispose())
+                    .flatMap(json -> complete(key, claim, DONE + fingerprintOf(claim) + "|" + json).thenReturn(json))
+                    .switchIfEmpty(Mono.defer(() -> complete(key, claim, "").then(Mono.empty())))
+                    .onErrorResume(e -> complete(key, claim, "").then(Mono.error(e)));
+        });
+    }
+
+    /**
+     * Pushes the lease out every third of its length until the work ends or the record is
+     * no longer ours.
+     */
+    private Disposable renewWhileRunning(String key, String claim) {
+        Duration every = lease.dividedBy(3);
+        return Flux.interval(every, every)
+                .concatMap(tick -> redisTemplate.execute(RedisScripts.RENEW_LOCK, List.of(key), List.of(claim, Long.toString(lease.toMillis())))
+                        .next()
+                        .onErrorResume(e -> {
+                            metrics.redisFallback(ShortenerMetrics.RedisOperation.IDEMPOTENCY);
+                            log.error("Redis lease renewal failed for idempotency key [{}]: {}", key, e.getMessage());
+                            // Try again on the next tick
+                            return Mono.just(1L);
+                        }))
+                .takeWhile(renewed -> renewed == 1L)
+                .subscribe();
+    }
+
+    private Mono<String> existing(String key, String fingerprint, Supplier<Mono<String>> work, long deadline) {
+        return redisTemplate.opsForValue().get(key)
+                .flatMap(record -> {
+                    if (!fingerprintOf(record).equals(fingerprint)) {
+                        return Mono.error(new IdempotencyKeyReusedException(
+                                HEADER + " was already used for a different request"));
+                    }
+                    if (record.startsWith(DONE)) {
+                        metrics.idempotentReplay();
+                        return Mono.just(record.substring(DONE.length() + fingerprint.length() + 1));
+                    }
+                    if (System.nanoTime() - deadline > 0) {
+                        return Mono.error(new IdempotencyInProgressException(
+                                "A request with this " + HEADER + " is still in progress"));
+                    }
+                    return Mono.delay(pollInterval).then(Mono.defer(() -> existing(key, fingerprint, work, deadline)));
+                })
+                // The first request failed and released the key (or its lease ran out): claim it ourselves
+                .switchIfEmpty(Mono.defer(() -> attempt(key, fingerprint, work, deadline)));
+    }
+
+    private Mono<Void> complete(String key, String claim, String record) {
+        return redisTemplate.execute(COMPLETE, List.of(key), List.of(claim, record, Long.toString(ttl.toSeconds())))
+                .next()
+                .onErrorResume(e -> {
+                    metrics.redisFallback(ShortenerMetrics.RedisOperation.IDEMPOTENCY);
+                    log.error("Redis update failed for idempotency key [{}]: {}", key, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private static String fingerprintOf(String record) {
+        int end = record.indexOf('|', 2);
+        return end < 0 ? "" : record.substring(2, end);
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response not serializable", e);
+        }
+    }
+
+    private <T> T fromJson(String json, JavaType type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored idempotent response not readable", e);
+        }
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String sha256(String value) {
+        return sha256(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,94 @@
+package com.urlshortener.service;
+
+import com.urlshortener.dto.CursorPage;
+import com.urlshortener.model.UrlMapping;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * Keyset pagination over url_mapping. Sort, limit and the "after the cursor" range
+ * predicate all run in Mongo on an index, so page N costs the same as page 1.
+ */
+final class KeysetPager {
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * One sortable listing: a field (null for plain _id order), its direction, how to read
+     * the field off a document as a long (null when the document lacks it), and how to turn
+     * that long back into a query value.
+     */
+    record Listing(String name, String field, Sort.Direction direction,
+                   Function<UrlMapping, Long> valueOf, LongFunction<Object> toQueryValue) {
+    }
+
+    private KeysetPager() {
+    }
+
+    static Mono<CursorPage<UrlMapping>> page(ReactiveMongoTemplate mongoTemplate, Listing listing, String cursorToken, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return Mono.error(new IllegalArgumentException("size must be between 1 and " + MAX_PAGE_SIZE));
+        }
+        Query query;
+        try {
+            query = new Query(afterCursor(listing, cursorToken));
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+        query.with(listing.field() == null
+                        ? Sort.by(listing.direction(), "_id")
+                        : Sort.by(listing.direction(), listing.field(), "_id"))
+                .limit(size + 1); // one extra tells us whether there is a next page
+
+        return mongoTemplate.find(query, UrlMapping.class)
+                .collectList()
+                .map(items -> {
+                    if (items.size() <= size) {
+                        return new CursorPage<>(items, null);
+                    }
+                    List<UrlMapping> pageItems = items.subList(0, size);
+                    UrlMapping last = pageItems.get(size - 1);
+                    Long lastValue = listing.field() == null ? null : listing.valueOf().apply(last);
+                    return new CursorPage<>(pageItems, new PageCursor(listing.name(), lastValue, last.getId()).encode());
+                });
+    }
+
+    private static Criteria afterCursor(Listing listing, String cursorToken) {
+        if (cursorToken == null || cursorToken.isBlank()) {
+            return new Criteria();
+        }
+        PageCursor cursor = PageCursor.decode(cursorToken, listing.name());
+        boolean ascending = listing.direction().isAscending();
+        Criteria idAfter = ascending
+                ? Criteria.where("_id").gt(cursor.idValue())
+                : Criteria.where("_id").lt(cursor.idValue());
+        if (listing.field() == null) {
+            return idAfter;
+        }
+        // Documents without the field sort below every value (first ascending, last descending),
+        // and range operators never match them, so they need their own branch of the comparison
+        Criteria missing = Criteria.where(listing.field()).is(null);
+        if (cursor.value() == null) {
+            Criteria missingAfter = new Criteria().andOperator(missing, idAfter);
+            return ascending
+                    ? new Criteria().orOperator(missingAfter, Criteria.where(listing.field()).ne(null))
+                    : missingAfter;
+        }
+        Object value = listing.toQueryValue().apply(cursor.value());
+        Criteria valueAfter = ascending
+                ? Criteria.where(listing.field()).gt(value)
+                : Criteria.where(listing.field()).lt(value);
+        // (field, _id) tuple comparison
+        Criteria sameValueAfter = new Criteria().andOperator(Criteria.where(listing.field()).is(value), idAfter);
+        return ascending
+                ? new Criteria().orOperator(valueAfter, sameValueAfter)
+                : new Criteria().orOperator(valueAfter, sameValueAfter, missing);
+    }
+}
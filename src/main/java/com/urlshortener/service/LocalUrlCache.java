@@ -0,0 +1,137 @@
+package com.urlshortener.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Bounded in-process near-cache sitting in front of Redis on the redirect path.
+ * Caffeine's W-TinyLFU admission keeps the hot set resident; each entry lives until
+ * its mapping's expiresAt, capped by max-ttl so a missed invalidation is bounded.
+ * Keys known not to exist are remembered separately for a few seconds, so repeated
+ * 404s for the same path stay in process.
+ */
+@Slf4j
+@Service
+public class LocalUrlCache {
+
+    public record Entry(String longUrl, Instant expiresAt) {
+    }
+
+    private final Cache<String, Entry> cache;
+    private final Cache<String, Boolean> missing;
+    private final boolean enabled;
+    private final int maxEntryBytes;
+
+    public LocalUrlCache(@Value("${shortener.l1-cache.enabled}") boolean enabled,
+                         @Value("${shortener.l1-cache.max-weight-bytes}") long maxWeightBytes,
+                         @Value("${shortener.l1-cache.max-entry-bytes}") int maxEntryBytes,
+                         @Value("${shortener.l1-cache.max-ttl-seconds}") long maxTtlSeconds,
+                         @Value("${shortener.l1-cache.negative-max-keys}") long negativeMaxKeys,
+                         @Value("${shortener.l1-cache.negative-ttl-seconds}") long negativeTtlSeconds,
+                         MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxEntryBytes = maxEntryBytes;
+        long maxTtlNanos = Duration.ofSeconds(maxTtlSeconds).toNanos();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher((String key, Entry entry) -> weigh(key, entry))
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return remainingNanos(entry, maxTtlNanos);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return remainingNanos(entry, maxTtlNanos);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        // Short TTL: a key created on another node is only invalidated here by expiry
+        this.missing = Caffeine.newBuilder()
+                .maximumSize(negativeMaxKeys)
+                .expireAfterWrite(Duration.ofSeconds(negativeTtlSeconds))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "url-l1");
+        CaffeineCacheMetrics.monitor(meterRegistry, missing, "url-l1-negative");
+    }
+
+    public Entry get(String shortKey) {
+        if (!enabled) {
+            return null;
+        }
+        return cache.getIfPresent(shortKey);
+    }
+
+    public void put(String shortKey, String longUrl, Instant expiresAt) {
+        if (!enabled || longUrl == null) {
+            return;
+        }
+        if (expiresAt != null && !expiresAt.isAfter(Instant.now())) {
+            return;
+        }
+        Entry entry = new Entry(longUrl, expiresAt);
+        // Oversized URLs are not worth the heap; they keep going to Redis
+        if (weigh(shortKey, entry) > maxEntryBytes) {
+            return;
+        }
+        cache.put(shortKey, entry);
+    }
+
+    public boolean isKnownMissing(String shortKey) {
+        return enabled && missing.getIfPresent(shortKey) != null;
+    }
+
+    public void putMissing(String shortKey) {
+        if (enabled) {
+            missing.put(shortKey, Boolean.TRUE);
+        }
+    }
+
+    public void invalidate(String shortKey) {
+        cache.invalidate(shortKey);
+        missing.invalidate(shortKey);
+    }
+
+    /**
+     * Most recently and frequently read keys first, as ranked by the eviction policy.
+     */
+    public List<String> hottestKeys(int limit) {
+        return cache.policy().eviction()
+                .map(eviction -> List.copyOf(eviction.hottest(limit).keySet()))
+                .orElse(List.of());
+    }
+
+    private static int weigh(String key, Entry entry) {
+        // Rough heap footprint: two Strings (Latin-1 compact) plus entry overhead
+        return key.length() + entry.longUrl().length() + 96;
+    }
+
+    private static long remainingNanos(Entry entry, long maxTtlNanos) {
+        if (entry.expiresAt() == null) {
+            return maxTtlNanos;
+        }
+        long remaining = Duration.between(Instant.now(), entry.expiresAt()).toNanos();
+        return Math.max(0, Math.min(remaining, maxTtlNanos));
+    }
+}
@@ -5,6 +5,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
@@ -16,6 +18,11 @@ public class MongoIndexCreatorService {
     private final ReactiveMongoTemplate reactiveMongoTemplate;
 
     public Mono<Void> createIndexes() {
+        return Mono.whenDelayError(createTtlIndex(), createShortKeyIndex(), createUrlHashIndex(), createPaginationIndexes(), createClickBucketIndexes(),
+                createBulkJobIndexes());
+    }
+
+    private Mono<Void> createTtlIndex() {
         // Ensure TTL index on "expiresAt" field in "url_mapping" collection
         return reactiveMongoTemplate.indexOps("url_mapping")
                 .ensureIndex(
@@ -27,4 +34,112 @@ public class MongoIndexCreatorService {
                 .doOnError(error -> log.error("Failed to create TTL index on url_mapping: {}", error.getMessage()))
                 .then();
     }
+
+    private Mono<Void> createShortKeyIndex() {
+        // Unique index on "shortKey": final guard against generated keys colliding with custom aliases
+        return reactiveMongoTemplate.indexOps("url_mapping")
+                .ensureIndex(
+                        new Index()
+                                .on("shortKey", Sort.Direction.ASC)
+                                .unique()
+                )
+                .doOnSuccess(indexName -> log.info("Unique index [{}] created/verified on url_mapping.", indexName))
+                .doOnError(error -> log.error("Failed to create unique shortKey index on url_mapping: {}", error.getMessage()))
+                .then();
+    }
+
+    private Mono<Void> createUrlHashIndex() {
+        // Deduplication lookups; partial, so mappings created with it off cost no index entries
+        return reactiveMongoTemplate.indexOps("url_mapping")
+                .ensureIndex(
+                        new Index()
+                                .on("urlHash", Sort.Direction.ASC)
+                                .on("expiresAt", Sort.Direction.ASC)
+                                .partial(PartialIndexFilter.of(Criteria.where("urlHash").exists(true)))
+                )
+                .doOnSuccess(indexName -> log.info("URL hash index [{}] created/verified on url_mapping.", indexName))
+                .doOnError(error -> log.error("Failed to create urlHash index on url_mapping: {}", error.getMessage()))
+                .then();
+    }
+
+    private Mono<Void> createPaginationIndexes() {
+        // Keyset pagination: newest-first admin listing and the lifetime top-clicked ranking
+        Mono<String> createdAtIndex = reactiveMongoTemplate.indexOps("url_mapping")
+                .ensureIndex(
+                        new Index()
+                                .on("createdAt", Sort.Direction.DESC)
+                                .on("_id", Sort.Direction.DESC)
+                );
+        Mono<String> clickCountIndex = reactiveMongoTemplate.indexOps("url_mapping")
+                .ensureIndex(
+                        new Index()
+                                .on("clickCount", Sort.Direction.DESC)
+                                .on("_id", Sort.Direction.DESC)
+                );
+        return Mono.whenDelayError(createdAtIndex, clickCountIndex)
+                .doOnSuccess(ignored -> log.info("Pagination indexes created/verified on url_mapping."))
+                .doOnError(error -> log.error("Failed to create pagination indexes on url_mapping: {}", error.getMessage()));
+    }
+
+    private Mono<Void> createBulkJobIndexes() {
+        // Oldest claimable job first
+        Mono<String> claimIndex = reactiveMongoTemplate.indexOps("bulk_jobs")
+                .ensureIndex(
+                        new Index()
+                                .on("status", Sort.Direction.ASC)
+                                .on("createdAt", Sort.Direction.ASC)
+                );
+        Mono<String> jobTtlIndex = reactiveMongoTemplate.indexOps("bulk_jobs")
+                .ensureIndex(
+                        new Index()
+                                .on("expireAt", Sort.Direction.ASC)
+                                .expire(0)
+                );
+        // Results paged by row; unique so a row is never stored twice for a job
+        Mono<String> resultIndex = reactiveMongoTemplate.indexOps("bulk_job_results")
+                .ensureIndex(
+                        new Index()
+                                .on("jobId", Sort.Direction.ASC)
+                                .on("row", Sort.Direction.ASC)
+                                .unique()
+                );
+        Mono<String> resultTtlIndex = reactiveMongoTemplate.indexOps("bulk_job_results")
+                .ensureIndex(
+                        new Index()
+                                .on("expireAt", Sort.Direction.ASC)
+                                .expire(0)
+                );
+        return Mono.whenDelayError(claimIndex, jobTtlIndex, resultIndex, resultTtlIndex)
+                .doOnSuccess(ignored -> log.info("Indexes created/verified on bulk_jobs and bulk_job_results."))
+                .doOnError(error -> log.error("Failed to create bulk job indexes: {}", error.getMessage()));
+    }
+
+    private Mono<Void> createClickBucketIndexes() {
+        // One document per (shortKey, granularity, bucketStart); also serves histogram range queries
+        Mono<String> bucketIndex = reactiveMongoTemplate.indexOps("click_buckets")
+                .ensureIndex(
+                        new Index()
+                                .on("shortKey", Sort.Direction.ASC)
+                                .on("granularity", Sort.Direction.ASC)
+                                .on("bucketStart", Sort.Direction.ASC)
+                                .unique()
+                );
+        // Rollups scan one granularity over a time range
+        Mono<String> rollupIndex = reactiveMongoTemplate.indexOps("click_buckets")
+                .ensureIndex(
+                        new Index()
+                                .on("granularity", Sort.Direction.ASC)
+                                .on("bucketStart", Sort.Direction.ASC)
+                );
+        // Per-granularity retention
+        Mono<String> ttlIndex = reactiveMongoTemplate.indexOps("click_buckets")
+                .ensureIndex(
+                        new Index()
+                                .on("expireAt", Sort.Direction.ASC)
+                                .expire(0)
+                );
+        return Mono.whenDelayError(bucketIndex, rollupIndex, ttlIndex)
+                .doOnSuccess(ignored -> log.info("Indexes created/verified on click_buckets."))
+                .doOnError(error -> log.error("Failed to create indexes on click_buckets: {}", error.getMessage()));
+    }
 }
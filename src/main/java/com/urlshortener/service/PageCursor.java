@@ -0,0 +1,35 @@
+package com.urlshortener.service;
+
+import org.bson.types.ObjectId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset continuation token: the sort it belongs to, the last item's sort value
+ * (empty when the item has none) and its _id as the tie-breaker, base64url-encoded so
+ * clients treat it as a blob.
+ */
+record PageCursor(String sort, Long value, String id) {
+
+    String encode() {
+        String raw = sort + "|" + (value != null ? value : "") + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static PageCursor decode(String token, String expectedSort) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 3);
+            if (parts.length != 3 || !parts[0].equals(expectedSort)) {
+                throw new IllegalArgumentException("Cursor does not belong to this listing");
+            }
+            return new PageCursor(parts[0], parts[1].isEmpty() ? null : Long.parseLong(parts[1]), parts[2]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + e.getMessage());
+        }
+    }
+
+    Object idValue() {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+}
@@ -1,18 +1,118 @@
 package com.urlshortener.service;
 
-import io.github.resilience4j.ratelimiter.RateLimiter;
-import io.github.resilience4j.reactor.ratelimiter.operator.RateLimiterOperator;
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.urlshortener.config.RateLimitProperties;
+import com.urlshortener.config.RedisScripts;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
+/**
+ * Distributed token buckets. The bucket itself lives in Redis and is updated by one
+ * atomic Lua script; each node leases a slice of it and spends the lease locally, and
+ * remembers an empty bucket until its next token is due. Most decisions therefore never
+ * leave the JVM, and unspent leases only ever make the limit stricter.
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class RateLimiterService {
 
-    private final RateLimiter shortenerRateLimiter;
+    public record Decision(boolean allowed, long limit, long remaining, long resetSeconds, long retryAfterSeconds) {
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TOKEN_BUCKET =
+            RedisScripts.load("token_bucket.lua", List.class);
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final RateLimitProperties properties;
+    private final ShortenerMetrics metrics;
+    private final Cache<String, LocalBucket> localBuckets;
+
+    public RateLimiterService(@Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate,
+                              RateLimitProperties properties,
+                              ShortenerMetrics metrics) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.metrics = metrics;
+        this.localBuckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxLocalBuckets())
+                .expireAfterAccess(properties.getLeaseTtl().multipliedBy(10))
+                .build();
+    }
+
+    public Mono<Decision> tryAcquire(String bucketKey, RateLimitProperties.Limit limit) {
+        long now = System.currentTimeMillis();
+        LocalBucket local = localBuckets.get(bucketKey, key -> new LocalBucket());
+        Decision decided = local.tryLocal(now, limit);
+        if (decided != null) {
+            return Mono.just(decided);
+        }
+
+        long lease = Math.max(1, Math.round(limit.getCapacity() * properties.getLeaseFraction()));
+        List<String> args = List.of(
+                Long.toString(limit.getCapacity()),
+                Double.toString(limit.tokensPerMilli()),
+                Long.toString(lease));
+
+        return redisTemplate.execute(TOKEN_BUCKET, List.of(bucketKey), args)
+                .next()
+                .map(result -> local.onLease(now, (Long) result.get(0), (Long) result.get(1), (Long) result.get(2),
+                        limit, properties.getLeaseTtl().toMillis()))
+                .onErrorResume(e -> {
+                    // Fail open: an outage of the limiter must not take the service down with it
+                    metrics.redisFallback(ShortenerMetrics.RedisOperation.RATE_LIMIT);
+                    log.error("Rate limit check failed for [{}]: {}", bucketKey, e.getMessage());
+                    return Mono.just(new Decision(true, limit.getCapacity(), limit.getCapacity(), 0, 0));
+                });
+    }
+
+    private static final class LocalBucket {
+        private long tokens;
+        private long leaseExpiresAt;
+        private long blockedUntil;
+        private long globalRemaining;
+
+        synchronized Decision tryLocal(long now, RateLimitProperties.Limit limit) {
+            if (now < blockedUntil) {
+                return denied(limit, blockedUntil - now);
+            }
+            if (tokens > 0 && now < leaseExpiresAt) {
+                tokens--;
+                return allowed(limit);
+            }
+            return null;
+        }
+
+        synchronized Decision onLease(long now, long granted, long remaining, long retryAfterMillis,
+                                      RateLimitProperties.Limit limit, long leaseTtlMillis) {
+            globalRemaining = remaining;
+            if (granted == 0) {
+                tokens = 0;
+                blockedUntil = now + retryAfterMillis;
+                return denied(limit, retryAfterMillis);
+            }
+            // Concurrent leases on this node stack; whatever expires unspent is simply lost
+            tokens = (now < leaseExpiresAt ? tokens : 0) + granted - 1;
+            leaseExpiresAt = now + leaseTtlMillis;
+            return allowed(limit);
+        }
+
+        private Decision allowed(RateLimitProperties.Limit limit) {
+            long remaining = Math.min(limit.getCapacity(), globalRemaining + tokens);
+            long resetSeconds = (long) Math.ceil((limit.getCapacity() - remaining) / limit.tokensPerMilli() / 1000);
+            return new Decision(true, limit.getCapacity(), remaining, resetSeconds, 0);
+        }
 
-    public <T> Mono<T> executeWithRateLimiter(Mono<T> mono) {
-        return mono.transformDeferred(RateLimiterOperator.of(shortenerRateLimiter));
+        private static Decision denied(RateLimitProperties.Limit limit, long retryAfterMillis) {
+            long retryAfterSeconds = Math.max(1, (long) Math.ceil(retryAfterMillis / 1000.0));
+            return new Decision(false, limit.getCapacity(), 0, retryAfterSeconds, retryAfterSeconds);
+        }
     }
 }
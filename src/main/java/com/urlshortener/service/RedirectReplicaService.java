@@ -0,0 +1,347 @@
+package com.urlshortener.service;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.store.UrlStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redirect replica: an in-memory copy of every live mapping, bootstrapped with one scan
+ * of url_mapping and kept current by tailing its change stream, so redirects never leave
+ * the process. The scan is pinned to a cluster time and the stream starts from it, so
+ * nothing written during the scan is missed. On shutdown the copy is written to disk with
+ * the stream's resume token and a restart only catches up; the restored copy answers
+ * redirects only once the stream has replayed up to the cluster time taken at restart, so
+ * links changed while the node was down are never served stale. Needs a replica set.
+ * <p>
+ * Mappings live in a {@link CompactUrlTable}, so a few million fit in a few hundred MB.
+ */
+@Slf4j
+@Service
+public class RedirectReplicaService {
+
+    private static final int SNAPSHOT_MAGIC = 0x52504c31; // "RPL1"
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private static final int SLAB_BYTES = 4 << 20;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final UrlStore urlStore;
+    private final boolean enabled;
+    private final Path snapshotFile;
+    private final CompactUrlTable table;
+    private final Timer lagTimer;
+    private final Scheduler blockingScheduler;
+
+    private volatile boolean ready;
+    private volatile BsonValue resumeToken;
+    private volatile BsonTimestamp startAt;
+    // Set while a restored snapshot catches up: the replica is ready once the stream reaches it
+    private volatile BsonTimestamp catchUpTo;
+    private volatile long lastLagMillis;
+    private Disposable subscription;
+
+    public RedirectReplicaService(ReactiveMongoTemplate mongoTemplate,
+                                  UrlStore urlStore,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${shortener.replica.enabled}") boolean enabled,
+                                  @Value("${shortener.replica.snapshot-file}") String snapshotFile,
+                                  @Value("${shortener.replica.expected-entries}") int expectedEntries,
+                                  @Qualifier("blockingScheduler") Scheduler blockingScheduler) {
+        this.mongoTemplate = mongoTemplate;
+        this.blockingScheduler = blockingScheduler;
+        this.urlStore = urlStore;
+        this.enabled = enabled;
+        this.snapshotFile = Path.of(snapshotFile);
+        // Key tables are sized up front; keep them tiny when the replica is off
+        this.table = new CompactUrlTable(enabled ? expectedEntries : 0, SLAB_BYTES);
+        this.lagTimer = Timer.builder("replica.lag")
+                .description("Delay between a url_mapping write and the replica applying it")
+                .register(meterRegistry);
+        Gauge.builder("replica.lag.last", this, replica -> replica.lastLagMillis / 1000.0)
+                .description("Replication lag of the most recent change, in seconds")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("replica.entries", table, CompactUrlTable::size)
+                .description("Mappings held by the redirect replica")
+                .register(meterRegistry);
+        Gauge.builder("replica.memory", table, CompactUrlTable::memoryBytes)
+                .description("Heap and off-heap bytes held by the redirect replica")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("replica.ready", this, replica -> replica.ready ? 1 : 0)
+                .description("1 once the replica answers redirects")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the long URL, or null when the replica is warming up, does not hold the key
+     * (possibly not replicated yet) or holds it expired
+     */
+    public String get(String shortKey) {
+        if (!ready) {
+            return null;
+        }
+        return table.get(shortKey, System.currentTimeMillis());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (urlStore.isLocal()) {
+            log.warn("Redirect replica disabled: the configured store is already local");
+            return;
+        }
+        // The snapshot is only read once: a retry resumes from the last change applied, not from the file
+        subscription = Mono.fromRunnable(this::loadSnapshot)
+                .subscribeOn(blockingScheduler)
+                .thenMany(Flux.defer(this::follow)
+                        .doOnNext(this::apply)
+                        .doOnError(error -> log.warn("Redirect replica stream failed, restarting: {}", error.getMessage()))
+                        .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, Duration.ofSeconds(5))))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (subscription == null) {
+            return;
+        }
+        subscription.dispose();
+        // Also written while catching up: the copy matches its resume position either way
+        if (resumeToken != null || startAt != null) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Resumes from the last applied change when there is one, otherwise bootstraps.
+     */
+    private Flux<ChangeStreamEvent<UrlMapping>> follow() {
+        if (resumeToken != null || startAt != null) {
+            ChangeStreamOptions.ChangeStreamOptionsBuilder options = resumeToken != null
+                    ? ChangeStreamOptions.builder().resumeAfter(resumeToken)
+                    : ChangeStreamOptions.builder().resumeAt(startAt);
+            if (ready || catchUpTo != null) {
+                return changes(options);
+            }
+            // Restored from a snapshot: redirects keep going to the store until the stream reaches now,
+            // which on a quiet collection is its next streamed write
+            return clusterTime()
+                    .flatMapMany(time -> {
+                        catchUpTo = time;
+                        return changes(options);
+                    });
+        }
+        return clusterTime()
+                .flatMapMany(time -> bootstrap()
+                        .thenMany(Flux.defer(() -> {
+                            startAt = time;
+                            ready = true;
+                            log.info("Redirect replica ready with {} mappings", table.size());
+                            return changes(ChangeStreamOptions.builder().resumeAt(time));
+                        })));
+    }
+
+    private Flux<ChangeStreamEvent<UrlMapping>> changes(ChangeStreamOptions.ChangeStreamOptionsBuilder options) {
+        // Click flushes $inc clickCount on every hot mapping; only changes a redirect can see are streamed
+        Document relevant = new Document("$match", new Document("$or", List.of(
+                new Document("operationType", new Document("$in", List.of("insert", "replace", "delete", "drop", "invalidate"))),
+                new Document("updateDescription.updatedFields.longUrl", new Document("$exists", true)),
+                new Document("updateDescription.updatedFields.expiresAt", new Document("$exists", true)))));
+        ChangeStreamOptions streamOptions = options.filter(relevant)
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+                .build();
+        return mongoTemplate.changeStream(null, mongoTemplate.getCollectionName(UrlMapping.class), streamOptions, UrlMapping.class)
+                // A change stream only ends on drop / invalidate; restart through the retry loop
+                .concatWith(Flux.error(new IllegalStateException("url_mapping change stream closed")))
+                .onErrorResume(this::isHistoryLost, e -> {
+                    // The oplog no longer reaches back to our position; only a fresh scan can catch up
+                    log.warn("Redirect replica fell off the oplog, rebuilding");
+                    ready = false;
+                    resumeToken = null;
+                    startAt = null;
+                    catchUpTo = null;
+                    return Flux.error(e);
+                });
+    }
+
+    private Mono<BsonTimestamp> clusterTime() {
+        return mongoTemplate.executeCommand(new Document("hello", 1))
+                .flatMap(reply -> reply.get("operationTime") instanceof BsonTimestamp time
+                        ? Mono.just(time)
+                        : Mono.error(new IllegalStateException("url_mapping change streams need a replica set")));
+    }
+
+    private Mono<Void> bootstrap() {
+        ready = false;
+        table.clear();
+        Query live = Query.query(Criteria.where("expiresAt").gt(new Date()));
+        live.fields().include("shortKey", "longUrl", "expiresAt");
+        return mongoTemplate.find(live, UrlMapping.class)
+                .doOnNext(this::put)
+                .then();
+    }
+
+    private void apply(ChangeStreamEvent<UrlMapping> event) {
+        OperationType type = event.getOperationType();
+        if (type == OperationType.DELETE) {
+            String id = idOf(event.getRaw() != null ? event.getRaw().getDocumentKey() : null);
+            if (id != null) {
+                table.removeById(id);
+            }
+        } else if (type == OperationType.DROP || type == OperationType.INVALIDATE) {
+            // The stream ends after these; rebuild from scratch on the retry
+            resumeToken = null;
+            startAt = null;
+            catchUpTo = null;
+        } else if (event.getBody() != null) {
+            put(event.getBody());
+        }
+        if (event.getResumeToken() != null && type != OperationType.INVALIDATE) {
+            resumeToken = event.getResumeToken();
+        }
+        BsonTimestamp target = catchUpTo;
+        if (target != null && event.getBsonTimestamp() != null && event.getBsonTimestamp().compareTo(target) >= 0) {
+            catchUpTo = null;
+            ready = true;
+            log.info("Redirect replica caught up with {} mappings", table.size());
+        }
+        Instant changedAt = event.getTimestamp();
+        if (changedAt != null) {
+            lastLagMillis = Math.max(0, System.currentTimeMillis() - changedAt.toEpochMilli());
+            lagTimer.record(lastLagMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void put(UrlMapping mapping) {
+        if (mapping.getId() == null || mapping.getShortKey() == null || mapping.getLongUrl() == null) {
+            return;
+        }
+        long expiresAt = mapping.getExpiresAt() != null ? mapping.getExpiresAt().toEpochMilli() : Long.MAX_VALUE;
+        table.put(mapping.getId(), mapping.getShortKey(), mapping.getLongUrl(), expiresAt);
+    }
+
+    private boolean isHistoryLost(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof MongoException mongoError && mongoError.getCode() == CHANGE_STREAM_HISTORY_LOST) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String idOf(BsonDocument documentKey) {
+        BsonValue id = documentKey != null ? documentKey.get("_id") : null;
+        if (id == null) {
+            return null;
+        }
+        return id instanceof BsonObjectId objectId ? objectId.getValue().toHexString() : id.asString().getValue();
+    }
+
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile), 1 << 20))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                log.warn("Ignoring redirect replica snapshot [{}]: unknown format", snapshotFile);
+                return;
+            }
+            String token = in.readUTF();
+            long time = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                String shortKey = in.readUTF();
+                String longUrl = in.readUTF();
+                long expiresAt = in.readLong();
+                if (expiresAt > now) {
+                    table.put(id, shortKey, longUrl, expiresAt);
+                }
+            }
+            resumeToken = token.isEmpty() ? null : BsonDocument.parse(token);
+            startAt = time != 0 ? new BsonTimestamp(time) : null;
+            log.info("Redirect replica restored {} mappings from [{}], serving them once caught up", table.size(), snapshotFile);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable redirect replica snapshot [{}]: {}", snapshotFile, e.getMessage());
+            table.clear();
+        }
+    }
+
+    private void writeSnapshot() {
+        BsonValue token = resumeToken;
+        BsonTimestamp time = startAt;
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 20))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeUTF(token instanceof BsonDocument document ? document.toJson() : "");
+                out.writeLong(time != null ? time.getValue() : 0);
+                // The stream is stopped, so the count cannot change while the entries are written
+                out.writeInt(table.size());
+                IOException[] failure = new IOException[1];
+                table.forEach((id, shortKey, longUrl, expiresAt) -> {
+                    try {
+                        out.writeUTF(id);
+                        out.writeUTF(shortKey);
+                        out.writeUTF(longUrl);
+                        out.writeLong(expiresAt);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Redirect replica snapshot of {} mappings written to [{}]", table.size(), snapshotFile);
+        } catch (IOException e) {
+            log.warn("Could not write redirect replica snapshot [{}]: {}", snapshotFile, e.getMessage());
+        }
+    }
+}
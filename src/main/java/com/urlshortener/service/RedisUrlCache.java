@@ -0,0 +1,265 @@
+package com.urlshortener.service;
+
+import com.urlshortener.config.RedisScripts;
+import com.urlshortener.model.UrlMapping;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveStringCommands.SetCommand;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Redis side of the URL cache. Entries live under a namespace prefix for at most
+ * cache-ttl-seconds, so Redis holds the hot set rather than every live link; a read that
+ * finds an entry past half its TTL rewrites it with a fresh TTL (refresh-on-read), so hot
+ * keys never fall out. Values carry the mapping's own expiry and the time they were cached
+ * ("expiresAt|cachedAt|longUrl"): the expiry bounds what a refresh can extend and lets the
+ * L1 cache expire entries exactly, and both give an entry's remaining TTL without asking
+ * Redis, so a hit is a single GET / HGET.
+ * <p>
+ * Two layouts: one string key per link, or (hash) links spread over a fixed number of
+ * small hashes, which Redis stores as compact listpacks as long as a bucket stays under
+ * hash-max-listpack-entries and its values under hash-max-listpack-value. A bucket's TTL
+ * is refreshed by any of its links, so cold links in a warm bucket linger until written
+ * over or read past their own expiry.
+ */
+@Slf4j
+@Service
+public class RedisUrlCache {
+
+    public enum Layout {
+        STRINGS, HASH
+    }
+
+    /**
+     * @param longUrl   {@link UrlMappingService#NOT_FOUND} for a cached miss
+     * @param expiresAt when the mapping expires, null for never
+     * @param ttl       remaining TTL of the cache entry, zero when unknown (written before
+     *                  values carried their write time)
+     */
+    public record Hit(String longUrl, Instant expiresAt, Duration ttl) {
+
+        public boolean isMissing() {
+            return longUrl.isEmpty();
+        }
+    }
+
+    private static final RedisScript<Long> HASH_PUT =
+            RedisScripts.load("url_cache_hash_put.lua", Long.class);
+    private static final RedisScript<Long> REFRESH =
+            RedisScripts.load("url_cache_refresh.lua", Long.class);
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final String keyPrefix;
+    private final Layout layout;
+    private final int hashBuckets;
+    private final Duration cacheTtl;
+    private final boolean refreshOnRead;
+
+    public RedisUrlCache(@Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate,
+                         @Value("${shortener.redis.key-prefix}") String keyPrefix,
+                         @Value("${shortener.redis.cache-layout}") Layout layout,
+                         @Value("${shortener.redis.hash-buckets}") int hashBuckets,
+                         @Value("${shortener.redis.cache-ttl-seconds}") long cacheTtlSeconds,
+                         @Value("${shortener.redis.refresh-on-read}") boolean refreshOnRead) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.layout = layout;
+        this.hashBuckets = hashBuckets;
+        this.cacheTtl = Duration.ofSeconds(cacheTtlSeconds);
+        this.refreshOnRead = refreshOnRead;
+    }
+
+    /**
+     * @return the cached entry; empty when absent or held past the mapping's expiry
+     */
+    public Mono<Hit> get(String shortKey) {
+        String key = key(shortKey);
+        Mono<String> value = layout == Layout.HASH
+                ? redisTemplate.<String, String>opsForHash().get(key, shortKey)
+                : redisTemplate.opsForValue().get(key);
+        return value
+                .flatMap(cached -> {
+                    Instant now = Instant.now();
+                    Hit hit = decode(cached, now);
+                    if (hit == null) {
+                        return Mono.empty();
+                    }
+                    if (hit.expiresAt() != null && !hit.expiresAt().isAfter(now)) {
+                        // Only a bucket entry can outlive its expiry; a string key dies with it
+                        if (layout == Layout.HASH) {
+                            background(redisTemplate.opsForHash().remove(key, shortKey), "HDEL", shortKey);
+                        }
+                        return Mono.empty();
+                    }
+                    refreshIfHalfSpent(key, shortKey, cached, hit);
+                    return Mono.just(hit);
+                });
+    }
+
+    /**
+     * Caches a mapping for the cache TTL, or until it expires if that is sooner.
+     */
+    public Mono<Void> put(String shortKey, String longUrl, Instant expiresAt) {
+        Duration ttl = ttl(expiresAt);
+        if (ttl == null) {
+            return Mono.empty();
+        }
+        return write(shortKey, encode(longUrl, expiresAt, Instant.now()), ttl, false).then();
+    }
+
+    /**
+     * Remembers that a key does not exist, without replacing a mapping cached meanwhile.
+     *
+     * @return true when the entry was written
+     */
+    public Mono<Boolean> putMissing(String shortKey, Duration ttl) {
+        Instant now = Instant.now();
+        return write(shortKey, encode(UrlMappingService.NOT_FOUND, now.plus(ttl), now), ttl, true);
+    }
+
+    /**
+     * Caches a chunk of new mappings as one pipelined batch.
+     */
+    public Mono<Void> putAll(List<UrlMapping> mappings) {
+        if (layout == Layout.HASH) {
+            // Scripts share the connection, so flatMap pipelines them
+            return Flux.fromIterable(mappings)
+                    .flatMap(mapping -> put(mapping.getShortKey(), mapping.getLongUrl(), mapping.getExpiresAt()))
+                    .then();
+        }
+        Instant now = Instant.now();
+        return redisTemplate.execute(connection -> connection.stringCommands().set(
+                        Flux.fromIterable(mappings)
+                                .filter(mapping -> ttl(mapping.getExpiresAt()) != null)
+                                .map(mapping -> SetCommand.set(bytes(key(mapping.getShortKey())))
+                                        .value(bytes(encode(mapping.getLongUrl(), mapping.getExpiresAt(), now)))
+                                        .expiring(Expiration.from(ttl(mapping.getExpiresAt()))))))
+                .then();
+    }
+
+    public Mono<Void> delete(Collection<String> shortKeys) {
+        if (shortKeys.isEmpty()) {
+            return Mono.empty();
+        }
+        if (layout == Layout.HASH) {
+            return Flux.fromIterable(shortKeys.stream().collect(Collectors.groupingBy(this::key)).entrySet())
+                    .flatMap(bucket -> redisTemplate.opsForHash().remove(bucket.getKey(), bucket.getValue().toArray()))
+                    .then();
+        }
+        return redisTemplate.delete(shortKeys.stream().map(this::key).toArray(String[]::new)).then();
+    }
+
+    private Mono<Boolean> write(String shortKey, String value, Duration ttl, boolean onlyIfAbsent) {
+        String key = key(shortKey);
+        if (layout == Layout.HASH) {
+            // The bucket outlives any one entry; expiry is checked against the value on read
+            return redisTemplate.execute(HASH_PUT, List.of(key),
+                            List.of(shortKey, value, Long.toString(cacheTtl.toSeconds()), onlyIfAbsent ? "1" : "0"))
+                    .next()
+                    .map(written -> written == 1L);
+        }
+        return onlyIfAbsent
+                ? redisTemplate.opsForValue().setIfAbsent(key, value, ttl)
+                : redisTemplate.opsForValue().set(key, value, ttl);
+    }
+
+    /**
+     * Rewrites the entry rather than only extending the key, so its value records the new
+     * write time; in the hash layout this also keeps the bucket alive.
+     */
+    private void refreshIfHalfSpent(String key, String shortKey, String value, Hit hit) {
+        if (!refreshOnRead || hit.isMissing() || hit.ttl().isZero() || hit.ttl().isNegative()
+                || hit.ttl().compareTo(cacheTtl.dividedBy(2)) > 0) {
+            return;
+        }
+        Duration extended = ttl(hit.expiresAt());
+        if (extended != null && extended.compareTo(hit.ttl()) > 0) {
+            Duration keyTtl = layout == Layout.HASH ? cacheTtl : extended;
+            background(redisTemplate.execute(REFRESH, List.of(key), List.of(layout == Layout.HASH ? shortKey : "", value,
+                            encode(hit.longUrl(), hit.expiresAt(), Instant.now()), Long.toString(keyTtl.toMillis()))).next(),
+                    "refresh", shortKey);
+        }
+    }
+
+    private void background(Mono<?> command, String name, String shortKey) {
+        command.subscribe(ignored -> { },
+                e -> log.error("Redis {} failed for cached key [{}]: {}", name, shortKey, e.getMessage()));
+    }
+
+    /**
+     * @return the TTL for an entry of a mapping expiring at {@code expiresAt}, or null when it already has
+     */
+    private Duration ttl(Instant expiresAt) {
+        if (expiresAt == null) {
+            return cacheTtl;
+        }
+        Duration remaining = Duration.between(Instant.now(), expiresAt);
+        if (remaining.isZero() || remaining.isNegative()) {
+            return null;
+        }
+        return remaining.compareTo(cacheTtl) < 0 ? remaining : cacheTtl;
+    }
+
+    String key(String shortKey) {
+        if (layout == Layout.HASH) {
+            // String.hashCode is specified, so every node picks the same bucket
+            return keyPrefix + "h:" + Math.floorMod(shortKey.hashCode(), hashBuckets);
+        }
+        return keyPrefix + shortKey;
+    }
+
+    static String encode(String longUrl, Instant expiresAt, Instant cachedAt) {
+        return (expiresAt != null ? expiresAt.getEpochSecond() : 0) + "|" + cachedAt.getEpochSecond() + "|" + longUrl;
+    }
+
+    /**
+     * Also reads values written before they carried their write time ("expiresAt|longUrl");
+     * a long URL always starts with its scheme, so it never parses as a number.
+     */
+    private Hit decode(String value, Instant now) {
+        int separator = value.indexOf('|');
+        if (separator < 0) {
+            return null;
+        }
+        long expiresAt;
+        try {
+            expiresAt = Long.parseLong(value, 0, separator, 10);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        Instant expiry = expiresAt != 0 ? Instant.ofEpochSecond(expiresAt) : null;
+        int second = value.indexOf('|', separator + 1);
+        long cachedAt;
+        try {
+            cachedAt = second > 0 ? Long.parseLong(value, separator + 1, second, 10) : -1;
+        } catch (NumberFormatException e) {
+            cachedAt = -1;
+        }
+        if (cachedAt < 0) {
+            return new Hit(value.substring(separator + 1), expiry, Duration.ZERO);
+        }
+        Instant cachedUntil = Instant.ofEpochSecond(cachedAt).plus(cacheTtl);
+        if (expiry != null && expiry.isBefore(cachedUntil)) {
+            cachedUntil = expiry;
+        }
+        return new Hit(value.substring(second + 1), expiry, Duration.between(now, cachedUntil));
+    }
+
+    private static ByteBuffer bytes(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,264 @@
+package com.urlshortener.service;
+
+import com.urlshortener.config.RedisScripts;
+import com.urlshortener.model.UrlMapping;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.BitFieldSubCommands.BitFieldGet;
+import org.springframework.data.redis.connection.BitFieldSubCommands.BitFieldSubCommand;
+import org.springframework.data.redis.connection.BitFieldSubCommands.BitFieldType;
+import org.springframework.data.redis.connection.BitFieldSubCommands.Offset;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Counting Bloom filter over every stored short key, held in Redis as 4-bit BITFIELD
+ * counters so all nodes share one copy. Creates increment and deletes decrement, so
+ * removed keys stop matching. A "definitely absent" answer lets the redirect path skip
+ * Mongo entirely.
+ * <p>
+ * The last counter is a sentinel written once the filter has been built from the
+ * collection. Until it is set (first start, or Redis lost the key) every lookup falls
+ * through to Mongo, so the filter can only ever produce false positives. A failed add
+ * would break that, so it marks the filter stale: this node stops trusting it at once,
+ * and the next check drops the Redis copy so every node falls through until it is rebuilt.
+ * Deletes only decrement a filter whose sentinel is set, checked inside the update script,
+ * so a filter another node is rebuilding is never decremented for a key its build has not
+ * counted. Saturated counters never come back down (see scripts/bloom_update.lua).
+ */
+@Slf4j
+@Service
+public class ShortKeyBloomFilter {
+
+    private static final BitFieldType COUNTER = BitFieldType.unsigned(4);
+    private static final int BUILD_CHUNK = 1000;
+    private static final RedisScript<Long> UPDATE =
+            RedisScripts.load("bloom_update.lua", Long.class);
+    // Mark the filter built only if this build still holds the lock, i.e. nobody dropped the filter meanwhile
+    private static final RedisScript<Long> MARK_BUILT = RedisScript.of("""
+            if redis.call('get', KEYS[2]) ~= ARGV[1] then return 0 end
+            redis.call('bitfield', KEYS[1], 'set', 'u4', '#' .. ARGV[2], 15)
+            return 1""", Long.class);
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ShortenerMetrics metrics;
+    private final boolean enabled;
+    private final long counters;
+    private final int hashes;
+    private final String filterKey;
+    private final String lockKey;
+    private final String owner = UUID.randomUUID().toString();
+
+    @Value("${shortener.bloom.build-lock-seconds}")
+    private long buildLockSeconds;
+
+    // Saves the round trip for removes while this node knows the filter is not built; the script decides
+    private volatile boolean ready;
+    // An add failed: the filter may be missing a stored key until it is rebuilt
+    private volatile boolean stale;
+
+    public ShortKeyBloomFilter(@Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate,
+                               ReactiveMongoTemplate mongoTemplate,
+                               ShortenerMetrics metrics,
+                               @Value("${shortener.bloom.enabled}") boolean enabled,
+                               @Value("${shortener.bloom.expected-keys}") long expectedKeys,
+                               @Value("${shortener.bloom.false-positive-rate}") double falsePositiveRate) {
+        this.redisTemplate = redisTemplate;
+        this.mongoTemplate = mongoTemplate;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.counters = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.hashes = Math.max(1, (int) Math.round((double) counters / expectedKeys * Math.log(2)));
+        // Sizing is part of the key, so a config change starts a fresh filter instead of misreading the old one
+        this.filterKey = "bloom:shortkeys:" + counters + ":" + hashes;
+        this.lockKey = filterKey + ":build-lock";
+    }
+
+    /**
+     * @return false only when the key is definitely not stored
+     */
+    public Mono<Boolean> mightContain(String shortKey) {
+        if (!enabled || stale) {
+            return Mono.just(true);
+        }
+        List<BitFieldSubCommand> commands = new ArrayList<>(hashes + 1);
+        for (long position : positions(shortKey)) {
+            commands.add(BitFieldGet.create(COUNTER, offset(position)));
+        }
+        commands.add(BitFieldGet.create(COUNTER, offset(counters)));
+
+        return redisTemplate.opsForValue().bitField(filterKey, BitFieldSubCommands.create(commands.toArray(BitFieldSubCommand[]::new)))
+                .map(values -> {
+                    if (values.get(values.size() - 1) == 0) {
+                        return true;
+                    }
+                    return values.subList(0, hashes).stream().allMatch(count -> count != null && count > 0);
+                })
+                .onErrorResume(e -> {
+                    metrics.redisFallback(ShortenerMetrics.RedisOperation.BLOOM);
+                    log.error("Bloom filter lookup failed for key [{}]: {}", shortKey, e.getMessage());
+                    return Mono.just(true);
+                });
+    }
+
+    public Mono<Void> add(String shortKey) {
+        return addAll(List.of(shortKey));
+    }
+
+    /**
+     * Called before the insert, so a lookup racing the write never sees a false negative.
+     */
+    public Mono<Void> addAll(Collection<String> shortKeys) {
+        return update(shortKeys, 1)
+                .onErrorResume(e -> {
+                    metrics.redisFallback(ShortenerMetrics.RedisOperation.BLOOM);
+                    log.error("Bloom filter add failed for {} keys, dropping the filter: {}", shortKeys.size(), e.getMessage());
+                    return invalidate();
+                });
+    }
+
+    public Mono<Void> removeAll(Collection<String> shortKeys) {
+        if (!ready) {
+            return Mono.empty();
+        }
+        return update(shortKeys, -1)
+                .onErrorResume(e -> {
+                    metrics.redisFallback(ShortenerMetrics.RedisOperation.BLOOM);
+                    log.error("Bloom filter remove failed for {} keys: {}", shortKeys.size(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    @Scheduled(fixedDelayString = "${shortener.bloom.check-interval-ms}")
+    public Mono<Void> ensureBuilt() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        if (stale) {
+            return invalidate();
+        }
+        return redisTemplate.opsForValue()
+                .bitField(filterKey, BitFieldSubCommands.create().get(COUNTER).valueAt(offset(counters)))
+                .flatMap(values -> {
+                    ready = values.get(0) > 0;
+                    return ready ? Mono.<Void>empty() : build();
+                })
+                .onErrorResume(e -> {
+                    ready = false;
+                    log.warn("Bloom filter check failed: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Deletes the shared filter, so every node falls through to Mongo until it is rebuilt.
+     * While Redis cannot be reached this node keeps it stale and the next check retries.
+     */
+    private Mono<Void> invalidate() {
+        stale = true;
+        ready = false;
+        return redisTemplate.delete(filterKey, lockKey)
+                .doOnSuccess(ignored -> {
+                    stale = false;
+                    log.info("Short key Bloom filter [{}] dropped, it is rebuilt on the next check", filterKey);
+                })
+                .onErrorResume(e -> {
+                    log.error("Could not drop Bloom filter [{}], retrying on the next check: {}", filterKey, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<Void> build() {
+        return redisTemplate.opsForValue()
+                .setIfAbsent(lockKey, owner, Duration.ofSeconds(buildLockSeconds))
+                .flatMap(acquired -> {
+                    if (!acquired) {
+                        return Mono.empty();
+                    }
+                    log.info("Building short key Bloom filter [{}] from url_mapping", filterKey);
+                    Query query = new Query();
+                    query.fields().include("shortKey");
+
+                    // Keys created meanwhile are counted twice at worst, which only adds false positives
+                    return mongoTemplate.find(query, UrlMapping.class)
+                            .map(mapping -> mapping.getShortKey().toLowerCase())
+                            .buffer(BUILD_CHUNK)
+                            .concatMap(chunk -> update(chunk, 1).thenReturn((long) chunk.size()))
+                            .reduce(0L, Long::sum)
+                            .flatMap(total -> redisTemplate.execute(MARK_BUILT, List.of(filterKey, lockKey),
+                                            List.of(owner, Long.toString(counters)))
+                                    .next()
+                                    .doOnNext(marked -> {
+                                        ready = marked == 1L;
+                                        if (ready) {
+                                            log.info("Short key Bloom filter built with {} keys", total);
+                                        } else {
+                                            log.warn("Short key Bloom filter was dropped during its build, rebuilding on the next check");
+                                        }
+                                    }))
+                            .then()
+                            .doFinally(signal -> redisTemplate.execute(RedisScripts.RELEASE_LOCK, List.of(lockKey), List.of(owner))
+                                    .onErrorResume(e -> Mono.empty()).subscribe());
+                });
+    }
+
+    private Mono<Void> update(Collection<String> shortKeys, long delta) {
+        if (!enabled || shortKeys.isEmpty()) {
+            return Mono.empty();
+        }
+        List<String> args = new ArrayList<>(shortKeys.size() * hashes + 2);
+        args.add(Long.toString(delta));
+        args.add(Long.toString(counters));
+        for (String shortKey : shortKeys) {
+            for (long position : positions(shortKey)) {
+                args.add(Long.toString(position));
+            }
+        }
+        return redisTemplate.execute(UPDATE, List.of(filterKey), args).then();
+    }
+
+    /**
+     * Double hashing over a 64-bit FNV-1a hash, so every node derives the same positions.
+     */
+    private long[] positions(String shortKey) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : shortKey.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        long h1 = mix(hash);
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L) | 1;
+
+        long[] positions = new long[hashes];
+        for (int i = 0; i < hashes; i++) {
+            positions[i] = Math.floorMod(h1 + i * h2, counters);
+        }
+        return positions;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static Offset offset(long counter) {
+        return Offset.offset(counter).multipliedByTypeLength();
+    }
+}
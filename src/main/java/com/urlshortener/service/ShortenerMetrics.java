@@ -0,0 +1,180 @@
+package com.urlshortener.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the redirect and shorten paths. Every tag value comes from a fixed enum
+ * or route class, never from a short key or URL, so series count stays constant under
+ * any traffic. Histogram buckets and SLOs are set in application.properties.
+ */
+@Service
+public class ShortenerMetrics {
+
+    public enum LookupStage { REDIS_GET, BLOOM, STORE_FIND, REDIS_SET }
+
+    public enum ShortenStage { ALIAS_CHECK, DEDUP_LOOKUP, KEYGEN, STORE_INSERT, REDIS_SET }
+
+    /**
+     * Where a getLongUrl call was answered; replica + l1 + redis over the total is the cache hit ratio.
+     */
+    public enum LookupSource { REPLICA, L1, REDIS, NEGATIVE_CACHE, STORE }
+
+    public enum StoreOutcome { FOUND, EXPIRED, ABSENT, BLOOM_REJECTED }
+
+    /**
+     * Redis calls whose failure is swallowed by an onErrorResume fallback.
+     */
+    public enum RedisOperation { GET, SET, NEGATIVE_SET, BULK_SET, BLOOM, PUBLISH, RATE_LIMIT, IDEMPOTENCY }
+
+    private final MeterRegistry registry;
+    private final Map<LookupStage, Timer> lookupStages = new EnumMap<>(LookupStage.class);
+    private final Map<ShortenStage, Timer> shortenStages = new EnumMap<>(ShortenStage.class);
+    private final Map<LookupSource, Counter> lookupSources = new EnumMap<>(LookupSource.class);
+    private final Map<StoreOutcome, Counter> storeOutcomes = new EnumMap<>(StoreOutcome.class);
+    private final Map<RedisOperation, Counter> redisFallbacks = new EnumMap<>(RedisOperation.class);
+    private final Map<String, Counter> rateLimitDecisions = new ConcurrentHashMap<>();
+    private final Map<String, Counter> bulkRows = new ConcurrentHashMap<>();
+    private final Counter leaderLoads;
+    private final Counter coalescedLoads;
+    private final Counter earlyRefreshes;
+    private final Counter keyCollisions;
+    private final Counter deduplicated;
+    private final Counter idempotentReplays;
+
+    public ShortenerMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (LookupStage stage : LookupStage.values()) {
+            lookupStages.put(stage, Timer.builder("url.lookup.stage")
+                    .description("Latency of each I/O stage behind a redirect lookup")
+                    .tag("stage", tag(stage))
+                    .register(registry));
+        }
+        for (ShortenStage stage : ShortenStage.values()) {
+            shortenStages.put(stage, Timer.builder("url.shorten.stage")
+                    .description("Latency of each stage of creating a short URL")
+                    .tag("stage", tag(stage))
+                    .register(registry));
+        }
+        for (LookupSource source : LookupSource.values()) {
+            lookupSources.put(source, Counter.builder("url.lookup.requests")
+                    .description("Redirect lookups by the layer that answered them")
+                    .tag("source", tag(source))
+                    .register(registry));
+        }
+        for (StoreOutcome outcome : StoreOutcome.values()) {
+            storeOutcomes.put(outcome, Counter.builder("url.lookup.store")
+                    .description("Store loads after a cache miss, by outcome")
+                    .tag("outcome", tag(outcome))
+                    .register(registry));
+        }
+        for (RedisOperation operation : RedisOperation.values()) {
+            redisFallbacks.put(operation, Counter.builder("redis.fallbacks")
+                    .description("Redis failures absorbed by a fallback")
+                    .tag("operation", tag(operation))
+                    .register(registry));
+        }
+        this.leaderLoads = Counter.builder("url.lookup.loads")
+                .description("Cache misses loaded from the store")
+                .tag("role", "leader")
+                .register(registry);
+        this.coalescedLoads = Counter.builder("url.lookup.loads")
+                .description("Cache misses loaded from the store")
+                .tag("role", "coalesced")
+                .register(registry);
+        this.earlyRefreshes = Counter.builder("url.lookup.early-refreshes")
+                .description("Redis entries reloaded before their TTL ran out")
+                .register(registry);
+        this.keyCollisions = Counter.builder("url.shorten.collisions")
+                .description("Generated keys rejected by the unique index and retried")
+                .register(registry);
+        this.deduplicated = Counter.builder("url.shorten.deduplicated")
+                .description("Shorten requests answered with the existing key of the same URL")
+                .register(registry);
+        this.idempotentReplays = Counter.builder("url.shorten.idempotent-replays")
+                .description("Shorten requests answered with the stored response of their Idempotency-Key")
+                .register(registry);
+    }
+
+    public <T> Mono<T> time(LookupStage stage, Mono<T> mono) {
+        return timed(lookupStages.get(stage), mono);
+    }
+
+    public <T> Mono<T> time(ShortenStage stage, Mono<T> mono) {
+        return timed(shortenStages.get(stage), mono);
+    }
+
+    public void lookup(LookupSource source) {
+        lookupSources.get(source).increment();
+    }
+
+    public void storeOutcome(StoreOutcome outcome) {
+        storeOutcomes.get(outcome).increment();
+    }
+
+    public void redisFallback(RedisOperation operation) {
+        redisFallbacks.get(operation).increment();
+    }
+
+    public void load(boolean leader) {
+        (leader ? leaderLoads : coalescedLoads).increment();
+    }
+
+    public void earlyRefresh() {
+        earlyRefreshes.increment();
+    }
+
+    public void keyCollision() {
+        keyCollisions.increment();
+    }
+
+    public void deduplicated(int count) {
+        deduplicated.increment(count);
+    }
+
+    public void idempotentReplay() {
+        idempotentReplays.increment();
+    }
+
+    /**
+     * @param routeClass one of the fixed route classes of the rate-limit filter
+     */
+    public void rateLimitDecision(String routeClass, boolean allowed) {
+        String outcome = allowed ? "allowed" : "rejected";
+        rateLimitDecisions.computeIfAbsent(routeClass + ":" + outcome, key -> Counter.builder("ratelimit.decisions")
+                .description("Rate limit decisions by route class")
+                .tag("route", routeClass)
+                .tag("outcome", outcome)
+                .register(registry)).increment();
+    }
+
+    /**
+     * @param status SUCCESS or FAILED
+     */
+    public void bulkRow(String status) {
+        bulkRows.computeIfAbsent(status, key -> Counter.builder("bulk.rows")
+                .description("Bulk shorten rows by outcome")
+                .tag("status", key.toLowerCase(Locale.ROOT))
+                .register(registry)).increment();
+    }
+
+    private static <T> Mono<T> timed(Timer timer, Mono<T> mono) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.doFinally(signal -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private static String tag(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
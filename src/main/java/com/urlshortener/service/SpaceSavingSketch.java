@@ -0,0 +1,161 @@
+package com.urlshortener.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Space-Saving heavy-hitters sketch: tracks at most {@code capacity} keys. An unseen key
+ * replaces the current minimum and inherits its count, so any key with a true frequency
+ * above total/capacity is guaranteed to be present, with a count that never underestimates.
+ * <p>
+ * Counters sit in a min-heap indexed by key, so finding and replacing the minimum is
+ * O(log capacity). Writers are expected to stripe over several sketches (one per thread
+ * group) and combine them with {@link #merge}, so the monitor here is rarely contended.
+ */
+public class SpaceSavingSketch {
+
+    public record Counter(String key, long count, long error) {
+    }
+
+    private final int capacity;
+    private final Map<String, Integer> positions;
+    private final String[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private int size;
+
+    public SpaceSavingSketch(int capacity) {
+        this.capacity = capacity;
+        this.positions = new HashMap<>(capacity * 2);
+        this.keys = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+    }
+
+    public synchronized void offer(String key) {
+        Integer position = positions.get(key);
+        if (position != null) {
+            counts[position]++;
+            siftDown(position);
+            return;
+        }
+        if (size < capacity) {
+            keys[size] = key;
+            counts[size] = 1;
+            errors[size] = 0;
+            positions.put(key, size);
+            siftUp(size++);
+            return;
+        }
+        // Replace the minimum at the root; its count only grows, so it can only move down
+        positions.remove(keys[0]);
+        long min = counts[0];
+        keys[0] = key;
+        counts[0] = min + 1;
+        errors[0] = min;
+        positions.put(key, 0);
+        siftDown(0);
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return up to {@code limit} counters, highest count first
+     */
+    public synchronized List<Counter> top(int limit) {
+        List<Counter> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new Counter(keys[i], counts[i], errors[i]));
+        }
+        result.sort((a, b) -> Long.compare(b.count(), a.count()));
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /**
+     * Combines sketches that counted disjoint parts of one stream. A key a full sketch does
+     * not hold may have been evicted from it, so that sketch's minimum is added as both count
+     * and error; the merged counts keep the never-underestimate guarantee.
+     *
+     * @return up to {@code limit} merged counters, highest count first
+     */
+    public static List<Counter> merge(List<SpaceSavingSketch> sketches, int limit) {
+        List<Map<String, Counter>> held = new ArrayList<>(sketches.size());
+        long[] floors = new long[sketches.size()];
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < sketches.size(); i++) {
+            SpaceSavingSketch sketch = sketches.get(i);
+            Map<String, Counter> counters = new HashMap<>();
+            synchronized (sketch) {
+                floors[i] = sketch.size == sketch.capacity ? sketch.counts[0] : 0;
+                for (int j = 0; j < sketch.size; j++) {
+                    counters.put(sketch.keys[j], new Counter(sketch.keys[j], sketch.counts[j], sketch.errors[j]));
+                }
+            }
+            held.add(counters);
+            seen.addAll(counters.keySet());
+        }
+        List<Counter> result = new ArrayList<>(seen.size());
+        for (String key : seen) {
+            long count = 0;
+            long error = 0;
+            for (int i = 0; i < held.size(); i++) {
+                Counter counter = held.get(i).get(key);
+                count += counter != null ? counter.count() : floors[i];
+                error += counter != null ? counter.error() : floors[i];
+            }
+            result.add(new Counter(key, count, error));
+        }
+        result.sort((a, b) -> Long.compare(b.count(), a.count()));
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[parent] <= counts[position]) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        String key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        long count = counts[a];
+        counts[a] = counts[b];
+        counts[b] = count;
+        long error = errors[a];
+        errors[a] = errors[b];
+        errors[b] = error;
+        positions.put(keys[a], a);
+        positions.put(keys[b], b);
+    }
+}
@@ -0,0 +1,136 @@
+package com.urlshortener.service;
+
+import com.urlshortener.dto.TrendingUrl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming top-K of recently clicked links. Each node counts redirects in
+ * {@link SpaceSavingSketch}es striped by thread, so event loops do not contend on one
+ * monitor, merges them and periodically adds its heavy hitters to per-minute and
+ * per-hour Redis sorted sets shared by all nodes. A window query unions the buckets it
+ * covers (minute buckets up to an hour, hour buckets beyond) and caches the union briefly.
+ */
+@Slf4j
+@Service
+public class TrendingLinksService {
+
+    public enum Window {
+        FIVE_MINUTES("5m", false, 5),
+        ONE_HOUR("1h", false, 60),
+        ONE_DAY("24h", true, 24);
+
+        private final String label;
+        private final boolean hourly;
+        private final int buckets;
+
+        Window(String label, boolean hourly, int buckets) {
+            this.label = label;
+            this.hourly = hourly;
+            this.buckets = buckets;
+        }
+
+        public static Window fromLabel(String label) {
+            return Arrays.stream(values())
+                    .filter(window -> window.label.equals(label))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unsupported window: " + label + " (use 5m, 1h or 24h)"));
+        }
+    }
+
+    private static final String MINUTE_PREFIX = "trending:m:";
+    private static final String HOUR_PREFIX = "trending:h:";
+    private static final String RESULT_PREFIX = "trending:w:";
+    private static final Duration MINUTE_BUCKET_TTL = Duration.ofMinutes(65);
+    private static final Duration HOUR_BUCKET_TTL = Duration.ofHours(25);
+    private static final Duration RESULT_TTL = Duration.ofSeconds(60);
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final int sketchCapacity;
+    private final int stripes;
+    private final AtomicReference<List<SpaceSavingSketch>> current;
+
+    public TrendingLinksService(@Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate,
+                                @Value("${shortener.trending.sketch-capacity}") int sketchCapacity) {
+        this.redisTemplate = redisTemplate;
+        this.sketchCapacity = sketchCapacity;
+        // Power of two at or above the core count, so each event loop usually has its own stripe
+        this.stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+        this.current = new AtomicReference<>(newStripes());
+    }
+
+    public void record(String shortKey) {
+        current.get().get((int) Thread.currentThread().getId() & (stripes - 1)).offer(shortKey);
+    }
+
+    @Scheduled(fixedDelayString = "${shortener.trending.flush-interval-ms}")
+    public Mono<Void> flush() {
+        List<SpaceSavingSketch> sketches = current.getAndSet(newStripes());
+        if (sketches.stream().allMatch(SpaceSavingSketch::isEmpty)) {
+            return Mono.empty();
+        }
+        long nowMinute = System.currentTimeMillis() / 60_000;
+        String minuteKey = MINUTE_PREFIX + nowMinute;
+        String hourKey = HOUR_PREFIX + nowMinute / 60;
+        ReactiveZSetOperations<String, String> zSet = redisTemplate.opsForZSet();
+
+        // Commands are issued concurrently and pipelined over the shared connection
+        return Flux.fromIterable(SpaceSavingSketch.merge(sketches, sketchCapacity))
+                .flatMap(counter -> Mono.when(
+                        zSet.incrementScore(minuteKey, counter.key(), counter.count()),
+                        zSet.incrementScore(hourKey, counter.key(), counter.count())))
+                .then(Mono.when(
+                        redisTemplate.expire(minuteKey, MINUTE_BUCKET_TTL),
+                        redisTemplate.expire(hourKey, HOUR_BUCKET_TTL)))
+                .onErrorResume(e -> {
+                    log.error("Failed to publish trending counts to Redis: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    public Flux<TrendingUrl> getTrending(Window window, int limit) {
+        long nowMinute = System.currentTimeMillis() / 60_000;
+        List<String> bucketKeys = bucketKeys(window, nowMinute);
+        String resultKey = RESULT_PREFIX + window.label + ":" + nowMinute;
+        ReactiveZSetOperations<String, String> zSet = redisTemplate.opsForZSet();
+
+        return redisTemplate.hasKey(resultKey)
+                .flatMap(cached -> cached
+                        ? Mono.just(resultKey)
+                        : zSet.unionAndStore(bucketKeys.get(0), bucketKeys.subList(1, bucketKeys.size()), resultKey)
+                                .then(redisTemplate.expire(resultKey, RESULT_TTL))
+                                .thenReturn(resultKey))
+                .flatMapMany(key -> zSet.reverseRangeWithScores(key, Range.closed(0L, limit - 1L)))
+                .map(tuple -> new TrendingUrl(tuple.getValue(), tuple.getScore() == null ? 0 : tuple.getScore().longValue()));
+    }
+
+    private List<SpaceSavingSketch> newStripes() {
+        List<SpaceSavingSketch> sketches = new ArrayList<>(stripes);
+        for (int i = 0; i < stripes; i++) {
+            sketches.add(new SpaceSavingSketch(sketchCapacity));
+        }
+        return sketches;
+    }
+
+    private static List<String> bucketKeys(Window window, long nowMinute) {
+        List<String> keys = new ArrayList<>(window.buckets);
+        for (int i = 0; i < window.buckets; i++) {
+            keys.add(window.hourly ? HOUR_PREFIX + (nowMinute / 60 - i) : MINUTE_PREFIX + (nowMinute - i));
+        }
+        return keys;
+    }
+}
@@ -1,56 +1,86 @@
 package com.urlshortener.service;
 
+import com.urlshortener.dto.CursorPage;
+import com.urlshortener.model.PurgeJob;
 import com.urlshortener.model.UrlMapping;
-import com.urlshortener.repository.UrlMappingRepository;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import com.urlshortener.store.UrlStore;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Instant;
+import java.util.List;
 
 @Service
 public class UrlMappingAdminService {
 
-    private final UrlMappingRepository repository;
-    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final UrlStore urlStore;
+    private final RedisUrlCache redisUrlCache;
+    private final CacheInvalidationService cacheInvalidationService;
+    private final UrlStatsService urlStatsService;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ExpiredUrlPurgeService expiredUrlPurgeService;
+    private final ShortKeyBloomFilter shortKeyBloomFilter;
 
-    public UrlMappingAdminService(UrlMappingRepository repository,
-                             @Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate) {
-        this.repository = repository;
-        this.redisTemplate = redisTemplate;
+    public UrlMappingAdminService(UrlStore urlStore,
+                             RedisUrlCache redisUrlCache,
+                             CacheInvalidationService cacheInvalidationService,
+                             UrlStatsService urlStatsService,
+                             ReactiveMongoTemplate mongoTemplate,
+                             ExpiredUrlPurgeService expiredUrlPurgeService,
+                             ShortKeyBloomFilter shortKeyBloomFilter) {
+        this.urlStore = urlStore;
+        this.redisUrlCache = redisUrlCache;
+        this.cacheInvalidationService = cacheInvalidationService;
+        this.urlStatsService = urlStatsService;
+        this.mongoTemplate = mongoTemplate;
+        this.expiredUrlPurgeService = expiredUrlPurgeService;
+        this.shortKeyBloomFilter = shortKeyBloomFilter;
     }
-    public Flux<UrlMapping> getAllUrls(int page, int size) {
-        int skip = page * size;
-        return repository.findAll()
-                .skip(skip)
-                .take(size);
+    private static final KeysetPager.Listing BY_ID = new KeysetPager.Listing(
+            "id", null, Sort.Direction.ASC, mapping -> null, value -> value);
+
+    private static final KeysetPager.Listing NEWEST_FIRST = new KeysetPager.Listing(
+            "createdAt", "createdAt", Sort.Direction.DESC,
+            mapping -> mapping.getCreatedAt() == null ? null : mapping.getCreatedAt().toEpochMilli(),
+            Instant::ofEpochMilli);
+
+    public Mono<CursorPage<UrlMapping>> getAllUrls(String sort, String cursor, int size) {
+        KeysetPager.Listing listing = switch (sort) {
+            case "id" -> BY_ID;
+            case "createdAt" -> NEWEST_FIRST;
+            default -> null;
+        };
+        if (listing == null) {
+            return Mono.error(new IllegalArgumentException("Unsupported sort: " + sort + " (use id or createdAt)"));
+        }
+        return KeysetPager.page(mongoTemplate, listing, cursor, size);
     }
 
     public Mono<Void> deleteByShortKey(String shortKey) {
         String normalizedKey = shortKey.toLowerCase();
 
-        return repository.findByShortKey(normalizedKey)
+        return urlStore.findByShortKey(normalizedKey)
                 .flatMap(url ->
-                        repository.delete(url)
-                                .then(redisTemplate.opsForValue().delete(normalizedKey).then())
+                        urlStore.delete(url)
+                                .doOnSuccess(ignored -> urlStatsService.onDeleted(1))
+                                .then(urlStore.isLocal() ? Mono.<Void>empty() : redisUrlCache.delete(List.of(normalizedKey))
+                                        .then(shortKeyBloomFilter.removeAll(List.of(normalizedKey))))
+                                .then(cacheInvalidationService.invalidate(normalizedKey))
                 )
                 .switchIfEmpty(Mono.error(new RuntimeException("Short key not found: " + normalizedKey)));
     }
 
-    public Mono<Long> deleteExpiredUrls() {
-        Instant now = Instant.now();
+    /**
+     * Runs a batched purge; empty if another node is already purging.
+     */
+    public Mono<PurgeJob> deleteExpiredUrls() {
+        return expiredUrlPurgeService.purge();
+    }
 
-        return repository.findAll()
-                .filter(mapping -> mapping.getExpiresAt() != null && mapping.getExpiresAt().isBefore(now))
-                .flatMap(expired ->
-                        repository.delete(expired)
-                                .then(redisTemplate.opsForValue().delete(expired.getShortKey().toLowerCase()))
-                                .thenReturn(1L)
-                )
-                .reduce(Long::sum)
-                .defaultIfEmpty(0L);
+    public Mono<PurgeJob> getPurgeStatus() {
+        return expiredUrlPurgeService.getStatus();
     }
 
 }
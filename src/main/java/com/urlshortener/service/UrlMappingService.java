@@ -1,44 +1,93 @@
 package com.urlshortener.service;
 
 import com.urlshortener.exception.AliasAlreadyExistsException;
+import com.urlshortener.keygen.ShortKeyGenerator;
 import com.urlshortener.model.UrlMapping;
-import com.urlshortener.repository.UrlMappingRepository;
+import com.urlshortener.service.ShortenerMetrics.LookupSource;
+import com.urlshortener.service.ShortenerMetrics.LookupStage;
+import com.urlshortener.service.ShortenerMetrics.RedisOperation;
+import com.urlshortener.service.ShortenerMetrics.ShortenStage;
+import com.urlshortener.service.ShortenerMetrics.StoreOutcome;
+import com.urlshortener.store.UrlStore;
 import com.urlshortener.validate.InputValidator;
+import com.urlshortener.validate.UrlNormalizer;
 import com.urlshortener.validate.ValidationResult;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Random;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 
 @Slf4j // Add Lombok Logger annotation
 @Service
 public class UrlMappingService {
 
-    private final UrlMappingRepository repository;
-    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final UrlStore urlStore;
+    private final RedisUrlCache redisUrlCache;
+    private final LocalUrlCache localUrlCache;
+    private final ClickCounterService clickCounterService;
+    private final ShortKeyGenerator shortKeyGenerator;
+    private final UrlStatsService urlStatsService;
+    private final ShortKeyBloomFilter shortKeyBloomFilter;
+    private final RedirectReplicaService redirectReplica;
+    private final ConcurrentHashMap<String, Mono<String>> inFlightLoads = new ConcurrentHashMap<>();
+    private final ShortenerMetrics metrics;
 
-    public UrlMappingService(UrlMappingRepository repository,
-                             @Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, String> redisTemplate) {
-        this.repository = repository;
-        this.redisTemplate = redisTemplate;
+    // Typical cost of a store load, the "delta" of early refresh; seeded at 5ms
+    private volatile double loadNanosEwma = 5_000_000;
+
+    public UrlMappingService(UrlStore urlStore,
+                             RedisUrlCache redisUrlCache,
+                             LocalUrlCache localUrlCache,
+                             ClickCounterService clickCounterService,
+                             ShortKeyGenerator shortKeyGenerator,
+                             UrlStatsService urlStatsService,
+                             ShortKeyBloomFilter shortKeyBloomFilter,
+                             RedirectReplicaService redirectReplica,
+                             ShortenerMetrics metrics) {
+        this.urlStore = urlStore;
+        this.redisUrlCache = redisUrlCache;
+        this.localUrlCache = localUrlCache;
+        this.clickCounterService = clickCounterService;
+        this.shortKeyGenerator = shortKeyGenerator;
+        this.urlStatsService = urlStatsService;
+        this.shortKeyBloomFilter = shortKeyBloomFilter;
+        this.redirectReplica = redirectReplica;
+        this.metrics = metrics;
     }
 
     @Value("${shortener.base-url}")
     private String baseUrl;
 
-    @Value("${shortener.redis.cache-ttl-seconds}")
-    private long cacheTtlSeconds;
+    @Value("${shortener.negative-cache.redis-ttl-seconds}")
+    private long negativeTtlSeconds;
+
+    @Value("${shortener.dedup.enabled}")
+    private boolean dedupEnabled;
+
+    @Value("${shortener.dedup.expiry-tolerance-hours}")
+    private long dedupToleranceHours;
+
+    // 0 disables probabilistic early refresh; larger values refresh earlier
+    @Value("${shortener.cache.early-refresh-beta}")
+    private double earlyRefreshBeta;
 
-    private static final String CHAR_POOL = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
-    private static final int SHORT_KEY_LENGTH = 6;
     private static final int MAX_RETRY = 5;
 
+    private static final Pattern SHORT_KEY_PATTERN = Pattern.compile("^[a-z0-9_-]+$");
+
+    // Cached under the short key for lookups that found nothing; long URLs are never empty
+    static final String NOT_FOUND = "";
+
     public Mono<String> shortenUrl(String longUrl, String customAlias, Integer expiryDays) {
 
         try {
@@ -51,42 +100,127 @@ public class UrlMappingService {
 
         // Calculate expiry time
         Instant createdAt = Instant.now();
-        Instant expiresAt = createdAt.plus(Duration.ofDays(
-                expiryDays != null ? expiryDays : 30 // default to 30 days if not provided
-        ));
+        Instant expiresAt = computeExpiry(createdAt, expiryDays);
+        String normalizedUrl = dedupEnabled ? UrlNormalizer.normalize(longUrl) : null;
+        Long urlHash = dedupEnabled ? UrlNormalizer.fingerprint(normalizedUrl) : null;
 
         if (customAlias != null) {
             // User provided a custom alias; check if already exists
             String finalLongUrl = longUrl;
             String finalCustomAlias = customAlias;
-            return repository.findByShortKey(customAlias)
+            return metrics.time(ShortenStage.ALIAS_CHECK, urlStore.findByShortKey(customAlias))
                     .flatMap(existing -> Mono.<String>error(new AliasAlreadyExistsException("Custom alias already taken!")))
-                    .switchIfEmpty(Mono.defer(() -> saveUrlMapping(finalLongUrl, finalCustomAlias, createdAt, expiresAt)));
+                    .switchIfEmpty(Mono.defer(() -> saveUrlMapping(finalLongUrl, urlHash, finalCustomAlias, createdAt, expiresAt)))
+                    // Lost a race with a concurrent request for the same alias
+                    .onErrorMap(DuplicateKeyException.class, e -> new AliasAlreadyExistsException("Custom alias already taken!"));
+        } else if (dedupEnabled) {
+            // Same URL with a compatible expiry: hand out the key it already has
+            String finalLongUrl = longUrl;
+            return metrics.time(ShortenStage.DEDUP_LOOKUP, findDuplicate(normalizedUrl, urlHash, expiresAt))
+                    .map(existing -> {
+                        metrics.deduplicated(1);
+                        return baseUrl + existing.getShortKey();
+                    })
+                    .switchIfEmpty(Mono.defer(() -> saveWithGeneratedKey(finalLongUrl, urlHash, createdAt, expiresAt, 0)));
         } else {
-            // No custom alias provided; generate random short key
-            String finalLongUrl1 = longUrl;
-            return generateUniqueShortKey()
-                    .flatMap(shortKey -> saveUrlMapping(finalLongUrl1, shortKey, createdAt, expiresAt));
+            // No custom alias provided; generate a short key
+            return saveWithGeneratedKey(longUrl, null, createdAt, expiresAt, 0);
         }
     }
 
+    /**
+     * An existing mapping of the same normalized URL that lives at least until
+     * {@code expiresAt} and at most the dedup tolerance longer, so a reused key never
+     * expires before the caller asked it to; two concurrent first requests can still both create one.
+     */
+    Mono<UrlMapping> findDuplicate(String normalizedUrl, long urlHash, Instant expiresAt) {
+        return urlStore.findByUrlHash(urlHash, dedupFrom(expiresAt, Instant.now()), expiresAt.plus(dedupTolerance()))
+                .filter(mapping -> normalizedUrl.equals(UrlNormalizer.normalize(mapping.getLongUrl())))
+                .next()
+                .onErrorResume(e -> {
+                    // Dedup is an optimization; a failed lookup just creates a new key
+                    log.error("Dedup lookup failed for URL hash [{}]: {}", urlHash, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    boolean isDedupEnabled() {
+        return dedupEnabled;
+    }
+
+    Duration dedupTolerance() {
+        return Duration.ofHours(dedupToleranceHours);
+    }
+
+    /**
+     * Earliest expiry a mapping may have to be handed out for a request expiring at
+     * {@code requested}: not before it, and never one that has already expired.
+     */
+    static Instant dedupFrom(Instant requested, Instant now) {
+        return requested.isAfter(now) ? requested : now.plusMillis(1);
+    }
 
+    /**
+     * Whether a mapping expiring at {@code existing} may stand in for a request expiring at {@code requested}.
+     */
+    boolean dedupCompatible(Instant existing, Instant requested, Instant now) {
+        return existing != null
+                && !existing.isBefore(dedupFrom(requested, now))
+                && !existing.isAfter(requested.plus(dedupTolerance()));
+    }
 
-    private Mono<String> saveUrlMapping(String longUrl, String shortKey, Instant createdAt, Instant expiresAt) {
+    static Instant computeExpiry(Instant createdAt, Integer expiryDays) {
+        return createdAt.plus(Duration.ofDays(
+                expiryDays != null ? expiryDays : 30 // default to 30 days if not provided
+        ));
+    }
+
+    private Mono<String> saveWithGeneratedKey(String longUrl, Long urlHash, Instant createdAt, Instant expiresAt, int retryCount) {
+        // Generated keys need no lookup; the unique index on shortKey rejects the rare clash with a custom alias
+        return metrics.time(ShortenStage.KEYGEN, shortKeyGenerator.nextKey())
+                .flatMap(shortKey -> saveUrlMapping(longUrl, urlHash, shortKey, createdAt, expiresAt))
+                .onErrorResume(DuplicateKeyException.class, e -> {
+                    if (retryCount >= MAX_RETRY) {
+                        return Mono.error(new RuntimeException("Unable to generate unique short key after retries"));
+                    }
+                    metrics.keyCollision();
+                    log.warn("Short key collision on insert, retrying {}/{}", retryCount + 1, MAX_RETRY);
+                    return saveWithGeneratedKey(longUrl, urlHash, createdAt, expiresAt, retryCount + 1);
+                });
+    }
+
+
+    private Mono<String> saveUrlMapping(String longUrl, Long urlHash, String shortKey, Instant createdAt, Instant expiresAt) {
         // Build UrlMapping object
         UrlMapping mapping = new UrlMapping();
         mapping.setShortKey(shortKey);
         mapping.setLongUrl(longUrl);
+        mapping.setUrlHash(urlHash);
         mapping.setCreatedAt(createdAt);
         mapping.setExpiresAt(expiresAt);
 
-        // Save UrlMapping to MongoDB
-        return repository.save(mapping)
+        if (urlStore.isLocal()) {
+            return metrics.time(ShortenStage.STORE_INSERT, urlStore.insert(mapping))
+                    .doOnNext(saved -> {
+                        urlStatsService.onCreated(1);
+                        localUrlCache.invalidate(saved.getShortKey());
+                    })
+                    .flatMap(saved -> clickCounterService.resetLocalClicks(List.of(saved.getShortKey())).thenReturn(saved))
+                    .map(saved -> baseUrl + saved.getShortKey());
+        }
+
+        // Save UrlMapping to MongoDB, after the Bloom filter so no lookup can miss it
+        return shortKeyBloomFilter.add(shortKey)
+                .then(metrics.time(ShortenStage.STORE_INSERT, urlStore.insert(mapping)))
+                .doOnNext(saved -> {
+                    urlStatsService.onCreated(1);
+                    localUrlCache.invalidate(saved.getShortKey());
+                })
                 .flatMap(saved ->
-                        redisTemplate.opsForValue()
-                                .set(saved.getShortKey(), saved.getLongUrl(), Duration.between(createdAt, expiresAt))
+                        metrics.time(ShortenStage.REDIS_SET, redisUrlCache.put(saved.getShortKey(), saved.getLongUrl(), expiresAt))
                                 .onErrorResume(e -> {
                                     // If Redis set fails, log the error but continue
+                                    metrics.redisFallback(RedisOperation.SET);
                                     log.error("Redis SET failed during saveUrlMapping for key [{}]: {}", saved.getShortKey(), e.getMessage());
                                     return Mono.empty();
                                 })
@@ -96,92 +230,172 @@ public class UrlMappingService {
 
     public Mono<String> getLongUrl(String shortKey) {
         String normalizedKey = shortKey.toLowerCase();
-        // Check in Redis
-        return redisTemplate.opsForValue().get(normalizedKey)
+
+        // Stored keys are validated aliases or base-36 ids; a scanner's random path cannot match
+        if (!SHORT_KEY_PATTERN.matcher(normalizedKey).matches()) {
+            return Mono.empty();
+        }
+
+        // A warm replica holds every mapping; a miss may just be replication lag, so it falls through
+        String replicated = redirectReplica.get(normalizedKey);
+        if (replicated != null) {
+            metrics.lookup(LookupSource.REPLICA);
+            return Mono.just(replicated);
+        }
+
+        // Check the in-process L1 cache first; a hit needs no network hop
+        LocalUrlCache.Entry local = localUrlCache.get(normalizedKey);
+        if (local != null) {
+            metrics.lookup(LookupSource.L1);
+            return Mono.just(local.longUrl());
+        }
+        if (localUrlCache.isKnownMissing(normalizedKey)) {
+            metrics.lookup(LookupSource.NEGATIVE_CACHE);
+            return Mono.empty();
+        }
+
+        if (urlStore.isLocal()) {
+            // The store answers from this process; Redis would only add a hop
+            metrics.lookup(LookupSource.STORE);
+            return loadFromStore(normalizedKey).filter(longUrl -> !NOT_FOUND.equals(longUrl));
+        }
+
+        // Check in Redis; the cached expiry tells the L1 cache when the mapping expires
+        return metrics.time(LookupStage.REDIS_GET, redisUrlCache.get(normalizedKey))
+                .map(cached -> {
+                    if (cached.isMissing()) {
+                        metrics.lookup(LookupSource.NEGATIVE_CACHE);
+                        localUrlCache.putMissing(normalizedKey);
+                        return NOT_FOUND;
+                    }
+                    metrics.lookup(LookupSource.REDIS);
+                    localUrlCache.put(normalizedKey, cached.longUrl(), cached.expiresAt());
+                    if (shouldRefreshEarly(cached.ttl())) {
+                        // Reload in the background so the entry never drops out under load
+                        metrics.earlyRefresh();
+                        loadCoalesced(normalizedKey).subscribe(
+                                refreshed -> { },
+                                error -> log.error("Early refresh failed for key [{}]: {}", normalizedKey, error.getMessage()));
+                    }
+                    return cached.longUrl();
+                })
                 .onErrorResume(e -> {
                     // If Redis read fails, log and continue with fallback
+                    metrics.redisFallback(RedisOperation.GET);
                     log.error("Redis GET failed for key [{}]: {}", normalizedKey, e.getMessage());
                     return Mono.empty();
                 })
-                .flatMap(Mono::just) // If found in cache
-                .switchIfEmpty(
-                        // If not in Redis, fetch from DB
-                        repository.findByShortKey(normalizedKey)
-                                .flatMap(urlMapping -> {
-                                    // Check if the URL has expired
-                                    if (urlMapping.getExpiresAt() != null && Instant.now().isAfter(urlMapping.getExpiresAt())) {
-                                        log.warn("Short URL [{}] has expired.", normalizedKey);
-                                        return Mono.empty(); // Returning empty will trigger .defaultIfEmpty(404)
-                                    }
-                                    // Save in Redis for next time with TTL
-                                    return redisTemplate.opsForValue()
-                                            .set(normalizedKey, urlMapping.getLongUrl(), Duration.between(Instant.now(), urlMapping.getExpiresAt()))
-                                            .onErrorResume(e -> {
-                                                // If Redis SET fails
-                                                log.error("Redis SET failed for key [{}]: {}", normalizedKey, e.getMessage());
-                                                return Mono.empty();
-                                            })
-                                            .thenReturn(urlMapping.getLongUrl());
-                                })
-                )
-                .doOnNext(longUrl ->
-                        // Increment click count
-                        incrementClickCount(normalizedKey)
-                );
+                // If not in Redis, fetch from DB
+                .switchIfEmpty(Mono.defer(() -> {
+                    metrics.lookup(LookupSource.STORE);
+                    return loadCoalesced(normalizedKey);
+                }))
+                .filter(longUrl -> !NOT_FOUND.equals(longUrl));
     }
 
+    /**
+     * Single-flight: concurrent misses on one key share a single store load and Redis SET.
+     */
+    private Mono<String> loadCoalesced(String normalizedKey) {
+        return Mono.defer(() -> {
+            AtomicBoolean leader = new AtomicBoolean();
+            Mono<String> load = inFlightLoads.computeIfAbsent(normalizedKey, key -> {
+                leader.set(true);
+                long start = System.nanoTime();
+                AtomicReference<Mono<String>> self = new AtomicReference<>();
+                Mono<String> shared = loadFromStore(key)
+                        .doOnSuccess(ignored -> recordLoadTime(System.nanoTime() - start))
+                        // Remove only this entry: a late doFinally must not drop a newer load for the key
+                        .doFinally(signal -> inFlightLoads.remove(key, self.get()))
+                        .cache();
+                self.set(shared);
+                return shared;
+            });
+            metrics.load(leader.get());
+            return load;
+        });
+    }
 
-    public Mono<Long> getClickCount(String shortKey) {
-        String normalizedKey = shortKey.toLowerCase();
-        return repository.findByShortKey(normalizedKey)
-                .map(UrlMapping::getClickCount);
+    /**
+     * Probabilistic early expiration (XFetch): refresh when loadTime * beta * -ln(rand)
+     * exceeds the remaining TTL, so hot keys are reloaded shortly before they expire
+     * while cold keys almost never are.
+     */
+    private boolean shouldRefreshEarly(Duration ttl) {
+        if (earlyRefreshBeta <= 0 || ttl.isZero() || ttl.isNegative()) {
+            return false;
+        }
+        double gapNanos = loadNanosEwma * earlyRefreshBeta * -Math.log(ThreadLocalRandom.current().nextDouble());
+        return gapNanos >= ttl.toNanos();
     }
 
-    private Mono<String> generateUniqueShortKey() {
-        // Try to generate a unique short key
-        return tryGenerateShortKey(0);
+    private void recordLoadTime(long nanos) {
+        // Racy update is fine; this only steers a probability
+        loadNanosEwma = loadNanosEwma * 0.9 + nanos * 0.1;
     }
 
-    //Collisions will be very rare because 62^6 = 56 billion combinations possible.
-    private Mono<String> tryGenerateShortKey(int retryCount) {
-        String shortKey = generateRandomShortKey();
-        return repository.findByShortKey(shortKey)
-                .flatMap(existing -> {
-                    if (retryCount >= MAX_RETRY) {
-                        // Retry limit reached, throw error
-                        return Mono.error(new RuntimeException("Unable to generate unique short key after retries"));
+    private Mono<String> loadFromStore(String normalizedKey) {
+        Mono<Boolean> bloomCheck = urlStore.isLocal()
+                ? Mono.just(true)
+                : metrics.time(LookupStage.BLOOM, shortKeyBloomFilter.mightContain(normalizedKey));
+        return bloomCheck
+                .flatMap(mightExist -> {
+                    if (!mightExist) {
+                        metrics.storeOutcome(StoreOutcome.BLOOM_REJECTED);
+                        return Mono.empty();
                     }
-                    // If key exists, retry again
-                    log.warn("Short key collision detected: [{}], retrying {}/{}", shortKey, retryCount + 1, MAX_RETRY);
-                    return tryGenerateShortKey(retryCount + 1);
+                    return metrics.time(LookupStage.STORE_FIND, urlStore.findByShortKey(normalizedKey))
+                            .switchIfEmpty(Mono.fromRunnable(() -> metrics.storeOutcome(StoreOutcome.ABSENT)));
                 })
-                .switchIfEmpty(Mono.just(shortKey)); // No collision, accept it
+                .flatMap(urlMapping -> {
+                    // Check if the URL has expired
+                    if (urlMapping.getExpiresAt() != null && Instant.now().isAfter(urlMapping.getExpiresAt())) {
+                        metrics.storeOutcome(StoreOutcome.EXPIRED);
+                        log.warn("Short URL [{}] has expired.", normalizedKey);
+                        return Mono.empty(); // Returning empty will trigger .defaultIfEmpty(404)
+                    }
+                    metrics.storeOutcome(StoreOutcome.FOUND);
+                    localUrlCache.put(normalizedKey, urlMapping.getLongUrl(), urlMapping.getExpiresAt());
+                    if (urlStore.isLocal()) {
+                        return Mono.just(urlMapping.getLongUrl());
+                    }
+                    // Save in Redis for next time with TTL
+                    return metrics.time(LookupStage.REDIS_SET,
+                                    redisUrlCache.put(normalizedKey, urlMapping.getLongUrl(), urlMapping.getExpiresAt()))
+                            .onErrorResume(e -> {
+                                // If Redis SET fails
+                                metrics.redisFallback(RedisOperation.SET);
+                                log.error("Redis SET failed for key [{}]: {}", normalizedKey, e.getMessage());
+                                return Mono.empty();
+                            })
+                            .thenReturn(urlMapping.getLongUrl());
+                })
+                .switchIfEmpty(Mono.defer(() -> cacheMissing(normalizedKey)));
     }
 
-    private String generateRandomShortKey() {
-        // Generate random 6-character short key
-        Random random = new Random();
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < SHORT_KEY_LENGTH; i++) {
-            sb.append(CHAR_POOL.charAt(random.nextInt(CHAR_POOL.length())));
+    private Mono<String> cacheMissing(String normalizedKey) {
+        localUrlCache.putMissing(normalizedKey);
+        if (urlStore.isLocal()) {
+            return Mono.just(NOT_FOUND);
         }
-        return sb.toString();
-    }
-
-    private void incrementClickCount(String shortKey) {
-        String normalizedKey = shortKey.toLowerCase();
-        repository.findByShortKey(normalizedKey)
-                .flatMap(urlMapping -> {
-                    urlMapping.setClickCount(urlMapping.getClickCount() + 1);
-                    return repository.save(urlMapping);
+        // NX: never overwrite a mapping that was created while this lookup was in flight
+        return redisUrlCache.putMissing(normalizedKey, Duration.ofSeconds(negativeTtlSeconds))
+                .onErrorResume(e -> {
+                    metrics.redisFallback(RedisOperation.NEGATIVE_SET);
+                    log.error("Redis SET failed for negative entry [{}]: {}", normalizedKey, e.getMessage());
+                    return Mono.empty();
                 })
-                .subscribe(
-                        success -> log.debug("Click count incremented for [{}]", normalizedKey),
-                        error -> log.error("Failed to increment click count for [{}]: {}", normalizedKey, error.getMessage())
-                );
+                .thenReturn(NOT_FOUND);
     }
 
 
-
+    public Mono<Long> getClickCount(String shortKey) {
+        String normalizedKey = shortKey.toLowerCase();
+        return urlStore.findByShortKey(normalizedKey)
+                .flatMap(urlMapping -> urlStore.isLocal()
+                        ? clickCounterService.flushedLocalClicks(normalizedKey)
+                        : Mono.just(urlMapping.getClickCount()))
+                .map(clicks -> clicks + clickCounterService.pendingClicks(normalizedKey));
+    }
 
 }
@@ -0,0 +1,122 @@
+package com.urlshortener.service;
+
+import com.urlshortener.dto.AnalyticsSummary;
+import com.urlshortener.model.UrlStats;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collection-wide totals kept as counters in a single url_stats document, so the
+ * analytics summary is one primary-key read. Deltas from creates, deletes, purges and
+ * click flushes are buffered and applied with one $inc per tick. A $group aggregation
+ * seeds missing counters and periodically reconciles drift (e.g. Mongo's own TTL deletes).
+ */
+@Slf4j
+@Service
+public class UrlStatsService {
+
+    private static final String STATS_ID = "global";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final LongAdder pendingUrls = new LongAdder();
+    private final LongAdder pendingClicks = new LongAdder();
+
+    public UrlStatsService(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public void onCreated(long count) {
+        pendingUrls.add(count);
+    }
+
+    public void onDeleted(long count) {
+        pendingUrls.add(-count);
+    }
+
+    public void onClicksFlushed(long clicks) {
+        pendingClicks.add(clicks);
+    }
+
+    public Mono<AnalyticsSummary> getSummary() {
+        return mongoTemplate.findById(STATS_ID, UrlStats.class)
+                .switchIfEmpty(Mono.defer(this::reconcile))
+                .map(stats -> new AnalyticsSummary(
+                        stats.getTotalUrls() + pendingUrls.sum(),
+                        stats.getTotalClicks() + pendingClicks.sum()));
+    }
+
+    @Scheduled(fixedDelayString = "${shortener.stats.flush-interval-ms}")
+    public Mono<Void> flush() {
+        long urls = pendingUrls.sumThenReset();
+        long clicks = pendingClicks.sumThenReset();
+        if (urls == 0 && clicks == 0) {
+            return Mono.empty();
+        }
+        return mongoTemplate.upsert(
+                        Query.query(Criteria.where("_id").is(STATS_ID)),
+                        new Update().inc("totalUrls", urls).inc("totalClicks", clicks),
+                        UrlStats.class)
+                .then()
+                .onErrorResume(e -> {
+                    // Keep the deltas for the next tick
+                    log.error("Failed to flush stats deltas: {}", e.getMessage());
+                    pendingUrls.add(urls);
+                    pendingClicks.add(clicks);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Recompute the totals with a $group over url_mapping and overwrite the counters.
+     * Deltas applied while the aggregation runs may be counted twice or not at all;
+     * the next reconciliation corrects that.
+     */
+    @Scheduled(fixedDelayString = "${shortener.stats.reconcile-interval-ms}",
+            initialDelayString = "${shortener.stats.reconcile-interval-ms}")
+    public Mono<UrlStats> reconcile() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.group()
+                        .count().as("totalUrls")
+                        .sum("clickCount").as("totalClicks"));
+
+        return mongoTemplate.aggregate(aggregation, "url_mapping", Document.class)
+                .next()
+                .map(result -> new long[]{
+                        ((Number) result.get("totalUrls")).longValue(),
+                        ((Number) result.get("totalClicks")).longValue()})
+                .defaultIfEmpty(new long[]{0, 0})
+                .flatMap(totals -> mongoTemplate.findAndModify(
+                        Query.query(Criteria.where("_id").is(STATS_ID)),
+                        new Update()
+                                .set("totalUrls", totals[0])
+                                .set("totalClicks", totals[1])
+                                .set("reconciledAt", Instant.now()),
+                        FindAndModifyOptions.options().returnNew(true).upsert(true),
+                        UrlStats.class))
+                .doOnNext(stats -> log.info("Reconciled url stats: {} urls, {} clicks", stats.getTotalUrls(), stats.getTotalClicks()))
+                .doOnError(error -> log.error("Failed to reconcile url stats: {}", error.getMessage()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flush().block(Duration.ofSeconds(5));
+        } catch (RuntimeException e) {
+            log.error("Final stats flush did not complete: {}", e.getMessage());
+        }
+    }
+}
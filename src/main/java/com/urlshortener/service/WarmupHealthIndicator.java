@@ -0,0 +1,42 @@
+package com.urlshortener.service;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+/**
+ * "warmup" health: OUT_OF_SERVICE while {@link CacheWarmupService} is still preloading, so
+ * the readiness group holds traffic back, and UP with the outcome once it is done. A failed
+ * or timed-out warm-up still reports UP; the node serves from Mongo like a cold one.
+ */
+@Component
+public class WarmupHealthIndicator extends AbstractHealthIndicator {
+
+    private final CacheWarmupService warmupService;
+
+    public WarmupHealthIndicator(CacheWarmupService warmupService) {
+        super("Cache warm-up health check failed");
+        this.warmupService = warmupService;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        CacheWarmupService.Progress progress = warmupService.progress();
+        if (warmupService.isDone()) {
+            builder.up();
+        } else {
+            builder.outOfService();
+        }
+        builder.withDetail("state", progress.state())
+                .withDetail("source", progress.source())
+                .withDetail("target", progress.target())
+                .withDetail("found", progress.found())
+                .withDetail("loaded", progress.loaded());
+        if (progress.startedAt() != null) {
+            builder.withDetail("startedAt", progress.startedAt());
+        }
+        if (progress.finishedAt() != null) {
+            builder.withDetail("finishedAt", progress.finishedAt());
+        }
+    }
+}
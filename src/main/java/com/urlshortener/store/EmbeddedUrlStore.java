@@ -0,0 +1,511 @@
+package com.urlshortener.store;
+
+import com.urlshortener.model.UrlMapping;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Single-node engine with no external services: mappings are appended to a log file
+ * (urls.log) and found through a memory-mapped hash index (urls.idx) from short key to
+ * log record. A clean shutdown checkpoints the index, so startup only replays the log
+ * written after it; after a crash the index is rebuilt from the whole log. A torn last
+ * record is cut off; a damaged record with valid ones after it is skipped, not the rest
+ * of the log with it.
+ * <p>
+ * Deleted, replaced and expired records stay in the log until the scheduled
+ * {@link #compact()} rewrites it with only the live mappings. An expired short key can
+ * be taken again right away.
+ * <p>
+ * Record layout: length, type, key length, key, URL length, URL, createdAt, expiresAt
+ * (epoch millis, {@link Long#MIN_VALUE} for none) and a CRC32C over everything before it.
+ * <p>
+ * Writes (and their fsync) and lookups all run on the blocking scheduler: a lookup is one
+ * positional read of the log, which misses the page cache once the working set outgrows
+ * memory, and it waits for the lock while a write or compaction holds it.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "shortener.store.engine", havingValue = "embedded")
+public class EmbeddedUrlStore implements UrlStore {
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_OVERHEAD = 4 + 1 + 2 + 4 + 8 + 8 + 4;
+    // A pointer packs the record offset (high 40 bits) with its length (low 24 bits)
+    private static final int LENGTH_BITS = 24;
+    private static final int MAX_RECORD_BYTES = (1 << LENGTH_BITS) - 1;
+    private static final long NO_EXPIRY = Long.MIN_VALUE;
+    private static final String LOG_FILE = "urls.log";
+    private static final String INDEX_FILE = "urls.idx";
+    private static final String COMPACTING = ".compact";
+
+    private record Record(byte type, String shortKey, String longUrl, long createdAt, long expiresAt) {
+    }
+
+    private final Path directory;
+    private final int initialCapacity;
+    private final boolean syncWrites;
+    private final Scheduler blockingScheduler;
+    private final StampedLock lock = new StampedLock();
+    // Replaced by compaction, under the write lock
+    private FileChannel logFile;
+    private MmapKeyIndex index;
+    private long logLength;
+
+    public EmbeddedUrlStore(@Value("${shortener.store.embedded.dir}") String dir,
+                            @Value("${shortener.store.embedded.initial-capacity}") int initialCapacity,
+                            @Value("${shortener.store.embedded.sync-writes}") boolean syncWrites,
+                            @Qualifier("blockingScheduler") Scheduler blockingScheduler) throws IOException {
+        this.directory = Path.of(dir);
+        Files.createDirectories(directory);
+        this.initialCapacity = initialCapacity;
+        this.syncWrites = syncWrites;
+        this.blockingScheduler = blockingScheduler;
+        // Left over from a compaction that did not finish; the old log and index are still complete
+        Files.deleteIfExists(directory.resolve(LOG_FILE + COMPACTING));
+        Files.deleteIfExists(directory.resolve(INDEX_FILE + COMPACTING));
+        this.logFile = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.logLength = logFile.size();
+        this.index = MmapKeyIndex.open(directory.resolve(INDEX_FILE), initialCapacity, logLength);
+
+        long start = System.nanoTime();
+        long from = index.coveredLogLength();
+        index.markDirty();
+        long replayed = replay(from);
+        log.info("Embedded store opened at [{}]: {} keys, replayed {} records from offset {} in {} ms",
+                directory, index.size(), replayed, from, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public Mono<UrlMapping> findByShortKey(String shortKey) {
+        return Mono.fromCallable(() -> {
+            Record record = find(shortKey);
+            return record != null ? toMapping(record) : null;
+        }).subscribeOn(blockingScheduler);
+    }
+
+    @Override
+    public Mono<UrlMapping> insert(UrlMapping mapping) {
+        return Mono.fromCallable(() -> {
+            long stamp = lock.writeLock();
+            try {
+                insertLocked(mapping);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            sync();
+            return mapping;
+        }).subscribeOn(blockingScheduler);
+    }
+
+    @Override
+    public Mono<Map<Integer, Throwable>> insertAll(List<UrlMapping> mappings) {
+        return Mono.fromCallable(() -> {
+            Map<Integer, Throwable> errors = new HashMap<>();
+            long stamp = lock.writeLock();
+            try {
+                for (int i = 0; i < mappings.size(); i++) {
+                    try {
+                        insertLocked(mappings.get(i));
+                    } catch (DuplicateKeyException | IllegalArgumentException e) {
+                        errors.put(i, e);
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            // One fsync for the whole chunk
+            sync();
+            return errors;
+        }).subscribeOn(blockingScheduler);
+    }
+
+    @Override
+    public Mono<Void> delete(UrlMapping mapping) {
+        return Mono.fromCallable(() -> {
+            String shortKey = mapping.getShortKey();
+            long stamp = lock.writeLock();
+            try {
+                if (index.find(hash(shortKey), matches(shortKey)) == MmapKeyIndex.NOT_FOUND) {
+                    return null;
+                }
+                append(new Record(DELETE, shortKey, "", 0, NO_EXPIRY));
+                index.remove(hash(shortKey), matches(shortKey));
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            sync();
+            return null;
+        }).subscribeOn(blockingScheduler).then();
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    /**
+     * Rewrites the log with only the live, unexpired mappings and a fresh index for it,
+     * then swaps both in. Writers wait for the rewrite.
+     *
+     * @return number of mappings dropped because they had expired
+     */
+    @Scheduled(cron = "${shortener.store.embedded.compact-cron}")
+    public Mono<Long> compact() {
+        return Mono.fromCallable(() -> {
+            long stamp = lock.writeLock();
+            try {
+                return compactLocked();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }).subscribeOn(blockingScheduler);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            logFile.force(true);
+            index.checkpoint(logLength);
+            index.close();
+            logFile.close();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private Record find(String shortKey) throws IOException {
+        long hash = hash(shortKey);
+        // Optimistic first: the log is append-only, so a pointer read during a concurrent write is at worst garbage
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Record record = findUnlocked(hash, shortKey);
+                if (lock.validate(stamp)) {
+                    return record;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return findUnlocked(hash, shortKey);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Record findUnlocked(long hash, String shortKey) throws IOException {
+        Record[] found = new Record[1];
+        index.find(hash, pointer -> {
+            Record record = read(pointer);
+            if (record != null && record.shortKey().equals(shortKey)) {
+                found[0] = record;
+                return true;
+            }
+            return false;
+        });
+        return found[0];
+    }
+
+    private void insertLocked(UrlMapping mapping) throws IOException {
+        String shortKey = mapping.getShortKey();
+        Record existing = findUnlocked(hash(shortKey), shortKey);
+        // An expired mapping is replaced in place, as if it had been purged
+        if (existing != null && !isExpired(existing, System.currentTimeMillis())) {
+            throw new DuplicateKeyException("Short key already exists: " + shortKey);
+        }
+        long pointer = append(new Record(PUT, shortKey, mapping.getLongUrl(),
+                mapping.getCreatedAt() != null ? mapping.getCreatedAt().toEpochMilli() : System.currentTimeMillis(),
+                mapping.getExpiresAt() != null ? mapping.getExpiresAt().toEpochMilli() : NO_EXPIRY));
+        index.put(hash(shortKey), pointer, matches(shortKey));
+    }
+
+    private long append(Record record) throws IOException {
+        ByteBuffer buffer = encode(record);
+        long offset = logLength;
+        write(logFile, buffer, offset);
+        logLength += buffer.limit();
+        return offset << LENGTH_BITS | buffer.limit();
+    }
+
+    private static ByteBuffer encode(Record record) {
+        byte[] key = record.shortKey().getBytes(StandardCharsets.UTF_8);
+        byte[] url = record.longUrl().getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_OVERHEAD + key.length + url.length;
+        if (length > MAX_RECORD_BYTES || key.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Mapping too large for the embedded store: " + record.shortKey());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(length)
+                .put(record.type())
+                .putShort((short) key.length).put(key)
+                .putInt(url.length).put(url)
+                .putLong(record.createdAt())
+                .putLong(record.expiresAt());
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+
+    private static void write(FileChannel file, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            file.write(buffer, offset + buffer.position());
+        }
+    }
+
+    private void sync() throws IOException {
+        if (syncWrites) {
+            logFile.force(false);
+        }
+    }
+
+    private Record read(long pointer) throws IOException {
+        long offset = pointer >>> LENGTH_BITS;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (pointer & MAX_RECORD_BYTES));
+        while (buffer.hasRemaining()) {
+            if (logFile.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Record at " + offset + " runs past the end of the log");
+            }
+        }
+        return decode(buffer.array());
+    }
+
+    /**
+     * Applies every record from {@code from} to the index. A record that is incomplete or
+     * fails its checksum is skipped when a valid record follows it, and cut off with
+     * everything after it when none does (a write torn by a crash).
+     */
+    private long replay(long from) throws IOException {
+        long position = from;
+        long records = 0;
+        DataInputStream in = logStream(position);
+        while (position < logLength) {
+            byte[] bytes = readRecord(in, position);
+            Record record = bytes != null ? decode(bytes) : null;
+            if (record == null) {
+                long next = nextValidRecord(position + 1);
+                if (next < 0) {
+                    log.warn("Embedded store log is torn at offset {}; dropping the last {} bytes", position, logLength - position);
+                    logFile.truncate(position);
+                    logLength = position;
+                    break;
+                }
+                log.error("Embedded store log is damaged at offset {}; skipping {} bytes to the next valid record",
+                        position, next - position);
+                position = next;
+                in = logStream(position);
+                continue;
+            }
+            long pointer = position << LENGTH_BITS | bytes.length;
+            if (record.type() == PUT) {
+                index.put(hash(record.shortKey()), pointer, matches(record.shortKey()));
+            } else {
+                index.remove(hash(record.shortKey()), matches(record.shortKey()));
+            }
+            position += bytes.length;
+            records++;
+        }
+        return records;
+    }
+
+    private DataInputStream logStream(long position) throws IOException {
+        InputStream stream = Channels.newInputStream(logFile.position(position));
+        return new DataInputStream(new BufferedInputStream(stream, 1 << 20));
+    }
+
+    /**
+     * @return the bytes of the record at {@code position}, or null when its length is
+     * impossible or the log ends inside it
+     */
+    private byte[] readRecord(DataInputStream in, long position) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length < RECORD_OVERHEAD || length > MAX_RECORD_BYTES || position + length > logLength) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            ByteBuffer.wrap(bytes).putInt(length);
+            in.readFully(bytes, 4, length - 4);
+            return bytes;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Scans forward for the first offset holding a record with a plausible length and a
+     * matching checksum.
+     *
+     * @return its offset, or -1 when there is none before the end of the log
+     */
+    private long nextValidRecord(long from) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(1 << 16);
+        long windowStart = from;
+        window.limit(0);
+        for (long candidate = from; candidate + RECORD_OVERHEAD <= logLength; candidate++) {
+            if (candidate + 4 > windowStart + window.limit()) {
+                windowStart = candidate;
+                window.clear();
+                int read;
+                do {
+                    read = logFile.read(window, windowStart + window.position());
+                } while (read > 0 && window.hasRemaining());
+                window.flip();
+            }
+            int length = window.getInt((int) (candidate - windowStart));
+            if (length >= RECORD_OVERHEAD && length <= MAX_RECORD_BYTES && candidate + length <= logLength
+                    && read(candidate << LENGTH_BITS | length) != null) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    private long compactLocked() throws IOException {
+        long now = System.currentTimeMillis();
+        Path logPath = directory.resolve(LOG_FILE);
+        Path indexPath = directory.resolve(INDEX_FILE);
+        Path compactLog = directory.resolve(LOG_FILE + COMPACTING);
+        Path compactIndex = directory.resolve(INDEX_FILE + COMPACTING);
+        long before = logLength;
+        // kept, expired, unreadable, bytes written
+        long[] counts = new long[4];
+        try (FileChannel out = FileChannel.open(compactLog, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            MmapKeyIndex compacted = MmapKeyIndex.open(compactIndex, (int) Math.max(initialCapacity, index.size()), 0);
+            index.forEach((hash, pointer) -> {
+                Record record = read(pointer);
+                if (record == null) {
+                    counts[2]++;
+                    return;
+                }
+                if (isExpired(record, now)) {
+                    counts[1]++;
+                    return;
+                }
+                ByteBuffer buffer = encode(record);
+                long offset = counts[3];
+                write(out, buffer, offset);
+                counts[3] += buffer.limit();
+                // Every key is written once, so there is never an older slot to replace
+                compacted.put(hash, offset << LENGTH_BITS | buffer.limit(), existing -> false);
+                counts[0]++;
+            });
+            out.force(true);
+            compacted.checkpoint(counts[3]);
+            compacted.close();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(compactLog);
+            Files.deleteIfExists(compactIndex);
+            throw e;
+        }
+
+        // The log goes first: until the index follows, the old (dirty) index forces a rebuild on restart
+        index.close();
+        logFile.close();
+        Files.move(compactLog, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(compactIndex, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logFile = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logLength = counts[3];
+        index = MmapKeyIndex.open(indexPath, initialCapacity, logLength);
+        index.markDirty();
+        if (counts[2] > 0) {
+            log.error("Embedded store compaction dropped {} index entries whose log record is unreadable", counts[2]);
+        }
+        log.info("Embedded store compacted from {} to {} bytes: {} mappings kept, {} expired dropped",
+                before, logLength, counts[0], counts[1]);
+        return counts[1];
+    }
+
+    private static boolean isExpired(Record record, long now) {
+        return record.expiresAt() != NO_EXPIRY && record.expiresAt() <= now;
+    }
+
+    private static Record decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != bytes.length) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, bytes.length - 4);
+        if ((int) crc.getValue() != buffer.getInt(bytes.length - 4)) {
+            return null;
+        }
+        byte type = buffer.get();
+        String shortKey = string(buffer, buffer.getShort());
+        String longUrl = string(buffer, buffer.getInt());
+        return new Record(type, shortKey, longUrl, buffer.getLong(), buffer.getLong());
+    }
+
+    private static String string(ByteBuffer buffer, int length) {
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private MmapKeyIndex.KeyCheck matches(String shortKey) {
+        return pointer -> {
+            Record record = read(pointer);
+            return record != null && record.shortKey().equals(shortKey);
+        };
+    }
+
+    private static UrlMapping toMapping(Record record) {
+        UrlMapping mapping = new UrlMapping();
+        mapping.setShortKey(record.shortKey());
+        mapping.setLongUrl(record.longUrl());
+        mapping.setCreatedAt(Instant.ofEpochMilli(record.createdAt()));
+        mapping.setExpiresAt(record.expiresAt() != NO_EXPIRY ? Instant.ofEpochMilli(record.expiresAt()) : null);
+        return mapping;
+    }
+
+    /**
+     * FNV-1a with a splitmix64 finalizer so the low bits used for the slot are well mixed;
+     * never 0, which marks an empty slot.
+     */
+    private static long hash(String shortKey) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < shortKey.length(); i++) {
+            h ^= shortKey.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        h ^= h >>> 31;
+        return h != 0 ? h : 1;
+    }
+}
@@ -0,0 +1,253 @@
+package com.urlshortener.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Open-addressing hash table in a memory-mapped file, from a 64-bit key hash to a
+ * record pointer in the log. Slots are 16 bytes (hash, pointer) with linear probing;
+ * hash 0 marks an empty slot and a {@link #TOMBSTONE} pointer a deleted one. Hashes can
+ * collide, so every match is confirmed against the key stored in the log.
+ * <p>
+ * Not thread-safe; {@link EmbeddedUrlStore} serializes writers and validates readers.
+ */
+final class MmapKeyIndex implements Closeable {
+
+    @FunctionalInterface
+    interface KeyCheck {
+        boolean matches(long pointer) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface PointerVisitor {
+        void visit(long hash, long pointer) throws IOException;
+    }
+
+    static final long NOT_FOUND = -1L;
+
+    private static final int MAGIC = 0x55524c49; // "URLI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 16;
+    private static final long TOMBSTONE = -1L;
+    private static final double MAX_LOAD = 0.7;
+    private static final int MAX_CAPACITY = Integer.highestOneBit((Integer.MAX_VALUE - HEADER_BYTES) / SLOT_BYTES);
+
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 4;
+    private static final int CAPACITY_AT = 8;
+    private static final int OCCUPIED_AT = 16;
+    private static final int LIVE_AT = 24;
+    private static final int COVERED_AT = 32;
+    private static final int CLEAN_AT = 40;
+
+    private final Path path;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private long occupied;
+    private long live;
+
+    private MmapKeyIndex(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = (int) buffer.getLong(CAPACITY_AT);
+        this.occupied = buffer.getLong(OCCUPIED_AT);
+        this.live = buffer.getLong(LIVE_AT);
+    }
+
+    /**
+     * Maps the index file, starting a new one if it is missing, from another version,
+     * ahead of the log, or was not closed cleanly (its slots may then point past what
+     * the log kept).
+     */
+    static MmapKeyIndex open(Path path, int initialCapacity, long logLength) throws IOException {
+        if (Files.exists(path) && Files.size(path) >= HEADER_BYTES) {
+            MappedByteBuffer existing = map(path, Files.size(path), false);
+            if (existing.getInt(MAGIC_AT) == MAGIC
+                    && existing.getInt(VERSION_AT) == VERSION
+                    && existing.get(CLEAN_AT) == 1
+                    && existing.getLong(COVERED_AT) <= logLength
+                    && Files.size(path) == HEADER_BYTES + existing.getLong(CAPACITY_AT) * SLOT_BYTES) {
+                return new MmapKeyIndex(path, existing);
+            }
+        }
+        return new MmapKeyIndex(path, create(path, tableSize(initialCapacity)));
+    }
+
+    /**
+     * Log length this index already reflects; the log is replayed from here on.
+     */
+    long coveredLogLength() {
+        return buffer.getLong(COVERED_AT);
+    }
+
+    long size() {
+        return live;
+    }
+
+    /**
+     * Marks the file dirty until {@link #checkpoint} so a crash forces a rebuild.
+     */
+    void markDirty() {
+        buffer.put(CLEAN_AT, (byte) 0);
+        buffer.force();
+    }
+
+    void checkpoint(long logLength) {
+        buffer.putLong(OCCUPIED_AT, occupied);
+        buffer.putLong(LIVE_AT, live);
+        buffer.putLong(COVERED_AT, logLength);
+        buffer.force();
+        buffer.put(CLEAN_AT, (byte) 1);
+        buffer.force();
+    }
+
+    long find(long hash, KeyCheck check) throws IOException {
+        int mask = capacity - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = buffer.getLong(slotAt(slot));
+            if (slotHash == 0) {
+                return NOT_FOUND;
+            }
+            long pointer = buffer.getLong(slotAt(slot) + 8);
+            if (slotHash == hash && pointer != TOMBSTONE && check.matches(pointer)) {
+                return pointer;
+            }
+        }
+    }
+
+    /**
+     * Points the key at a new record, replacing the slot of an older record of the same key.
+     */
+    void put(long hash, long pointer, KeyCheck sameKey) throws IOException {
+        if (occupied + 1 > capacity * MAX_LOAD) {
+            rehash();
+        }
+        int mask = capacity - 1;
+        int free = -1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = buffer.getLong(slotAt(slot));
+            if (slotHash == 0) {
+                if (free < 0) {
+                    free = slot;
+                    occupied++;
+                }
+                break;
+            }
+            long existing = buffer.getLong(slotAt(slot) + 8);
+            if (existing == TOMBSTONE) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (slotHash == hash && sameKey.matches(existing)) {
+                buffer.putLong(slotAt(slot) + 8, pointer);
+                return;
+            }
+        }
+        buffer.putLong(slotAt(free) + 8, pointer);
+        buffer.putLong(slotAt(free), hash);
+        live++;
+    }
+
+    boolean remove(long hash, KeyCheck sameKey) throws IOException {
+        int mask = capacity - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = buffer.getLong(slotAt(slot));
+            if (slotHash == 0) {
+                return false;
+            }
+            long existing = buffer.getLong(slotAt(slot) + 8);
+            if (slotHash == hash && existing != TOMBSTONE && sameKey.matches(existing)) {
+                buffer.putLong(slotAt(slot) + 8, TOMBSTONE);
+                live--;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Visits every live slot, in slot order.
+     */
+    void forEach(PointerVisitor visitor) throws IOException {
+        for (int slot = 0; slot < capacity; slot++) {
+            long hash = buffer.getLong(slotAt(slot));
+            long pointer = buffer.getLong(slotAt(slot) + 8);
+            if (hash != 0 && pointer != TOMBSTONE) {
+                visitor.visit(hash, pointer);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        buffer.force();
+    }
+
+    /**
+     * Copies the live slots into a fresh table (doubled unless tombstones were the
+     * problem) and swaps the file in atomically.
+     */
+    private void rehash() throws IOException {
+        int newCapacity = live * 2 >= capacity * MAX_LOAD ? capacity * 2 : capacity;
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IOException("Embedded store index is full at " + live + " keys");
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        MappedByteBuffer next = create(tmp, newCapacity);
+        int mask = newCapacity - 1;
+        for (int slot = 0; slot < capacity; slot++) {
+            long hash = buffer.getLong(slotAt(slot));
+            long pointer = buffer.getLong(slotAt(slot) + 8);
+            if (hash == 0 || pointer == TOMBSTONE) {
+                continue;
+            }
+            int target = (int) hash & mask;
+            while (next.getLong(slotAt(target)) != 0) {
+                target = (target + 1) & mask;
+            }
+            next.putLong(slotAt(target), hash);
+            next.putLong(slotAt(target) + 8, pointer);
+        }
+        next.putLong(OCCUPIED_AT, live);
+        next.putLong(LIVE_AT, live);
+        next.force();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        buffer = next;
+        capacity = newCapacity;
+        occupied = live;
+    }
+
+    private static MappedByteBuffer create(Path path, int capacity) throws IOException {
+        Files.deleteIfExists(path);
+        MappedByteBuffer buffer = map(path, HEADER_BYTES + (long) capacity * SLOT_BYTES, true);
+        buffer.putInt(MAGIC_AT, MAGIC);
+        buffer.putInt(VERSION_AT, VERSION);
+        buffer.putLong(CAPACITY_AT, capacity);
+        return buffer;
+    }
+
+    private static MappedByteBuffer map(Path path, long size, boolean create) throws IOException {
+        StandardOpenOption[] options = create
+                ? new StandardOpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static int tableSize(int expected) {
+        int size = Integer.highestOneBit(Math.max(16, (int) Math.min(MAX_CAPACITY, expected / MAX_LOAD)) - 1) << 1;
+        return Math.min(size, MAX_CAPACITY);
+    }
+
+    private static int slotAt(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+}
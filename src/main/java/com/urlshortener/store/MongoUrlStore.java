@@ -0,0 +1,93 @@
+package com.urlshortener.store;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.repository.UrlMappingRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Default engine: url_mapping in Mongo, with Redis as the shared cache in front of it.
+ */
+@Service
+@ConditionalOnProperty(name = "shortener.store.engine", havingValue = "mongo", matchIfMissing = true)
+public class MongoUrlStore implements UrlStore {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final UrlMappingRepository repository;
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public MongoUrlStore(UrlMappingRepository repository, ReactiveMongoTemplate mongoTemplate) {
+        this.repository = repository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<UrlMapping> findByShortKey(String shortKey) {
+        return repository.findByShortKey(shortKey);
+    }
+
+    @Override
+    public Mono<UrlMapping> insert(UrlMapping mapping) {
+        return repository.insert(mapping);
+    }
+
+    @Override
+    public Mono<Map<Integer, Throwable>> insertAll(List<UrlMapping> mappings) {
+        return mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlMapping.class)
+                .insert(mappings)
+                .execute()
+                .map(result -> Map.<Integer, Throwable>of())
+                .onErrorResume(e -> {
+                    // Unordered: everything except the reported write errors was inserted
+                    MongoBulkWriteException bulkError = findBulkWriteException(e);
+                    if (bulkError == null) {
+                        return Mono.error(e);
+                    }
+                    return Mono.just(bulkError.getWriteErrors().stream()
+                            .collect(Collectors.toMap(BulkWriteError::getIndex, MongoUrlStore::toException, (a, b) -> a)));
+                });
+    }
+
+    @Override
+    public Mono<Void> delete(UrlMapping mapping) {
+        return repository.delete(mapping);
+    }
+
+    @Override
+    public Flux<UrlMapping> findByUrlHash(long urlHash, Instant expiresFrom, Instant expiresTo) {
+        // Served by the partial (urlHash, expiresAt) index; a handful is plenty to find an equal URL among fingerprint twins
+        return mongoTemplate.find(Query.query(Criteria.where("urlHash").is(urlHash)
+                        .and("expiresAt").gte(expiresFrom).lte(expiresTo)).limit(8), UrlMapping.class);
+    }
+
+    private static Throwable toException(BulkWriteError error) {
+        return error.getCode() == DUPLICATE_KEY
+                ? new DuplicateKeyException(error.getMessage())
+                : new DataIntegrityViolationException(error.getMessage());
+    }
+
+    private static MongoBulkWriteException findBulkWriteException(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof MongoBulkWriteException bulkError) {
+                return bulkError;
+            }
+        }
+        return null;
+    }
+}
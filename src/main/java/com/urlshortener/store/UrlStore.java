@@ -0,0 +1,48 @@
+package com.urlshortener.store;
+
+import com.urlshortener.model.UrlMapping;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage engine for short key to long URL mappings. Selected with shortener.store.engine.
+ */
+public interface UrlStore {
+
+    Mono<UrlMapping> findByShortKey(String shortKey);
+
+    /**
+     * Fails with {@link org.springframework.dao.DuplicateKeyException} when the short key is taken.
+     */
+    Mono<UrlMapping> insert(UrlMapping mapping);
+
+    /**
+     * Inserts every mapping it can; a failed row does not stop the others.
+     *
+     * @return the error of each row that was not inserted, by its index in {@code mappings}
+     */
+    Mono<Map<Integer, Throwable>> insertAll(List<UrlMapping> mappings);
+
+    Mono<Void> delete(UrlMapping mapping);
+
+    /**
+     * Mappings carrying this URL fingerprint that expire between {@code expiresFrom} and
+     * {@code expiresTo}. Engines without a fingerprint index find nothing, so they never deduplicate.
+     */
+    default Flux<UrlMapping> findByUrlHash(long urlHash, Instant expiresFrom, Instant expiresTo) {
+        return Flux.empty();
+    }
+
+    /**
+     * True when lookups are answered in-process, so a shared cache in front of the
+     * store would only add a network hop.
+     */
+    default boolean isLocal() {
+        return false;
+    }
+}
@@ -4,9 +4,14 @@ import com.urlshortener.exception.InvalidAliasException;
 import com.urlshortener.exception.InvalidUrlFormatException;
 import lombok.experimental.UtilityClass;
 
+import java.util.regex.Pattern;
+
 @UtilityClass
 public class InputValidator {
 
+    // Compiled once: String.matches recompiles the pattern on every call, on the event loop
+    private final Pattern ALIAS_PATTERN = Pattern.compile("^[a-zA-Z0-9_-]+$");
+
     public ValidationResult validateAndCleanInputs(String longUrl, String customAlias) {
         if (longUrl == null || longUrl.isBlank()) {
             throw new InvalidUrlFormatException("Long URL cannot be empty!");
@@ -18,9 +23,12 @@ public class InputValidator {
             throw new InvalidUrlFormatException("Invalid URL format! URL must start with http:// or https://");
         }
 
+        // Stored encoded, so redirects can send it as the Location header without re-parsing
+        trimmedLongUrl = RedirectLocation.encode(trimmedLongUrl);
+
         if (customAlias != null && !customAlias.isBlank()) {
             String normalizedAlias = customAlias.trim().toLowerCase();
-            if (!normalizedAlias.matches("^[a-zA-Z0-9_-]+$")) {
+            if (!ALIAS_PATTERN.matcher(normalizedAlias).matches()) {
                 throw new InvalidAliasException("Custom alias contains invalid characters! Only letters, numbers, hyphens (-) and underscores (_) are allowed.");
             }
             return new ValidationResult(trimmedLongUrl, normalizedAlias);
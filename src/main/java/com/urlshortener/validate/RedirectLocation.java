@@ -0,0 +1,112 @@
+package com.urlshortener.validate;
+
+import com.urlshortener.exception.InvalidUrlFormatException;
+import lombok.experimental.UtilityClass;
+
+import java.net.IDN;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns a long URL into the exact value of a redirect's Location header: an IDN host in
+ * its ASCII form and every character a URI may not contain percent-encoded as UTF-8,
+ * leaving existing escapes alone. Mappings store this form, so the redirect path copies
+ * the cached string into the header without parsing it.
+ */
+@UtilityClass
+public class RedirectLocation {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * @throws InvalidUrlFormatException when the result is still not a valid URI
+     */
+    public String encode(String url) {
+        String encoded = isEncoded(url) ? url : percentEncode(asciiHost(url));
+        try {
+            new URI(encoded);
+        } catch (URISyntaxException e) {
+            throw new InvalidUrlFormatException("Invalid URL format! " + e.getReason());
+        }
+        return encoded;
+    }
+
+    /**
+     * True when every character may appear in a URI as is; a cheap check for mappings
+     * stored before they were encoded on creation.
+     */
+    public boolean isEncoded(String url) {
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '%' ? !isEscape(url, i) : !isAllowed(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String asciiHost(String url) {
+        int start = url.indexOf("://");
+        if (start < 0) {
+            return url;
+        }
+        start += 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        // Skip user info and port; an IPv6 literal is ASCII and returned untouched below
+        int at = url.lastIndexOf('@', end - 1);
+        int hostStart = at >= start ? at + 1 : start;
+        int colon = url.indexOf(':', hostStart);
+        int hostEnd = colon >= 0 && colon < end ? colon : end;
+        String host = url.substring(hostStart, hostEnd);
+        if (host.chars().allMatch(c -> c < 0x80)) {
+            return url;
+        }
+        try {
+            return url.substring(0, hostStart) + IDN.toASCII(host, IDN.ALLOW_UNASSIGNED) + url.substring(hostEnd);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidUrlFormatException("Invalid URL format! Bad host name: " + host);
+        }
+    }
+
+    private String percentEncode(String url) {
+        StringBuilder out = new StringBuilder(url.length() + 16);
+        int i = 0;
+        while (i < url.length()) {
+            char c = url.charAt(i);
+            if (c == '%' ? isEscape(url, i) : isAllowed(c)) {
+                out.append(c);
+                i++;
+                continue;
+            }
+            // Encode the whole run at once so surrogate pairs become one UTF-8 sequence
+            int runEnd = i + 1;
+            while (runEnd < url.length() && !isAllowed(url.charAt(runEnd))
+                    && !(url.charAt(runEnd) == '%' && isEscape(url, runEnd))) {
+                runEnd++;
+            }
+            for (byte b : url.substring(i, runEnd).getBytes(StandardCharsets.UTF_8)) {
+                out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+            i = runEnd;
+        }
+        return out.toString();
+    }
+
+    // RFC 3986 unreserved, gen-delims and sub-delims
+    private boolean isAllowed(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || "-._~:/?#[]@!$&'()*+,;=".indexOf(c) >= 0;
+    }
+
+    private boolean isEscape(String url, int i) {
+        return i + 2 < url.length() && isHex(url.charAt(i + 1)) && isHex(url.charAt(i + 2));
+    }
+
+    private boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
@@ -0,0 +1,77 @@
+package com.urlshortener.validate;
+
+import lombok.experimental.UtilityClass;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Canonical form of a stored (already encoded) long URL for deduplication: lower-case
+ * scheme and host, no default port, "/" for an empty path and query parameters sorted by
+ * name (repeated names keep their order). Only the fingerprint and comparisons use it;
+ * mappings keep the URL as submitted.
+ */
+@UtilityClass
+public class UrlNormalizer {
+
+    public String normalize(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return url;
+        }
+        if (uri.isOpaque() || uri.getScheme() == null || uri.getHost() == null) {
+            return url;
+        }
+        String scheme = uri.getScheme().toLowerCase();
+        StringBuilder normalized = new StringBuilder(url.length()).append(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            normalized.append(uri.getRawUserInfo()).append('@');
+        }
+        normalized.append(uri.getHost().toLowerCase());
+        int port = uri.getPort();
+        if (port != -1 && !(port == 80 && scheme.equals("http")) && !(port == 443 && scheme.equals("https"))) {
+            normalized.append(':').append(port);
+        }
+        String path = uri.getRawPath();
+        normalized.append(path == null || path.isEmpty() ? "/" : path);
+        String query = uri.getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            String[] params = Arrays.stream(query.split("&")).filter(param -> !param.isEmpty()).toArray(String[]::new);
+            // Stable, so a=2&a=1 keeps its meaning
+            Arrays.sort(params, Comparator.comparing(UrlNormalizer::paramName));
+            if (params.length > 0) {
+                normalized.append('?').append(String.join("&", params));
+            }
+        }
+        if (uri.getRawFragment() != null) {
+            normalized.append('#').append(uri.getRawFragment());
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * 64-bit fingerprint of an already normalized URL (FNV-1a over its UTF-8 bytes with a
+     * splitmix64 finalizer). Equal fingerprints only make URLs candidates; callers compare
+     * the normalized forms before reusing a mapping.
+     */
+    public long fingerprint(String normalizedUrl) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : normalizedUrl.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    private String paramName(String param) {
+        int equals = param.indexOf('=');
+        return equals < 0 ? param : param.substring(0, equals);
+    }
+}
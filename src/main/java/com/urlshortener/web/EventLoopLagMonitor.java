@@ -0,0 +1,86 @@
+package com.urlshortener.web;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerInitializedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.ReactorResourceFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event-loop stall detection: every probe interval a no-op task is queued on each server
+ * event loop and the delay until it runs is recorded as eventloop.lag. A loop that is
+ * healthy picks it up within microseconds; anything blocking it (a slipped-in blocking
+ * driver call, a long CPU-bound stage) shows up as lag on every request sharing the loop.
+ */
+@Slf4j
+@Component
+public class EventLoopLagMonitor {
+
+    private final ObjectProvider<ReactorResourceFactory> resourceFactory;
+    private final Timer lagTimer;
+    private final long warnNanos;
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    private volatile Iterable<EventExecutor> loops;
+
+    public EventLoopLagMonitor(ObjectProvider<ReactorResourceFactory> resourceFactory,
+                               MeterRegistry meterRegistry,
+                               @Value("${shortener.eventloop.lag-warn-ms}") long lagWarnMillis) {
+        this.resourceFactory = resourceFactory;
+        this.warnNanos = TimeUnit.MILLISECONDS.toNanos(lagWarnMillis);
+        this.lagTimer = Timer.builder("eventloop.lag")
+                .description("Delay before a task queued on a server event loop starts running")
+                .register(meterRegistry);
+        Gauge.builder("eventloop.lag.max", maxLagNanos, max -> max.getAndSet(0) / 1e9)
+                .description("Highest event-loop lag since the last scrape, in seconds")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Only a running server has loops to probe; tests without one never create them.
+     */
+    @EventListener(ReactiveWebServerInitializedEvent.class)
+    public void start() {
+        ReactorResourceFactory factory = resourceFactory.getIfAvailable();
+        LoopResources loopResources = factory != null ? factory.getLoopResources() : null;
+        if (loopResources == null) {
+            log.warn("No Reactor Netty loop resources found, event-loop lag is not measured");
+            return;
+        }
+        loops = loopResources.onServer(LoopResources.DEFAULT_NATIVE);
+    }
+
+    @Scheduled(fixedDelayString = "${shortener.eventloop.probe-interval-ms}")
+    public void probe() {
+        Iterable<EventExecutor> current = loops;
+        if (current == null) {
+            return;
+        }
+        for (EventExecutor loop : current) {
+            long queuedAt = System.nanoTime();
+            loop.execute(() -> record(System.nanoTime() - queuedAt));
+        }
+    }
+
+    private void record(long lagNanos) {
+        lagTimer.record(lagNanos, TimeUnit.NANOSECONDS);
+        maxLagNanos.accumulateAndGet(lagNanos, Math::max);
+        if (lagNanos > warnNanos) {
+            log.warn("Event loop {} was blocked for {} ms", Thread.currentThread().getName(),
+                    Duration.ofNanos(lagNanos).toMillis());
+        }
+    }
+}
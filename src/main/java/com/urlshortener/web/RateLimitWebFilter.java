@@ -0,0 +1,168 @@
+package com.urlshortener.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.config.RateLimitProperties;
+import com.urlshortener.dto.ErrorResponse;
+import com.urlshortener.exception.ErrorCodes;
+import com.urlshortener.service.RateLimiterService;
+import com.urlshortener.service.ShortenerMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies {@link RateLimiterService} to every API route and reports the outcome with
+ * the RateLimit-Limit / RateLimit-Remaining / RateLimit-Reset headers (plus Retry-After
+ * on a 429).
+ * <p>
+ * Anonymous redirects are only limited when X-Forwarded-For is trusted: behind a proxy
+ * every visitor shares the proxy's address, so a per-IP redirect bucket would throttle
+ * all traffic to the links at once.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RateLimitWebFilter implements WebFilter {
+
+    public static final String API_KEY_HEADER = "X-API-Key";
+
+    private static final String REDIRECT = "redirect";
+
+    private final RateLimiterService rateLimiterService;
+    private final RateLimitProperties properties;
+    private final ObjectMapper objectMapper;
+    private final ShortenerMetrics metrics;
+    private final Map<String, Map.Entry<String, RateLimitProperties.Client>> clientsByApiKey = new HashMap<>();
+
+    public RateLimitWebFilter(RateLimiterService rateLimiterService, RateLimitProperties properties, ObjectMapper objectMapper,
+                              ShortenerMetrics metrics) {
+        this.rateLimiterService = rateLimiterService;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        properties.getClients().forEach((name, client) -> {
+            if (client.getApiKey() != null) {
+                clientsByApiKey.put(client.getApiKey(), Map.entry(name, client));
+            }
+        });
+        if (!properties.isTrustForwardedFor()
+                && properties.getTiers().getOrDefault(properties.getAnonymousTier(), Map.of()).containsKey(REDIRECT)) {
+            log.warn("Ignoring the anonymous redirect limit: it needs shortener.rate-limit.trust-forwarded-for=true "
+                    + "behind a proxy that overwrites X-Forwarded-For");
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String routeClass = properties.isEnabled() ? routeClass(exchange.getRequest()) : null;
+        if (routeClass == null) {
+            return chain.filter(exchange);
+        }
+
+        // Bucket per tenant, per API client, or per IP for anonymous callers
+        String tier = properties.getAnonymousTier();
+        String bucketId;
+        Map.Entry<String, RateLimitProperties.Client> client =
+                clientsByApiKey.get(exchange.getRequest().getHeaders().getFirst(API_KEY_HEADER));
+        if (client != null) {
+            tier = client.getValue().getTier();
+            bucketId = client.getValue().getTenant() != null
+                    ? "tenant:" + client.getValue().getTenant()
+                    : "client:" + client.getKey();
+        } else if (REDIRECT.equals(routeClass) && !properties.isTrustForwardedFor()) {
+            // The remote address may be a proxy shared by every visitor
+            return chain.filter(exchange);
+        } else {
+            bucketId = "ip:" + clientIp(exchange.getRequest());
+        }
+
+        RateLimitProperties.Limit limit = properties.getTiers().getOrDefault(tier, Map.of()).get(routeClass);
+        if (limit == null) {
+            return chain.filter(exchange);
+        }
+
+        return rateLimiterService.tryAcquire("ratelimit:" + routeClass + ":" + bucketId, limit)
+                .flatMap(decision -> {
+                    metrics.rateLimitDecision(routeClass, decision.allowed());
+                    HttpHeaders headers = exchange.getResponse().getHeaders();
+                    headers.set("RateLimit-Limit", Long.toString(decision.limit()));
+                    headers.set("RateLimit-Remaining", Long.toString(decision.remaining()));
+                    headers.set("RateLimit-Reset", Long.toString(decision.resetSeconds()));
+                    if (decision.allowed()) {
+                        return chain.filter(exchange);
+                    }
+                    headers.set(HttpHeaders.RETRY_AFTER, Long.toString(decision.retryAfterSeconds()));
+                    return reject(exchange.getResponse());
+                });
+    }
+
+    private static String routeClass(ServerHttpRequest request) {
+        String path = request.getPath().pathWithinApplication().value();
+        if (path.startsWith("/actuator")) {
+            return null;
+        }
+        if (path.equals("/shorten")) {
+            return "shorten";
+        }
+        if (path.startsWith("/bulk-shorten")) {
+            return "bulk";
+        }
+        if (path.startsWith("/bulk-jobs")) {
+            // Submitting is bulk work; polling progress and results is a cheap read
+            return request.getMethod() == HttpMethod.POST ? "bulk" : "analytics";
+        }
+        if (path.startsWith("/admin/")) {
+            return "admin";
+        }
+        if (path.startsWith("/analytics/")) {
+            return "analytics";
+        }
+        if (request.getMethod() == HttpMethod.GET && path.lastIndexOf('/') == 0 && path.length() > 1) {
+            return REDIRECT;
+        }
+        return null;
+    }
+
+    private String clientIp(ServerHttpRequest request) {
+        if (properties.isTrustForwardedFor()) {
+            String forwarded = request.getHeaders().getFirst("X-Forwarded-For");
+            if (forwarded != null && !forwarded.isBlank()) {
+                return forwarded.split(",")[0].trim();
+            }
+        }
+        InetSocketAddress remote = request.getRemoteAddress();
+        return remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "unknown";
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response) {
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase(),
+                "Rate limit exceeded. Please try again later.",
+                ErrorCodes.ERR_RATE_LIMIT_EXCEEDED
+        );
+        try {
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(objectMapper.writeValueAsBytes(error))));
+        } catch (JsonProcessingException e) {
+            return response.setComplete();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.urlshortener.web;
+
+import com.urlshortener.service.ClickEventService;
+import com.urlshortener.service.UrlMappingService;
+import com.urlshortener.validate.RedirectLocation;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.observation.ServerRequestObservationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Serves GET /{shortKey} ahead of the controllers. Stored long URLs are already the encoded
+ * Location value ({@link RedirectLocation}), so a hit sets the status and one header and
+ * completes the response: no handler mapping, argument resolution, ResponseEntity or URI
+ * parsing. Runs after rate limiting.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 20)
+public class RedirectWebFilter implements WebFilter {
+
+    private static final String PATH_PATTERN = "/{shortKey}";
+
+    private final UrlMappingService urlMappingService;
+    private final ClickEventService clickEventService;
+
+    public RedirectWebFilter(UrlMappingService urlMappingService, ClickEventService clickEventService) {
+        this.urlMappingService = urlMappingService;
+        this.clickEventService = clickEventService;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String shortKey = shortKey(request);
+        if (shortKey == null) {
+            return chain.filter(exchange);
+        }
+        // Keeps http.server.requests tagged with the route instead of UNKNOWN
+        ServerRequestObservationContext.findCurrent(exchange.getAttributes())
+                .ifPresent(context -> context.setPathPattern(PATH_PATTERN));
+
+        ServerHttpResponse response = exchange.getResponse();
+        return urlMappingService.getLongUrl(shortKey)
+                .doOnNext(longUrl -> {
+                    clickEventService.recordRedirect(shortKey.toLowerCase(), request.getHeaders());
+                    response.setStatusCode(HttpStatus.FOUND);
+                    response.getHeaders().set(HttpHeaders.LOCATION, location(longUrl));
+                })
+                .switchIfEmpty(Mono.fromRunnable(() -> response.setStatusCode(HttpStatus.NOT_FOUND)))
+                .then(Mono.defer(response::setComplete));
+    }
+
+    /**
+     * The single path segment of a GET or HEAD, or null for any other route.
+     */
+    private static String shortKey(ServerHttpRequest request) {
+        HttpMethod method = request.getMethod();
+        if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+            return null;
+        }
+        String path = request.getPath().pathWithinApplication().value();
+        if (path.length() < 2 || path.lastIndexOf('/') != 0 || path.equals("/actuator")) {
+            return null;
+        }
+        return path.substring(1);
+    }
+
+    private static String location(String longUrl) {
+        // Mappings created before URLs were encoded on the way in
+        return RedirectLocation.isEncoded(longUrl) ? longUrl : RedirectLocation.encode(longUrl);
+    }
+}
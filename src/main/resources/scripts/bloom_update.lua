@@ -0,0 +1,24 @@
+-- Adds to or removes from the counting Bloom filter's 4-bit counters.
+-- KEYS[1]: filter key
+-- ARGV[1]: delta (1 or -1), ARGV[2]: sentinel counter index, ARGV[3..n]: counter indexes
+-- Removes are skipped unless the sentinel says the filter is fully built: a filter another
+-- node is still building may not have counted the key yet, and decrementing it would take
+-- counters shared with stored keys to zero.
+-- Increments saturate at 15, and a saturated counter is sticky: its true count is unknown,
+-- so decrementing it could reach zero while stored keys still map to it (a false negative).
+local delta = tonumber(ARGV[1])
+if delta < 0 and redis.call('BITFIELD', KEYS[1], 'GET', 'u4', '#' .. ARGV[2])[1] == 0 then
+    return 0
+end
+for i = 3, #ARGV do
+    local offset = '#' .. ARGV[i]
+    if delta > 0 then
+        redis.call('BITFIELD', KEYS[1], 'OVERFLOW', 'SAT', 'INCRBY', 'u4', offset, delta)
+    else
+        local value = redis.call('BITFIELD', KEYS[1], 'GET', 'u4', offset)[1]
+        if value > 0 and value < 15 then
+            redis.call('BITFIELD', KEYS[1], 'INCRBY', 'u4', offset, delta)
+        end
+    end
+end
+return 1
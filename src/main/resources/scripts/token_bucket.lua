@@ -0,0 +1,35 @@
+-- Token bucket that hands out up to ARGV[3] tokens at once, so callers can lease
+-- a batch and decide locally until it runs out.
+-- KEYS[1]: bucket key
+-- ARGV[1]: capacity, ARGV[2]: refill rate in tokens per millisecond, ARGV[3]: tokens requested
+-- Returns {granted, tokens left, ms until the next token when nothing was granted}
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+-- Server clock, so skew between application nodes does not matter (effects replication for Redis < 5)
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(state[1])
+local ts = tonumber(state[2])
+if tokens == nil or ts == nil then
+    tokens = capacity
+    ts = now
+end
+
+tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)
+local granted = math.min(requested, math.floor(tokens))
+tokens = tokens - granted
+
+redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now))
+-- Keep the key only while the bucket is below capacity
+redis.call('PEXPIRE', KEYS[1], math.ceil((capacity - tokens) / rate) + 1000)
+
+local retryAfter = 0
+if granted == 0 then
+    retryAfter = math.ceil((1 - tokens) / rate)
+end
+return {granted, math.floor(tokens), retryAfter}
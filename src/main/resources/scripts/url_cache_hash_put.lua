@@ -0,0 +1,24 @@
+-- Writes one cached URL into a hash bucket and keeps the bucket alive for the cache TTL.
+-- KEYS[1]: bucket key
+-- ARGV[1]: short key, ARGV[2]: value ("<expiresAt epoch seconds, 0 = never>|<cachedAt epoch seconds>|<long URL>"),
+-- ARGV[3]: bucket TTL in seconds, ARGV[4]: "1" to only replace a missing or expired field
+-- Returns 1 when the field was written
+
+-- TIME before a write needs effects replication on Redis < 5
+redis.replicate_commands()
+if ARGV[4] == '1' then
+    local existing = redis.call('HGET', KEYS[1], ARGV[1])
+    if existing then
+        local expiresAt = tonumber(string.match(existing, '^(%d+)|'))
+        if expiresAt == nil or expiresAt == 0 or expiresAt > tonumber(redis.call('TIME')[1]) then
+            return 0
+        end
+    end
+end
+
+redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+-- A negative entry (NX) must not keep an otherwise cold bucket alive
+if ARGV[4] ~= '1' or redis.call('TTL', KEYS[1]) < 0 then
+    redis.call('EXPIRE', KEYS[1], ARGV[3])
+end
+return 1
@@ -0,0 +1,19 @@
+-- Rewrites a cached URL with a fresh write time and pushes its TTL back out, but only if the
+-- entry still holds the value the read saw: a delete or rewrite in between wins.
+-- KEYS[1]: string key, or bucket key in the hash layout
+-- ARGV[1]: short key (hash field), '' in the string layout, ARGV[2]: value read,
+-- ARGV[3]: new value, ARGV[4]: TTL in milliseconds (of the key, or of the whole bucket)
+-- Returns 1 when the entry was refreshed
+if ARGV[1] == '' then
+    if redis.call('GET', KEYS[1]) ~= ARGV[2] then
+        return 0
+    end
+    redis.call('SET', KEYS[1], ARGV[3], 'PX', ARGV[4])
+else
+    if redis.call('HGET', KEYS[1], ARGV[1]) ~= ARGV[2] then
+        return 0
+    end
+    redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])
+    redis.call('PEXPIRE', KEYS[1], ARGV[4])
+end
+return 1
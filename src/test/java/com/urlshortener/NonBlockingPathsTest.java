@@ -0,0 +1,109 @@
+package com.urlshortener;
+
+import com.urlshortener.dto.BulkRow;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.service.CsvBulkRowParser;
+import com.urlshortener.store.EmbeddedUrlStore;
+import com.urlshortener.validate.InputValidator;
+import com.urlshortener.validate.UrlNormalizer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.BlockingOperationError;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Runs request-path code on parallel threads, which BlockHound treats like Netty event
+ * loops: any blocking call made there (rather than on the blocking scheduler) fails the test.
+ * Surefire runs this class in a fork of its own, so BlockHound is installed before any
+ * Reactor thread exists and never reaches the other tests.
+ */
+class NonBlockingPathsTest {
+
+    private static Scheduler eventLoop;
+    private static Scheduler blockingScheduler;
+
+    @BeforeAll
+    static void installBlockHound() {
+        // The defaults cover java.io and sockets; the embedded store reads and writes through a FileChannel
+        BlockHound.install(builder -> builder
+                .markAsBlocking("sun.nio.ch.FileChannelImpl", "read", "(Ljava/nio/ByteBuffer;J)I")
+                .markAsBlocking("sun.nio.ch.FileChannelImpl", "write", "(Ljava/nio/ByteBuffer;J)I")
+                .markAsBlocking("sun.nio.ch.FileChannelImpl", "force", "(Z)V"));
+        // Not the shared parallel(): a worker that trips BlockHound must not take other tests down with it
+        eventLoop = Schedulers.newParallel("event-loop-test", 2);
+        blockingScheduler = Schedulers.newBoundedElastic(4, 100, "blocking-test");
+    }
+
+    @AfterAll
+    static void disposeSchedulers() {
+        eventLoop.dispose();
+        blockingScheduler.dispose();
+    }
+
+    @Test
+    void detectsBlockingCalls() {
+        StepVerifier.create(Mono.delay(Duration.ofMillis(1), eventLoop)
+                        .doOnNext(tick -> {
+                            try {
+                                Thread.sleep(10);
+                            } catch (InterruptedException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }))
+                .expectError(BlockingOperationError.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void validationAndCsvParsingDoNotBlock() {
+        DataBuffer csv = DefaultDataBufferFactory.sharedInstance.wrap(
+                "longUrl,customAlias\nhttps://example.com/a,my-alias\nhttps://EXAMPLE.com/b?y=1&x=2,\n"
+                        .getBytes(StandardCharsets.UTF_8));
+        Flux<String> urls = new CsvBulkRowParser().parse(Flux.just(csv))
+                .map(BulkRow::item)
+                .map(item -> InputValidator.validateAndCleanInputs(item.getLongUrl(), item.getCustomAlias()).cleanedLongUrl())
+                .map(UrlNormalizer::normalize)
+                .subscribeOn(eventLoop);
+
+        StepVerifier.create(urls)
+                .expectNext("https://example.com/a", "https://example.com/b?x=2&y=1")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void embeddedStoreReadsAndWritesLeaveTheEventLoop(@TempDir Path dir) throws Exception {
+        EmbeddedUrlStore store = new EmbeddedUrlStore(dir.toString(), 1024, true, blockingScheduler);
+        try {
+            UrlMapping mapping = new UrlMapping();
+            mapping.setShortKey("abc123");
+            mapping.setLongUrl("https://example.com/");
+
+            Mono<String> roundTrip = Mono.delay(Duration.ofMillis(1), eventLoop)
+                    .flatMap(tick -> store.insert(mapping))
+                    .publishOn(eventLoop)
+                    .flatMap(saved -> store.findByShortKey(saved.getShortKey()))
+                    .map(UrlMapping::getLongUrl);
+
+            StepVerifier.create(roundTrip)
+                    .expectNext("https://example.com/")
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(5));
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.urlshortener.keygen;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class ShortKeyCodecTest {
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        for (long value : new long[]{0, 1, 35, 36, 123_456_789L, 4_738_381_338_321_616_895L}) {
+            String key = ShortKeyCodec.encode(value, 7);
+            assertTrue(key.length() >= 7);
+            assertEquals(value, ShortKeyCodec.decode(key));
+        }
+    }
+
+    @Test
+    void decodeRejectsNonPackableKeys() {
+        assertEquals(-1, ShortKeyCodec.decode("my-alias"));
+        assertEquals(-1, ShortKeyCodec.decode("ABC"));
+        assertEquals(-1, ShortKeyCodec.decode("0123456789abc"));
+    }
+
+    @Test
+    void scrambledKeysAreUniqueAndFixedLength() {
+        BlockLeaseShortKeyGenerator generator = new BlockLeaseShortKeyGenerator(mock(ReactiveMongoTemplate.class));
+        ReflectionTestUtils.setField(generator, "scramble", true);
+
+        Set<String> keys = new HashSet<>();
+        for (long id = 0; id < 100_000; id++) {
+            String key = generator.toKey(id);
+            assertEquals(7, key.length());
+            assertTrue(keys.add(key), "duplicate key for id " + id);
+        }
+        assertEquals(8, generator.toKey(78_364_164_096L).length());
+    }
+}
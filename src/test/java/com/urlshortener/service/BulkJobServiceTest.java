@@ -0,0 +1,184 @@
+package com.urlshortener.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.urlshortener.dto.BulkShortenResponseItem;
+import com.urlshortener.model.BulkJob;
+import com.urlshortener.model.BulkJobResult;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Every mock answers synchronously, so {@link BulkJobService#claimJobs()} has run the whole
+ * job by the time it returns.
+ */
+class BulkJobServiceTest {
+
+    private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+    private final ReactiveGridFsTemplate gridFsTemplate = mock(ReactiveGridFsTemplate.class);
+    private final BulkShortenService bulkShortenService = mock(BulkShortenService.class);
+    private final CsvBulkRowParser csvBulkRowParser = mock(CsvBulkRowParser.class);
+    private final ReactiveBulkOperations bulkOps = mock(ReactiveBulkOperations.class);
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private final AtomicBoolean leaseHeld = new AtomicBoolean(true);
+    private BulkJobService service;
+
+    @BeforeEach
+    void setUp() {
+        BulkJob job = new BulkJob();
+        job.setId("job-1");
+        job.setFileId("650000000000000000000001");
+        job.setStatus(BulkJob.Status.RUNNING);
+        job.setExpireAt(Instant.now().plusSeconds(3600));
+
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(BulkJob.class)))
+                .thenAnswer(invocation -> {
+                    Document set = invocation.getArgument(1, Update.class).getUpdateObject().get("$set", Document.class);
+                    if (set.get("status") == BulkJob.Status.RUNNING) {
+                        // Only the first poll finds the job; the claim after it finishes comes back empty
+                        return claimed.getAndSet(true) ? Mono.empty() : Mono.just(job);
+                    }
+                    // The resume point is taken right after the claim; the lease can only be lost later
+                    return leaseHeld.get() || set.containsKey("rowsDone") ? Mono.just(job) : Mono.empty();
+                });
+        when(mongoTemplate.findOne(any(Query.class), eq(BulkJob.class))).thenReturn(Mono.just(job));
+        when(mongoTemplate.count(any(Query.class), eq(BulkJobResult.class))).thenReturn(Mono.just(0L));
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(BulkJob.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BulkJobResult.class)).thenReturn(bulkOps);
+        when(bulkOps.insert(anyList())).thenReturn(bulkOps);
+        when(gridFsTemplate.findOne(any(Query.class))).thenReturn(Mono.empty());
+        when(gridFsTemplate.delete(any(Query.class))).thenReturn(Mono.empty());
+        when(csvBulkRowParser.parse(any())).thenReturn(Flux.empty());
+        when(bulkShortenService.shorten(any())).thenReturn(Flux.just(
+                new BulkShortenResponseItem(1, "https://example.com/1", "http://sho.rt/a", "CREATED", null),
+                new BulkShortenResponseItem(2, "https://example.com/2", "http://sho.rt/b", "CREATED", null)));
+
+        service = new BulkJobService(mongoTemplate, gridFsTemplate, bulkShortenService, csvBulkRowParser);
+        ReflectionTestUtils.setField(service, "workers", 1);
+        ReflectionTestUtils.setField(service, "leaseSeconds", 60L);
+        ReflectionTestUtils.setField(service, "checkpointRows", 10);
+    }
+
+    @Test
+    void rowsStoredBeforeAResumeDoNotFailTheJob() {
+        MongoBulkWriteException duplicate = new MongoBulkWriteException(BulkWriteResult.acknowledged(1, 0, 0, 0, List.of(), List.of()),
+                List.of(new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0)), null, new ServerAddress(), Set.of());
+        when(bulkOps.execute()).thenReturn(Mono.error(new DuplicateKeyException(duplicate.getMessage(), duplicate)));
+
+        service.claimJobs();
+
+        assertEquals(BulkJob.Status.COMPLETED, finalStatus());
+    }
+
+    @Test
+    void otherWriteErrorsStillFailTheJob() {
+        MongoBulkWriteException invalid = new MongoBulkWriteException(BulkWriteResult.acknowledged(1, 0, 0, 0, List.of(), List.of()),
+                List.of(new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0),
+                        new BulkWriteError(121, "Document failed validation", new BsonDocument(), 1)),
+                null, new ServerAddress(), Set.of());
+        when(bulkOps.execute()).thenReturn(Mono.error(invalid));
+
+        service.claimJobs();
+
+        assertEquals(BulkJob.Status.FAILED, finalStatus());
+    }
+
+    @Test
+    void transientErrorsHandTheLeaseBackInsteadOfFailing() {
+        when(bulkOps.execute()).thenReturn(Mono.error(new DataAccessResourceFailureException("Timed out after 30000 ms")));
+
+        service.claimJobs();
+
+        assertNull(finalStatus());
+        ArgumentCaptor<UpdateDefinition> release = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), release.capture(), eq(BulkJob.class));
+        assertTrue(release.getValue().getUpdateObject().get("$unset", Document.class).containsKey("leaseOwner"));
+    }
+
+    @Test
+    void nothingIsStoredOnceTheLeaseIsLost() {
+        when(bulkOps.execute()).thenReturn(Mono.just(BulkWriteResult.acknowledged(2, 0, 0, 0, List.of(), List.of())));
+        leaseHeld.set(false);
+
+        service.claimJobs();
+
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(BulkJobResult.class));
+        assertNull(finalStatus());
+    }
+
+    @Test
+    void anonymousJobsAreOnlyReachableWithTheirToken() {
+        when(gridFsTemplate.store(any(), eq("bulk-job.csv"))).thenReturn(Mono.just(new ObjectId()));
+        when(mongoTemplate.insert(any(BulkJob.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Keeps the submit from running the job on the mocks
+        ReflectionTestUtils.setField(service, "stopping", true);
+
+        BulkJobService.Submitted submitted = service.submit(Flux.empty(), null).block();
+        assertNotNull(submitted.token());
+        assertFalse(submitted.job().getOwner().contains(submitted.token()));
+
+        assertNull(service.find("job-1", null, null).block());
+        assertNull(service.cancel("job-1", null, null).block());
+        verify(mongoTemplate, never()).findOne(any(Query.class), eq(BulkJob.class));
+
+        service.find("job-1", null, submitted.token()).block();
+        ArgumentCaptor<Query> lookup = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findOne(lookup.capture(), eq(BulkJob.class));
+        assertEquals(submitted.job().getOwner(), lookup.getValue().getQueryObject().get("owner"));
+    }
+
+    /**
+     * @return the status the job was finished with, or null when it was never finished
+     */
+    private BulkJob.Status finalStatus() {
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, atLeastOnce())
+                .findAndModify(any(Query.class), updates.capture(), any(FindAndModifyOptions.class), eq(BulkJob.class));
+        return updates.getAllValues().stream()
+                .map(update -> update.getUpdateObject().get("$set", Document.class).get("status"))
+                .filter(status -> status != null && status != BulkJob.Status.RUNNING)
+                .map(BulkJob.Status.class::cast)
+                .reduce((first, second) -> second)
+                .orElse(null);
+    }
+}
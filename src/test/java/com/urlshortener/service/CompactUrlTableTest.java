@@ -0,0 +1,107 @@
+package com.urlshortener.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactUrlTableTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long LATER = NOW + 86_400_000L;
+
+    @Test
+    void packingKeepsLeadingZerosApart() {
+        assertTrue(CompactUrlTable.pack("0a") != CompactUrlTable.pack("a"));
+        assertEquals("00k3x9q", CompactUrlTable.unpack(CompactUrlTable.pack("00k3x9q")));
+        assertEquals(0, CompactUrlTable.pack("my-alias"));
+        assertEquals(0, CompactUrlTable.pack("0123456789ab"));
+    }
+
+    @Test
+    void storesPackedAndOverflowKeysThroughGrowthAndCompaction() {
+        CompactUrlTable table = new CompactUrlTable(16, 4096);
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            String key = i % 10 == 0 ? "alias_" + i : Integer.toString(i, 36);
+            String url = "https://host" + (i % 50) + ".example.com/path/" + i;
+            table.put(id(i), key, url, LATER);
+            expected.put(key, url);
+        }
+        // Rewrite every mapping twice so dead records outweigh live ones and compaction kicks in
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 20_000; i++) {
+                String key = i % 10 == 0 ? "alias_" + i : Integer.toString(i, 36);
+                String url = "http://other.example.org/" + round + "/" + i;
+                table.put(id(i), key, url, LATER);
+                expected.put(key, url);
+            }
+        }
+        assertTrue(table.memoryBytes() < 4L << 20, "compaction should have released dead slabs");
+
+        assertEquals(expected.size(), table.size());
+        expected.forEach((key, url) -> assertEquals(url, table.get(key, NOW), key));
+        assertNull(table.get("zzzzzz", NOW));
+
+        Map<String, String> seen = new HashMap<>();
+        table.forEach((id, key, url, expiresAt) -> seen.put(key, url));
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    void removesByIdAndHidesExpiredEntries() {
+        CompactUrlTable table = new CompactUrlTable(16, 4096);
+        table.put(id(1), "abc1234", "https://example.com/a", LATER);
+        table.put(id(2), "my-alias", "https://example.com/b", LATER);
+        table.put(id(3), "old", "https://example.com/c", NOW - 1);
+
+        assertTrue(table.removeById(id(2)));
+        assertFalse(table.removeById(id(2)));
+        assertNull(table.get("my-alias", NOW));
+        assertNull(table.get("old", NOW));
+        assertEquals("https://example.com/a", table.get("abc1234", NOW));
+
+        // Same id, new key: the old key must go
+        table.put(id(1), "abc9999", "https://example.com/d", LATER);
+        assertNull(table.get("abc1234", NOW));
+        assertEquals("https://example.com/d", table.get("abc9999", NOW));
+    }
+
+    @Test
+    void readersSeeEveryKeyWhileTheWriterGrowsAndCompacts() throws InterruptedException {
+        CompactUrlTable table = new CompactUrlTable(16, 4096);
+        table.put(id(0), "stable", "https://example.com/stable", LATER);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger misses = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                if (!"https://example.com/stable".equals(table.get("stable", NOW))) {
+                    misses.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        // Growth from 16 slots, then rewrites until dead records trigger compaction
+        for (int round = 0; round < 3; round++) {
+            for (int i = 1; i < 50_000; i++) {
+                table.put(id(i), Integer.toString(i, 36), "https://example.com/" + round + "/" + i, LATER);
+            }
+        }
+        writing.set(false);
+        reader.join();
+
+        assertEquals(0, misses.get());
+        assertEquals("https://example.com/2/49999", table.get(Integer.toString(49_999, 36), NOW));
+    }
+
+    private static String id(int i) {
+        return String.format("65a1f0c2e4b0%012x", i);
+    }
+}
@@ -0,0 +1,73 @@
+package com.urlshortener.service;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.support.EmbeddedRedis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyServiceTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final JavaType STRING = OBJECT_MAPPER.constructType(String.class);
+
+    @RegisterExtension
+    static final EmbeddedRedis redis = new EmbeddedRedis();
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate = redis.template();
+
+    @Test
+    void cancelledCallerStillRecordsTheResult() throws InterruptedException {
+        IdempotencyService service = service(120);
+        AtomicInteger runs = new AtomicInteger();
+        Disposable caller = service.execute("key-1", "shorten:anonymous", "body", STRING,
+                        () -> Mono.delay(Duration.ofMillis(300)).then(Mono.fromCallable(() -> "short-" + runs.incrementAndGet())))
+                .subscribe();
+        Thread.sleep(50);
+        caller.dispose();
+        Thread.sleep(600);
+
+        String record = redisTemplate.opsForValue().get("idem:shorten:anonymous:key-1").block();
+        assertTrue(record != null && record.startsWith("D|"), "record should hold the response, was " + record);
+        String replay = service.execute("key-1", "shorten:anonymous", "body", STRING,
+                () -> Mono.fromCallable(() -> "short-" + runs.incrementAndGet())).block();
+        assertEquals("short-1", replay);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void slowWorkKeepsItsLeaseSoAnotherNodeWaitsForIt() {
+        // Two services stand in for two nodes; they share nothing but Redis
+        IdempotencyService first = service(1);
+        IdempotencyService second = service(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        Mono<String> slow = first.execute("key-2", "shorten:anonymous", "body", STRING,
+                () -> Mono.delay(Duration.ofMillis(2500)).then(Mono.fromCallable(() -> "short-" + runs.incrementAndGet())));
+        // Arrives well after the original one-second lease would have run out
+        Mono<String> repeat = Mono.delay(Duration.ofMillis(1500))
+                .then(second.execute("key-2", "shorten:anonymous", "body", STRING,
+                        () -> Mono.fromCallable(() -> "short-" + runs.incrementAndGet())));
+
+        Tuple2<String, String> results = Mono.zip(slow, repeat).block();
+        assertEquals("short-1", results.getT1());
+        assertEquals("short-1", results.getT2());
+        assertEquals(1, runs.get());
+    }
+
+    private IdempotencyService service(long leaseSeconds) {
+        return new IdempotencyService(redisTemplate, OBJECT_MAPPER, new ShortenerMetrics(new SimpleMeterRegistry()),
+                leaseSeconds, 3600, 10, 50);
+    }
+}
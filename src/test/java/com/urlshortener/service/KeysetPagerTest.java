@@ -0,0 +1,66 @@
+package com.urlshortener.service;
+
+import com.urlshortener.dto.CursorPage;
+import com.urlshortener.model.UrlMapping;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KeysetPagerTest {
+
+    private static final KeysetPager.Listing NEWEST_FIRST = new KeysetPager.Listing(
+            "createdAt", "createdAt", Sort.Direction.DESC,
+            mapping -> mapping.getCreatedAt() == null ? null : mapping.getCreatedAt().toEpochMilli(),
+            Instant::ofEpochMilli);
+
+    private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+
+    @Test
+    void pagingContinuesPastDocumentsWithoutTheSortField() {
+        UrlMapping dated = mapping(Instant.parse("2026-01-01T00:00:00Z"));
+        UrlMapping undated = mapping(null);
+        when(mongoTemplate.find(any(Query.class), eq(UrlMapping.class)))
+                .thenReturn(Flux.just(dated, undated, mapping(null)));
+
+        CursorPage<UrlMapping> first = KeysetPager.page(mongoTemplate, NEWEST_FIRST, null, 1).block();
+        assertNotNull(first.getNextCursor());
+        KeysetPager.page(mongoTemplate, NEWEST_FIRST, first.getNextCursor(), 2).block();
+        CursorPage<UrlMapping> second = KeysetPager.page(mongoTemplate, NEWEST_FIRST, null, 2).block();
+        KeysetPager.page(mongoTemplate, NEWEST_FIRST, second.getNextCursor(), 2).block();
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(4)).find(queries.capture(), eq(UrlMapping.class));
+        // After a dated item, undated ones still follow
+        List<?> afterDated = queries.getAllValues().get(1).getQueryObject().get("$or", List.class);
+        assertTrue(afterDated.contains(new Document("createdAt", null)), afterDated::toString);
+        // After an undated item, only undated ones with a lower _id follow
+        assertEquals(new Document("$and", List.of(new Document("createdAt", null),
+                        new Document("_id", new Document("$lt", new ObjectId(undated.getId()))))),
+                queries.getAllValues().get(3).getQueryObject());
+    }
+
+    private static UrlMapping mapping(Instant createdAt) {
+        UrlMapping mapping = new UrlMapping();
+        mapping.setId(new ObjectId().toHexString());
+        mapping.setCreatedAt(createdAt);
+        return mapping;
+    }
+}
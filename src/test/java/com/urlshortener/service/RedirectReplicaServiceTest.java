@@ -0,0 +1,168 @@
+package com.urlshortener.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.model.changestream.OperationType;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.store.UrlStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Most tests fail the first change stream once, so they wait out one 5 second retry delay.
+ */
+class RedirectReplicaServiceTest {
+
+    private static final BsonDocument SNAPSHOT_TOKEN = new BsonDocument("_data", new BsonString("snapshot"));
+    private static final BsonDocument STREAMED_TOKEN = new BsonDocument("_data", new BsonString("streamed"));
+    private static final BsonTimestamp RESTART_TIME = new BsonTimestamp(1_700_000_000, 5);
+
+    @TempDir
+    Path dir;
+
+    private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+    private final UrlStore urlStore = mock(UrlStore.class);
+    private RedirectReplicaService replica;
+
+    @AfterEach
+    void stop() {
+        if (replica != null) {
+            replica.shutdown();
+        }
+    }
+
+    @Test
+    void streamErrorsResumeFromTheLastAppliedChangeNotTheSnapshot() throws IOException {
+        writeSnapshot("snap", "https://example.com/snap");
+        ChangeStreamEvent<UrlMapping> insert = inserted("new", "https://example.com/new", RESTART_TIME);
+        when(mongoTemplate.getCollectionName(UrlMapping.class)).thenReturn("url_mapping");
+        when(mongoTemplate.executeCommand(any(Document.class))).thenReturn(Mono.just(new Document("operationTime", RESTART_TIME)));
+        when(mongoTemplate.changeStream(isNull(), eq("url_mapping"), any(ChangeStreamOptions.class), eq(UrlMapping.class)))
+                .thenReturn(Flux.just(insert)
+                        .concatWith(Flux.error(new IllegalStateException("connection reset"))))
+                .thenReturn(Flux.never());
+
+        replica = start();
+
+        ArgumentCaptor<ChangeStreamOptions> options = ArgumentCaptor.forClass(ChangeStreamOptions.class);
+        verify(mongoTemplate, timeout(10_000).times(2))
+                .changeStream(isNull(), eq("url_mapping"), options.capture(), eq(UrlMapping.class));
+        assertEquals(SNAPSHOT_TOKEN, options.getAllValues().get(0).getResumeToken().orElseThrow());
+        assertEquals(STREAMED_TOKEN, options.getAllValues().get(1).getResumeToken().orElseThrow());
+        assertEquals("https://example.com/snap", replica.get("snap"));
+        assertEquals("https://example.com/new", replica.get("new"));
+    }
+
+    @Test
+    void restoredSnapshotIsNotServedUntilTheStreamCatchesUp() throws IOException {
+        writeSnapshot("snap", "https://example.com/snap");
+        // A change made while the node was down, replayed before the restart time is reached
+        ChangeStreamEvent<UrlMapping> missed = inserted("missed", "https://example.com/missed", new BsonTimestamp(1_700_000_000, 4));
+        when(mongoTemplate.getCollectionName(UrlMapping.class)).thenReturn("url_mapping");
+        when(mongoTemplate.executeCommand(any(Document.class))).thenReturn(Mono.just(new Document("operationTime", RESTART_TIME)));
+        when(mongoTemplate.changeStream(isNull(), eq("url_mapping"), any(ChangeStreamOptions.class), eq(UrlMapping.class)))
+                .thenReturn(Flux.just(missed).concatWith(Flux.never()));
+
+        replica = start();
+
+        verify(mongoTemplate, timeout(5_000)).changeStream(isNull(), eq("url_mapping"), any(ChangeStreamOptions.class), eq(UrlMapping.class));
+        assertNull(replica.get("snap"));
+        assertNull(replica.get("missed"));
+    }
+
+    @Test
+    void lostHistoryRebuildsFromMongoWithoutRereadingTheSnapshot() throws IOException {
+        writeSnapshot("snap", "https://example.com/snap");
+        BsonTimestamp clusterTime = new BsonTimestamp(1_700_000_000, 1);
+        when(mongoTemplate.getCollectionName(UrlMapping.class)).thenReturn("url_mapping");
+        when(mongoTemplate.changeStream(isNull(), eq("url_mapping"), any(ChangeStreamOptions.class), eq(UrlMapping.class)))
+                .thenReturn(Flux.error(new MongoCommandException(
+                        new BsonDocument("code", new BsonInt32(286)).append("errmsg", new BsonString("history lost")),
+                        new ServerAddress())))
+                .thenReturn(Flux.never());
+        when(mongoTemplate.executeCommand(any(Document.class))).thenReturn(Mono.just(new Document("operationTime", clusterTime)));
+        when(mongoTemplate.find(any(Query.class), eq(UrlMapping.class))).thenReturn(Flux.just(mapping("live", "https://example.com/live")));
+
+        replica = start();
+
+        ArgumentCaptor<ChangeStreamOptions> options = ArgumentCaptor.forClass(ChangeStreamOptions.class);
+        verify(mongoTemplate, timeout(10_000).times(2))
+                .changeStream(isNull(), eq("url_mapping"), options.capture(), eq(UrlMapping.class));
+        ChangeStreamOptions rebuilt = options.getAllValues().get(1);
+        assertTrue(rebuilt.getResumeToken().isEmpty());
+        assertEquals(clusterTime, rebuilt.getResumeBsonTimestamp().orElseThrow());
+        assertNull(replica.get("snap"));
+        assertEquals("https://example.com/live", replica.get("live"));
+    }
+
+    private RedirectReplicaService start() {
+        RedirectReplicaService service = new RedirectReplicaService(mongoTemplate, urlStore, new SimpleMeterRegistry(), true,
+                dir.resolve("replica.snapshot").toString(), 16, Schedulers.immediate());
+        service.start();
+        return service;
+    }
+
+    private void writeSnapshot(String shortKey, String longUrl) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(dir.resolve("replica.snapshot")))) {
+            out.writeInt(0x52504c31);
+            out.writeUTF(SNAPSHOT_TOKEN.toJson());
+            out.writeLong(0);
+            out.writeInt(1);
+            out.writeUTF("650000000000000000000001");
+            out.writeUTF(shortKey);
+            out.writeUTF(longUrl);
+            out.writeLong(Instant.now().plusSeconds(3600).toEpochMilli());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ChangeStreamEvent<UrlMapping> inserted(String shortKey, String longUrl, BsonTimestamp clusterTime) {
+        ChangeStreamEvent<UrlMapping> event = mock(ChangeStreamEvent.class);
+        when(event.getOperationType()).thenReturn(OperationType.INSERT);
+        when(event.getBody()).thenReturn(mapping(shortKey, longUrl));
+        when(event.getResumeToken()).thenReturn(STREAMED_TOKEN);
+        when(event.getBsonTimestamp()).thenReturn(clusterTime);
+        return event;
+    }
+
+    private static UrlMapping mapping(String shortKey, String longUrl) {
+        UrlMapping mapping = new UrlMapping();
+        mapping.setId("65000000000000000000" + String.format("%04x", Math.abs(shortKey.hashCode()) % 0xffff));
+        mapping.setShortKey(shortKey);
+        mapping.setLongUrl(longUrl);
+        mapping.setExpiresAt(Instant.now().plusSeconds(3600));
+        return mapping;
+    }
+}
@@ -0,0 +1,74 @@
+package com.urlshortener.service;
+
+import com.urlshortener.support.EmbeddedRedis;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedisUrlCacheTest {
+
+    private static final long CACHE_TTL_SECONDS = 100;
+
+    @RegisterExtension
+    static final EmbeddedRedis redis = new EmbeddedRedis();
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate = redis.template();
+
+    @Test
+    void hitTtlComesFromTheValueNotTheKey() {
+        RedisUrlCache cache = cache(RedisUrlCache.Layout.STRINGS, false);
+        // A key without a TTL: only the write time in the value can say how long the entry has left
+        String value = RedisUrlCache.encode("https://example.com/a", null, Instant.now().minusSeconds(30));
+        redisTemplate.opsForValue().set(cache.key("a"), value).block();
+
+        RedisUrlCache.Hit hit = cache.get("a").block();
+        assertEquals("https://example.com/a", hit.longUrl());
+        assertTrue(hit.ttl().compareTo(Duration.ofSeconds(65)) > 0 && hit.ttl().compareTo(Duration.ofSeconds(70)) <= 0,
+                () -> "ttl " + hit.ttl());
+    }
+
+    @Test
+    void halfSpentEntriesAreRewrittenWithAFreshWriteTime() throws InterruptedException {
+        for (RedisUrlCache.Layout layout : RedisUrlCache.Layout.values()) {
+            RedisUrlCache cache = cache(layout, true);
+            cache.put("a", "https://example.com/a", null).block();
+            String stale = RedisUrlCache.encode("https://example.com/a", null, Instant.now().minusSeconds(80));
+            overwrite(cache, layout, stale);
+
+            assertTrue(cache.get("a").block().ttl().compareTo(Duration.ofSeconds(20)) <= 0);
+            // The refresh runs in the background
+            for (int i = 0; i < 50 && stale.equals(read(cache, layout)); i++) {
+                Thread.sleep(20);
+            }
+            assertNotEquals(stale, read(cache, layout), layout.name());
+            assertTrue(cache.get("a").block().ttl().compareTo(Duration.ofSeconds(90)) > 0, layout.name());
+            assertTrue(redisTemplate.getExpire(cache.key("a")).block().compareTo(Duration.ofSeconds(90)) > 0, layout.name());
+        }
+    }
+
+    private RedisUrlCache cache(RedisUrlCache.Layout layout, boolean refreshOnRead) {
+        return new RedisUrlCache(redisTemplate, "url:", layout, 4, CACHE_TTL_SECONDS, refreshOnRead);
+    }
+
+    private void overwrite(RedisUrlCache cache, RedisUrlCache.Layout layout, String value) {
+        if (layout == RedisUrlCache.Layout.HASH) {
+            redisTemplate.opsForHash().put(cache.key("a"), "a", value).block();
+            redisTemplate.expire(cache.key("a"), Duration.ofSeconds(20)).block();
+        } else {
+            redisTemplate.opsForValue().set(cache.key("a"), value, Duration.ofSeconds(20)).block();
+        }
+    }
+
+    private String read(RedisUrlCache cache, RedisUrlCache.Layout layout) {
+        return layout == RedisUrlCache.Layout.HASH
+                ? redisTemplate.<String, String>opsForHash().get(cache.key("a"), "a").block()
+                : redisTemplate.opsForValue().get(cache.key("a")).block();
+    }
+}
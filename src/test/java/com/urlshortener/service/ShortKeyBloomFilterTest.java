@@ -0,0 +1,115 @@
+package com.urlshortener.service;
+
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.support.EmbeddedRedis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ShortKeyBloomFilterTest {
+
+    @RegisterExtension
+    static final EmbeddedRedis redis = new EmbeddedRedis();
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate = redis.template();
+    private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+
+    @Test
+    void removedKeysStopMatchingOnceBuilt() {
+        ShortKeyBloomFilter filter = builtFilter(1000, 0.01, "stored");
+        assertTrue(filter.mightContain("stored").block());
+        assertFalse(filter.mightContain("never-stored").block());
+
+        filter.add("created").block();
+        assertTrue(filter.mightContain("created").block());
+        filter.removeAll(List.of("created")).block();
+        assertFalse(filter.mightContain("created").block());
+    }
+
+    @Test
+    void saturatedCountersNeverComeBackDown() {
+        ShortKeyBloomFilter filter = builtFilter(1000, 0.01);
+        // Twenty stored keys on one counter (the same key stands in for colliding ones) saturate it at 15
+        for (int i = 0; i < 20; i++) {
+            filter.add("hot").block();
+        }
+        for (int i = 0; i < 16; i++) {
+            filter.removeAll(List.of("hot")).block();
+        }
+        // Four are still stored; an unsaturated counter would have been decremented to zero
+        assertTrue(filter.mightContain("hot").block());
+    }
+
+    @Test
+    void removesWaitForTheFilterToBeBuilt() {
+        ShortKeyBloomFilter staleNode = builtFilter(1000, 0.01);
+        // Another node drops the filter and starts rebuilding it; its scan has counted "live" so far
+        redisTemplate.delete(redisTemplate.keys("bloom:shortkeys:*")).block();
+        ShortKeyBloomFilter buildingNode = filter(redisTemplate, 1000, 0.01);
+        buildingNode.add("live").block();
+
+        // The stale node still believes the filter is built; "live" shares its counters with the removed key
+        staleNode.removeAll(List.of("live")).block();
+        buildingNode.ensureBuilt().block();
+
+        assertTrue(buildingNode.mightContain("live").block());
+    }
+
+    @Test
+    void failedAddDropsTheFilterUntilRebuilt() throws IOException {
+        ShortKeyBloomFilter filter = builtFilter(1000, 0.01);
+        assertFalse(filter.mightContain("lost").block());
+
+        // Same sizing, so the same Redis key, but no server behind it
+        LettuceConnectionFactory deadFactory = new LettuceConnectionFactory("localhost", EmbeddedRedis.freePort());
+        deadFactory.afterPropertiesSet();
+        try {
+            ShortKeyBloomFilter broken = filter(new ReactiveRedisTemplate<>(deadFactory, RedisSerializationContext.string()), 1000, 0.01);
+            broken.add("lost").block();
+            assertTrue(broken.mightContain("lost").block());
+        } finally {
+            deadFactory.destroy();
+        }
+
+        // Once it can reach Redis, the stale node drops the shared filter and every node falls through
+        ReflectionTestUtils.setField(filter, "stale", true);
+        filter.ensureBuilt().block();
+        ShortKeyBloomFilter otherNode = filter(redisTemplate, 1000, 0.01);
+        assertTrue(otherNode.mightContain("lost").block());
+    }
+
+    private ShortKeyBloomFilter builtFilter(long expectedKeys, double falsePositiveRate, String... storedKeys) {
+        when(mongoTemplate.find(any(Query.class), eq(UrlMapping.class))).thenReturn(Flux.fromArray(storedKeys).map(key -> {
+            UrlMapping mapping = new UrlMapping();
+            mapping.setShortKey(key);
+            return mapping;
+        }));
+        ShortKeyBloomFilter filter = filter(redisTemplate, expectedKeys, falsePositiveRate);
+        filter.ensureBuilt().block();
+        return filter;
+    }
+
+    private ShortKeyBloomFilter filter(ReactiveRedisTemplate<String, String> template, long expectedKeys, double falsePositiveRate) {
+        ShortKeyBloomFilter filter = new ShortKeyBloomFilter(template, mongoTemplate,
+                new ShortenerMetrics(new SimpleMeterRegistry()), true, expectedKeys, falsePositiveRate);
+        ReflectionTestUtils.setField(filter, "buildLockSeconds", 60L);
+        return filter;
+    }
+}
@@ -0,0 +1,49 @@
+package com.urlshortener.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingSketchTest {
+
+    @Test
+    void keepsHeavyHittersWithoutUnderestimating() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(10);
+        Map<String, Long> truth = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            // Every third click goes to one of three hot keys, the rest are spread over 1000
+            String key = i % 3 == 0 ? "hot" + random.nextInt(3) : "cold" + random.nextInt(1000);
+            sketch.offer(key);
+            truth.merge(key, 1L, Long::sum);
+        }
+        List<SpaceSavingSketch.Counter> top = sketch.top(3);
+        assertEquals(3, top.size());
+        for (SpaceSavingSketch.Counter counter : top) {
+            assertTrue(counter.key().startsWith("hot"), counter.key());
+            assertTrue(counter.count() >= truth.get(counter.key()));
+            assertTrue(counter.count() - counter.error() <= truth.get(counter.key()));
+        }
+    }
+
+    @Test
+    void mergedStripesNeverUnderestimate() {
+        List<SpaceSavingSketch> stripes = List.of(new SpaceSavingSketch(4), new SpaceSavingSketch(4));
+        Map<String, Long> truth = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            String key = "k" + random.nextInt(20);
+            stripes.get(random.nextInt(2)).offer(key);
+            truth.merge(key, 1L, Long::sum);
+        }
+        for (SpaceSavingSketch.Counter counter : SpaceSavingSketch.merge(stripes, 8)) {
+            assertTrue(counter.count() >= truth.get(counter.key()), counter.key());
+        }
+    }
+}
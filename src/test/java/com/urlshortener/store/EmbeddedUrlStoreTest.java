@@ -0,0 +1,199 @@
+package com.urlshortener.store;
+
+import com.urlshortener.model.UrlMapping;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DuplicateKeyException;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddedUrlStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void cleanShutdownReplaysOnlyTheUncheckpointedTail() throws IOException {
+        EmbeddedUrlStore store = open();
+        store.insert(mapping("a", null)).block();
+        store.close();
+
+        store = open();
+        store.insert(mapping("b", null)).block();
+        // No close: the next open rebuilds the index from the whole log
+        EmbeddedUrlStore reopened = open();
+        try {
+            assertEquals("https://example.com/a", longUrl(reopened, "a"));
+            assertEquals("https://example.com/b", longUrl(reopened, "b"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void tornTailIsCutOff() throws IOException {
+        EmbeddedUrlStore store = open();
+        store.insert(mapping("a", null)).block();
+        store.close();
+        long length = Files.size(log());
+        // Half of a record: a plausible length prefix followed by too few bytes
+        Files.write(log(), new byte[]{0, 0, 0, 64, 1, 0, 3}, StandardOpenOption.APPEND);
+
+        store = open();
+        try {
+            assertEquals("https://example.com/a", longUrl(store, "a"));
+            assertEquals(length, Files.size(log()));
+            store.insert(mapping("b", null)).block();
+            assertEquals("https://example.com/b", longUrl(store, "b"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void damagedRecordMidLogKeepsTheRecordsAfterIt() throws IOException {
+        EmbeddedUrlStore store = open();
+        store.insert(mapping("a", null)).block();
+        long second = Files.size(log());
+        store.insert(mapping("b", null)).block();
+        store.insert(mapping("c", null)).block();
+        // Crash without a checkpoint, with one byte of the middle record flipped
+        try (FileChannel channel = FileChannel.open(log(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, second + 10);
+            b.put(0, (byte) (b.get(0) ^ 0x55)).rewind();
+            channel.write(b, second + 10);
+        }
+
+        EmbeddedUrlStore reopened = open();
+        try {
+            assertEquals("https://example.com/a", longUrl(reopened, "a"));
+            assertNull(reopened.findByShortKey("b").block());
+            assertEquals("https://example.com/c", longUrl(reopened, "c"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void indexGrowsPastItsInitialCapacity() throws IOException {
+        EmbeddedUrlStore store = open();
+        for (int i = 0; i < 500; i++) {
+            store.insert(mapping("k" + i, null)).block();
+        }
+        store.close();
+
+        store = open();
+        try {
+            for (int i = 0; i < 500; i++) {
+                assertEquals("https://example.com/k" + i, longUrl(store, "k" + i));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void deletedKeysStayDeletedAndCanBeReused() throws IOException {
+        EmbeddedUrlStore store = open();
+        // Far more delete cycles than slots, so tombstones force rehashes without growth
+        for (int i = 0; i < 200; i++) {
+            store.insert(mapping("gone" + i, null)).block();
+            store.delete(mapping("gone" + i, null)).block();
+        }
+        store.insert(mapping("kept", null)).block();
+        store.close();
+
+        store = open();
+        try {
+            for (int i = 0; i < 200; i++) {
+                assertNull(store.findByShortKey("gone" + i).block());
+            }
+            assertEquals("https://example.com/kept", longUrl(store, "kept"));
+            store.insert(mapping("gone7", null)).block();
+            assertNotNull(store.findByShortKey("gone7").block());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void expiredAliasCanBeTakenAgain() throws IOException {
+        EmbeddedUrlStore store = open();
+        try {
+            store.insert(mapping("live", Instant.now().plusSeconds(3600))).block();
+            store.insert(mapping("old", Instant.now().minusSeconds(1))).block();
+
+            assertThrows(DuplicateKeyException.class, () -> store.insert(mapping("live", null)).block());
+            UrlMapping replacement = mapping("old", null);
+            replacement.setLongUrl("https://example.com/new");
+            store.insert(replacement).block();
+            assertEquals("https://example.com/new", longUrl(store, "old"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void compactionDropsDeletedAndExpiredRecords() throws IOException {
+        EmbeddedUrlStore store = open();
+        for (int i = 0; i < 50; i++) {
+            store.insert(mapping("live" + i, null)).block();
+            store.insert(mapping("expired" + i, Instant.now().minusSeconds(1))).block();
+            store.insert(mapping("deleted" + i, null)).block();
+            store.delete(mapping("deleted" + i, null)).block();
+        }
+        long before = Files.size(log());
+
+        assertEquals(50L, store.compact().block());
+        assertTrue(Files.size(log()) < before / 3, "log should only hold the live third");
+        store.insert(mapping("after", null)).block();
+        store.close();
+
+        store = open();
+        try {
+            for (int i = 0; i < 50; i++) {
+                assertEquals("https://example.com/live" + i, longUrl(store, "live" + i));
+                assertNull(store.findByShortKey("expired" + i).block());
+                assertNull(store.findByShortKey("deleted" + i).block());
+            }
+            assertEquals("https://example.com/after", longUrl(store, "after"));
+        } finally {
+            store.close();
+        }
+    }
+
+    private EmbeddedUrlStore open() throws IOException {
+        return new EmbeddedUrlStore(dir.toString(), 16, false, Schedulers.immediate());
+    }
+
+    private Path log() {
+        return dir.resolve("urls.log");
+    }
+
+    private static String longUrl(EmbeddedUrlStore store, String shortKey) {
+        UrlMapping found = store.findByShortKey(shortKey).block();
+        return found != null ? found.getLongUrl() : null;
+    }
+
+    private static UrlMapping mapping(String shortKey, Instant expiresAt) {
+        UrlMapping mapping = new UrlMapping();
+        mapping.setShortKey(shortKey);
+        mapping.setLongUrl("https://example.com/" + shortKey);
+        mapping.setExpiresAt(expiresAt);
+        return mapping;
+    }
+}
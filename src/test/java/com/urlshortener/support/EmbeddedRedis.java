@@ -0,0 +1,61 @@
+package com.urlshortener.support;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * A Redis server on a free port for one test class, emptied before each test:
+ * <pre>
+ * &#64;RegisterExtension
+ * static final EmbeddedRedis redis = new EmbeddedRedis();
+ * </pre>
+ */
+public class EmbeddedRedis implements BeforeAllCallback, AfterAllCallback, BeforeEachCallback {
+
+    private RedisServer server;
+    private LettuceConnectionFactory connectionFactory;
+    private ReactiveRedisTemplate<String, String> template;
+
+    @Override
+    public void beforeAll(ExtensionContext context) throws IOException {
+        int port = freePort();
+        server = new RedisServer(port);
+        server.start();
+        connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        template = new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext.string());
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) throws IOException {
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        template.execute(connection -> connection.serverCommands().flushAll()).blockLast();
+    }
+
+    public ReactiveRedisTemplate<String, String> template() {
+        return template;
+    }
+
+    /**
+     * @return a port nothing listens on, e.g. for a client that must fail to connect
+     */
+    public static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
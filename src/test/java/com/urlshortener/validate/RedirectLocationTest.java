@@ -0,0 +1,36 @@
+package com.urlshortener.validate;
+
+import com.urlshortener.exception.InvalidUrlFormatException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedirectLocationTest {
+
+    @Test
+    void leavesValidUrlsAlone() {
+        String url = "https://example.com/a/b?q=1&r=%2F#frag";
+        assertTrue(RedirectLocation.isEncoded(url));
+        assertSame(url, RedirectLocation.encode(url));
+    }
+
+    @Test
+    void encodesWhatAUriCannotHold() {
+        assertEquals("https://example.com/a%20b?q=%22x%22&p=100%25",
+                RedirectLocation.encode("https://example.com/a b?q=\"x\"&p=100%"));
+        assertEquals("https://example.com/caf%C3%A9/%F0%9F%98%80",
+                RedirectLocation.encode("https://example.com/café/😀"));
+        assertEquals("https://xn--bcher-kva.example:8443/x%0D%0ASet-Cookie:a",
+                RedirectLocation.encode("https://bücher.example:8443/x\r\nSet-Cookie:a"));
+        assertFalse(RedirectLocation.isEncoded("https://example.com/a b"));
+    }
+
+    @Test
+    void rejectsUrlsThatStayInvalid() {
+        assertThrows(InvalidUrlFormatException.class, () -> RedirectLocation.encode("https://[::1/x"));
+    }
+}
@@ -0,0 +1,25 @@
+package com.urlshortener.validate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class UrlNormalizerTest {
+
+    @Test
+    void normalizesCaseDefaultPortsAndQueryOrder() {
+        assertEquals("https://example.com/A/b?a=1&b=2&b=1#Top",
+                UrlNormalizer.normalize("HTTPS://Example.COM:443/A/b?b=2&a=1&b=1#Top"));
+        assertEquals("http://example.com/", UrlNormalizer.normalize("http://example.com:80"));
+        assertEquals("http://example.com:8080/?q", UrlNormalizer.normalize("http://EXAMPLE.com:8080?q&"));
+    }
+
+    @Test
+    void equalUrlsShareAFingerprint() {
+        assertEquals(UrlNormalizer.fingerprint(UrlNormalizer.normalize("https://example.com/x?b=2&a=1")),
+                UrlNormalizer.fingerprint(UrlNormalizer.normalize("https://EXAMPLE.com/x?a=1&b=2")));
+        assertNotEquals(UrlNormalizer.fingerprint(UrlNormalizer.normalize("https://example.com/x")),
+                UrlNormalizer.fingerprint(UrlNormalizer.normalize("https://example.com/X")));
+    }
+}